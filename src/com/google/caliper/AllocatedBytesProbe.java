@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the bytes of heap allocated by the benchmark thread during a trial,
+ * using the VM's per-thread allocation counter rather than the allocation
+ * instrumentation agent.
+ *
+ * <p>Unlike the agent, the counter doesn't slow the benchmark down or prevent
+ * the JIT compiler from eliminating allocations through escape analysis, so it
+ * can run alongside the timing trials and reports what the compiled code
+ * actually allocates. Allocations by other threads, such as the threads of a
+ * {@link Group} or an asynchronous benchmark's executor, are not included.
+ */
+final class AllocatedBytesProbe extends TrialProbe {
+
+  /** Start and stop are timed back to back this many times to find their own allocations. */
+  private static final int CALIBRATION_ROUNDS = 5;
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private final Method allocatedBytesMethod;
+  private final long overheadBytes;
+
+  private long bytesBefore;
+
+  AllocatedBytesProbe() {
+    allocatedBytesMethod = findAllocatedBytesMethod();
+    overheadBytes = calibrateOverhead();
+  }
+
+  /**
+   * Returns true if the VM counts the bytes allocated by each thread.
+   */
+  public boolean isSupported() {
+    return allocatedBytesMethod != null && allocatedBytes() >= 0;
+  }
+
+  @Override public void start() {
+    bytesBefore = allocatedBytes();
+  }
+
+  @Override public Map<String, Double> stop() {
+    long bytes = allocatedBytes();
+    Map<String, Double> result = new HashMap<String, Double>();
+    if (bytes >= 0 && bytesBefore >= 0) {
+      result.put(Measurement.THREAD_ALLOCATED_BYTES,
+          (double) Math.max(0, bytes - bytesBefore - overheadBytes));
+    }
+    return result;
+  }
+
+  /**
+   * Reading the counter reflectively boxes its argument and result, so the
+   * fewest bytes allocated between a start and a stop with nothing in between
+   * are subtracted from every trial.
+   */
+  private long calibrateOverhead() {
+    long result = Long.MAX_VALUE;
+    for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+      long before = allocatedBytes();
+      long after = allocatedBytes();
+      if (before < 0 || after < 0) {
+        return 0;
+      }
+      result = Math.min(result, after - before);
+    }
+    return result;
+  }
+
+  /**
+   * The allocation counter is only available through the {@code
+   * com.sun.management} extension of the thread bean, so it is looked up
+   * reflectively.
+   */
+  private Method findAllocatedBytesMethod() {
+    try {
+      Class<?> extension = Class.forName("com.sun.management.ThreadMXBean");
+      if (!extension.isInstance(threadBean)) {
+        return null;
+      }
+      Method result = extension.getMethod("getThreadAllocatedBytes", long.class);
+      Method supported = extension.getMethod("isThreadAllocatedMemorySupported");
+      if (!((Boolean) supported.invoke(threadBean))) {
+        return null;
+      }
+      Method enabled = extension.getMethod("isThreadAllocatedMemoryEnabled");
+      if (!((Boolean) enabled.invoke(threadBean))) {
+        extension.getMethod("setThreadAllocatedMemoryEnabled", boolean.class)
+            .invoke(threadBean, true);
+      }
+      return result;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread so far, or -1 if the
+   * counter is unavailable, as it is for virtual threads on some VMs.
+   */
+  private long allocatedBytes() {
+    if (allocatedBytesMethod == null) {
+      return -1;
+    }
+    try {
+      return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+/**
+ * A least squares line through the allocations of measured sections with
+ * different rep counts: the slope is the allocations per rep, and the
+ * intercept is the allocations made once per section, such as by lazy
+ * initialization or the first resize of a growing collection.
+ */
+final class AllocationFit {
+
+  private final double slope;
+  private final double intercept;
+  private final double rSquared;
+
+  /**
+   * @param reps the rep count of each section, with at least two distinct
+   *     values.
+   * @param allocations the allocations of each section.
+   */
+  AllocationFit(long[] reps, long[] allocations) {
+    if (reps.length != allocations.length) {
+      throw new IllegalArgumentException("reps and allocations differ in length");
+    }
+    int n = reps.length;
+    double meanReps = 0;
+    double meanAllocations = 0;
+    for (int i = 0; i < n; i++) {
+      meanReps += reps[i];
+      meanAllocations += allocations[i];
+    }
+    meanReps /= n;
+    meanAllocations /= n;
+
+    double covariance = 0;
+    double repsVariance = 0;
+    double allocationsVariance = 0;
+    for (int i = 0; i < n; i++) {
+      double dx = reps[i] - meanReps;
+      double dy = allocations[i] - meanAllocations;
+      covariance += dx * dy;
+      repsVariance += dx * dx;
+      allocationsVariance += dy * dy;
+    }
+    if (repsVariance == 0) {
+      throw new IllegalArgumentException("at least two distinct rep counts are needed");
+    }
+    slope = covariance / repsVariance;
+    intercept = meanAllocations - slope * meanReps;
+
+    double residuals = 0;
+    for (int i = 0; i < n; i++) {
+      double residual = allocations[i] - (intercept + slope * reps[i]);
+      residuals += residual * residual;
+    }
+    // allocations that don't vary at all are fit perfectly by a flat line
+    rSquared = allocationsVariance == 0 ? 1 : 1 - residuals / allocationsVariance;
+  }
+
+  /** Returns the allocations per rep. */
+  public double getSlope() {
+    return slope;
+  }
+
+  /** Returns the allocations made once per section, regardless of its reps. */
+  public double getIntercept() {
+    return intercept;
+  }
+
+  /**
+   * Returns the fraction of the variation in allocations that the line
+   * explains, which is 1 if they grow exactly linearly.
+   */
+  public double getRSquared() {
+    return rSquared;
+  }
+}
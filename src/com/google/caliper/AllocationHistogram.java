@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Counts the instances and bytes allocated of each type.
+ *
+ * <p>This is called from the allocation sampler, so recording must not
+ * allocate: the counts are kept in parallel primitive arrays indexed by open
+ * addressing with linear probing, rather than in a map of boxed values. The
+ * arrays are only reallocated when they become half full, which is rare after
+ * the first few reps.
+ */
+final class AllocationHistogram {
+
+  /** A power of two, so that hashes can be masked into an index. */
+  private static final int INITIAL_CAPACITY = 256;
+
+  private String[] types;
+  private boolean[] arrays;
+  private long[] instances;
+  private long[] bytes;
+  private int size;
+
+  AllocationHistogram() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Records one allocation.
+   *
+   * @param type the type descriptor reported by the allocation recorder, which
+   *     is the element type for arrays.
+   * @param array whether an array of {@code type} was allocated.
+   */
+  public void record(String type, boolean array, long allocatedBytes) {
+    add(type, array, 1, allocatedBytes);
+  }
+
+  /**
+   * Adds the counts of {@code other} to this histogram.
+   */
+  public void addAll(AllocationHistogram other) {
+    for (int i = 0; i < other.types.length; i++) {
+      if (other.types[i] != null) {
+        add(other.types[i], other.arrays[i], other.instances[i], other.bytes[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the allocations per rep of the {@code limit} types with the most
+   * bytes, in descending order of bytes. The counts of {@code baseline} are
+   * subtracted first, so that allocations made once per measurement rather
+   * than once per rep cancel out.
+   *
+   * @param reps how many more reps this histogram recorded than {@code
+   *     baseline}.
+   */
+  public List<AllocationSite> sitesPerRep(AllocationHistogram baseline, int reps, int limit) {
+    List<AllocationSite> result = new ArrayList<AllocationSite>();
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == null) {
+        continue;
+      }
+      int baselineIndex = baseline.indexOf(types[i], arrays[i]);
+      long netInstances = instances[i];
+      long netBytes = bytes[i];
+      if (baseline.types[baselineIndex] != null) {
+        netInstances -= baseline.instances[baselineIndex];
+        netBytes -= baseline.bytes[baselineIndex];
+      }
+      if (netInstances > 0) {
+        result.add(new AllocationSite(arrays[i] ? types[i] + "[]" : types[i],
+            (double) netInstances / reps, (double) netBytes / reps));
+      }
+    }
+    Collections.sort(result, new Comparator<AllocationSite>() {
+      @Override public int compare(AllocationSite a, AllocationSite b) {
+        return Double.compare(b.getBytesPerRep(), a.getBytesPerRep());
+      }
+    });
+    return result.size() > limit ? new ArrayList<AllocationSite>(result.subList(0, limit)) : result;
+  }
+
+  private void add(String type, boolean array, long addedInstances, long addedBytes) {
+    int index = indexOf(type, array);
+    if (types[index] == null) {
+      if (2 * (size + 1) > types.length) {
+        grow();
+        index = indexOf(type, array);
+      }
+      types[index] = type;
+      arrays[index] = array;
+      size++;
+    }
+    instances[index] += addedInstances;
+    bytes[index] += addedBytes;
+  }
+
+  /**
+   * Returns the index of the slot holding {@code type}, or of the empty slot
+   * where it belongs.
+   */
+  private int indexOf(String type, boolean array) {
+    int mask = types.length - 1;
+    int hash = type.hashCode() * 31 + (array ? 1 : 0);
+    int index = (hash ^ (hash >>> 16)) & mask;
+    while (types[index] != null
+        && (arrays[index] != array || !types[index].equals(type))) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void grow() {
+    String[] oldTypes = types;
+    boolean[] oldArrays = arrays;
+    long[] oldInstances = instances;
+    long[] oldBytes = bytes;
+    allocate(oldTypes.length * 2);
+    for (int i = 0; i < oldTypes.length; i++) {
+      if (oldTypes[i] != null) {
+        int index = indexOf(oldTypes[i], oldArrays[i]);
+        types[index] = oldTypes[i];
+        arrays[index] = oldArrays[i];
+        instances[index] = oldInstances[i];
+        bytes[index] = oldBytes[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    types = new String[capacity];
+    arrays = new boolean[capacity];
+    instances = new long[capacity];
+    bytes = new long[capacity];
+  }
+}
@@ -20,56 +20,136 @@ import com.google.caliper.UserException.NonConstantMemoryUsage;
 import com.google.common.base.Supplier;
 import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
 import com.google.monitoring.runtime.instrumentation.Sampler;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public abstract class AllocationMeasurer extends Measurer {
 
   protected static final int ALLOCATION_DISPLAY_THRESHOLD = 50;
 
+  /** The types allocated the most bytes per rep are recorded, up to this many. */
+  private static final int MAX_ALLOCATION_SITES = 50;
+
+  /** Bounds the memory used by the sampled allocation stacks of each thread. */
+  private static final int MAX_STACK_NODES = 100000;
+
+  /**
+   * Capturing stacks may take at most this fraction of each thread's time in
+   * the measured section; the sampling interval grows to stay within it.
+   */
+  private static final double MAX_STACK_OVERHEAD = 0.1;
+
+  private static final int MAX_STACK_INTERVAL = 1 << 30;
+
+  /** Fit mode measures sections of 1, 2, 4 and so on reps, this many of them. */
+  private static final int FIT_SECTIONS = 7;
+
+  /** Fits explaining less of the variation in allocations than this are warned about. */
+  private static final double MIN_FIT_R_SQUARED = 0.9;
+
   private boolean log;
-  private long tempAllocationCount;
   private long allocationsToIgnore;
-  private long numberOfAllocations;
-  private long allocationCount;
-  private long outOfThreadAllocationCount;
-  private boolean recordAllocations;
+  private Thread allocatingThread;
+
+  /** One in this many allocations has its stack sampled, or 0 to sample none. */
+  private int stackInterval = 0;
+  private boolean sampleStacks = false;
+  private AllocationStackTrie stacks;
+
+  /** Whether allocations are fit to a line rather than required to be the same every rep. */
+  private boolean fit = false;
+
+  /**
+   * The counters of the measured section in progress, or null if allocations
+   * aren't being recorded.
+   */
+  private volatile Tally tally;
+
+  /** The allocations of every thread during the last measured section, by type. */
+  private AllocationHistogram sectionHistogram;
+
   protected String type;
 
   protected AllocationMeasurer() {
     log = false;
     allocationsToIgnore = 0;
-    numberOfAllocations = 0;
-    allocationCount = 0;
-    outOfThreadAllocationCount = 0;
-    recordAllocations = false;
 
-    final Thread allocatingThread = Thread.currentThread();
     AllocationRecorder.addSampler(new Sampler() {
       // allocated {@code newObj} of type {@code desc}, whose size is {@code size}.
       // if this was not an array, {@code count} is -1. If it was array, {@code count} is the
       // size of the array.
       @Override public void sampleAllocation(int count, String desc, Object newObj, long size) {
-        if (recordAllocations) {
-          if (Thread.currentThread().equals(allocatingThread)) {
-            if (log) {
-              logAllocation(count, desc, size);
-            } else if (numberOfAllocations == 0) {
-              log("see first run for list of allocations");
-            }
-            allocationCount = incrementAllocationCount(allocationCount, count, size);
-            tempAllocationCount++;
-            numberOfAllocations++;
-          } else {
-            outOfThreadAllocationCount = incrementAllocationCount(outOfThreadAllocationCount, count, size);
-            numberOfAllocations++;
-          }
-        }
+        recordAllocation(count, desc, size);
       }
     });
   }
 
+  /**
+   * Counts an allocation by the calling thread, if a measured section is in
+   * progress.
+   */
+  void recordAllocation(int count, String desc, long size) {
+    Tally tally = this.tally;
+    if (tally == null) {
+      return;
+    }
+    ThreadCounter counter = tally.counters.get();
+    if (counter.thread == allocatingThread) {
+      if (log) {
+        logAllocation(counter.calls, count, desc, size);
+      } else if (counter.calls == 0) {
+        log("see first run for list of allocations");
+      }
+    }
+    counter.units = incrementAllocationCount(counter.units, count, size);
+    counter.calls++;
+    counter.histogram.record(desc, count != -1, size);
+    if (counter.stacks != null && --counter.untilNextStack <= 0) {
+      sampleStack(tally, counter, count == -1 ? desc : desc + "[]");
+    }
+  }
+
+  /**
+   * Samples the stacks of one in {@code stackInterval} allocations during the
+   * measurements, and records them in collapsed stack format. The interval
+   * adapts to keep the cost of capturing stacks within a fixed fraction of the
+   * measured section.
+   */
+  void setStackInterval(int stackInterval) {
+    this.stackInterval = stackInterval;
+  }
+
+  /**
+   * Measures allocations over geometrically increasing rep counts and fits
+   * them to a line, rather than failing unless every rep allocates the same.
+   * This tolerates allocations that grow in amortized steps.
+   */
+  void setFit(boolean fit) {
+    this.fit = fit;
+  }
+
+  private void sampleStack(Tally tally, ThreadCounter counter, String allocatedType) {
+    long startNanos = System.nanoTime();
+    counter.stacks.add(new Throwable().getStackTrace(), allocatedType, counter.stackInterval);
+    long endNanos = System.nanoTime();
+    counter.stackNanos += endNanos - startNanos;
+
+    double budgetNanos = MAX_STACK_OVERHEAD * (endNanos - tally.startNanos);
+    if (counter.stackNanos > budgetNanos) {
+      counter.stackInterval = Math.min(MAX_STACK_INTERVAL, counter.stackInterval * 2);
+    } else if (counter.stackNanos < budgetNanos / 2) {
+      counter.stackInterval = Math.max(stackInterval, counter.stackInterval / 2);
+    }
+    counter.untilNextStack = counter.stackInterval;
+  }
+
   protected abstract long incrementAllocationCount(long orig, int count, long size);
 
-  private void logAllocation(int count, String desc, long size) {
+  private void logAllocation(long numberOfAllocations, int count, String desc, long size) {
     if (numberOfAllocations >= allocationsToIgnore) {
       if (numberOfAllocations < ALLOCATION_DISPLAY_THRESHOLD + allocationsToIgnore) {
         log("allocating " + desc + (count == -1 ? "" : " array with " + count + " elements")
@@ -81,29 +161,35 @@ public abstract class AllocationMeasurer extends Measurer {
   }
 
   @Override public MeasurementSet run(Supplier<ConfiguredBenchmark> testSupplier) throws Exception {
+    // this may differ from the thread that created the measurer, such as in virtual thread mode
+    allocatingThread = Thread.currentThread();
 
     // warm up, for some reason the very first time anything is measured, it will have a few more
     // allocations.
     measureAllocations(testSupplier.get(), 1, 0);
 
+    if (fit) {
+      return fitAllocations(testSupplier);
+    }
+
     // The "one" case serves as a base line. There may be caching, lazy loading, etc going on here.
-    tempAllocationCount = 0; // count the number of times the sampler is called in one rep
-    long one = measureAllocationsTotal(testSupplier.get(), 1);
-    long oneAllocations = tempAllocationCount;
+    // The sampler calls in the benchmark thread are counted too.
+    ThreadCounter one = measureAllocationsTotal(testSupplier.get(), 1);
 
     // we expect that the delta between any two consecutive reps will be constant
-    tempAllocationCount = 0; // count the number of times the sampler is called in two reps
-    long two = measureAllocationsTotal(testSupplier.get(), 2);
-    long twoAllocations = tempAllocationCount;
-    long expectedDiff = two - one;
+    ThreadCounter two = measureAllocationsTotal(testSupplier.get(), 2);
+    long expectedDiff = two.units - one.units;
     // there is some overhead on the first call that we can ignore for the purposes of measurement
-    long unitsToIgnore = one - expectedDiff;
-    allocationsToIgnore = 2 * oneAllocations - twoAllocations;
+    long unitsToIgnore = one.units - expectedDiff;
+    allocationsToIgnore = 2 * one.calls - two.calls;
     log("ignoring " + allocationsToIgnore + " allocation(s) per measurement as overhead");
 
     Measurement[] allocationMeasurements = new Measurement[4];
     log = true;
+    sampleStacks = stackInterval > 0;
+    stacks = sampleStacks ? new AllocationStackTrie(MAX_STACK_NODES) : null;
     allocationMeasurements[0] = measureAllocations(testSupplier.get(), 1, unitsToIgnore);
+    AllocationHistogram oneRepHistogram = sectionHistogram;
     log = false;
     for (int i = 1; i < allocationMeasurements.length; i++) {
       allocationMeasurements[i] =
@@ -113,43 +199,148 @@ public abstract class AllocationMeasurer extends Measurer {
       }
     }
 
+    // Subtracting the first measurement's histogram from the last's cancels out the allocations
+    // made once per measurement.
+    List<AllocationSite> allocationSites = sectionHistogram.sitesPerRep(
+        oneRepHistogram, allocationMeasurements.length - 1, MAX_ALLOCATION_SITES);
+    sampleStacks = false;
+
     // The above logic guarantees that all the measurements are equal, so we only need to return a
     // single measurement.
     allocationsToIgnore = 0;
-    return new MeasurementSet(allocationMeasurements[0]);
+    MeasurementSet result =
+        new MeasurementSet(allocationMeasurements[0]).plusAllocationSites(allocationSites);
+    if (stackInterval > 0) {
+      result = result.plusAllocationStacks(stacks.toCollapsedStacks());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the slope of a line fit to the benchmark thread's allocations in
+   * sections of increasing reps, with its intercept, its goodness of fit and
+   * the slopes of every thread that allocated as metrics. Allocations made
+   * once per section, including the sampler's own, fall into the intercept.
+   */
+  private MeasurementSet fitAllocations(Supplier<ConfiguredBenchmark> testSupplier)
+      throws Exception {
+    long[] reps = new long[FIT_SECTIONS];
+    long[] allocations = new long[FIT_SECTIONS];
+    long[] outOfThreadAllocations = new long[FIT_SECTIONS];
+    Map<String, long[]> allocationsByThread = new LinkedHashMap<String, long[]>();
+    AllocationHistogram firstHistogram = null;
+    ConfiguredBenchmark benchmark = null;
+
+    log = true;
+    sampleStacks = stackInterval > 0;
+    stacks = sampleStacks ? new AllocationStackTrie(MAX_STACK_NODES) : null;
+    for (int i = 0; i < FIT_SECTIONS; i++) {
+      reps[i] = 1 << i;
+      benchmark = testSupplier.get();
+      Tally tally = measureSection(benchmark, (int) reps[i]);
+      for (ThreadCounter counter : tally.all) {
+        long[] threadAllocations = allocationsByThread.get(counter.thread.getName());
+        if (threadAllocations == null) {
+          threadAllocations = new long[FIT_SECTIONS];
+          allocationsByThread.put(counter.thread.getName(), threadAllocations);
+        }
+        threadAllocations[i] += counter.units; // thread names needn't be unique
+        if (counter.thread == allocatingThread) {
+          allocations[i] = counter.units;
+        } else {
+          outOfThreadAllocations[i] += counter.units;
+        }
+      }
+      log(allocations[i] + " " + type + "(s) allocated in " + reps[i] + " reps");
+      benchmark.close();
+      if (i == 0) {
+        firstHistogram = sectionHistogram;
+        log = false;
+      }
+    }
+    sampleStacks = false;
+
+    AllocationFit line = new AllocationFit(reps, allocations);
+    Map<String, Double> metrics = new HashMap<String, Double>();
+    for (Map.Entry<String, long[]> entry : allocationsByThread.entrySet()) {
+      metrics.put(Measurement.ALLOCATIONS_BY_THREAD_PREFIX + entry.getKey(),
+          Math.max(0, new AllocationFit(reps, entry.getValue()).getSlope()));
+    }
+    metrics.put(Measurement.OUT_OF_THREAD_ALLOCATIONS,
+        Math.max(0, new AllocationFit(reps, outOfThreadAllocations).getSlope()));
+    metrics.put(Measurement.ALLOCATION_FIT_INTERCEPT, line.getIntercept());
+    metrics.put(Measurement.ALLOCATION_FIT_R_SQUARED, line.getRSquared());
+    log(String.format("%.2f %s(s) allocated per rep and %.0f once, R^2=%.3f",
+        line.getSlope(), type, line.getIntercept(), line.getRSquared()));
+
+    // the conversion to units is linear, so the fractional slope is scaled by the units of one
+    double perRep = Math.max(0, line.getSlope());
+    Measurement one = getMeasurement(benchmark, 1);
+    MeasurementSet result = new MeasurementSet(new Measurement(one.getUnitNames(), perRep,
+        perRep * one.getProcessed(), metrics));
+
+    result = result.plusAllocationSites(sectionHistogram.sitesPerRep(
+        firstHistogram, (int) (reps[FIT_SECTIONS - 1] - reps[0]), MAX_ALLOCATION_SITES));
+    if (stackInterval > 0) {
+      result = result.plusAllocationStacks(stacks.toCollapsedStacks());
+    }
+    if (line.getRSquared() < MIN_FIT_R_SQUARED) {
+      result = result.plusWarning(String.format("The %ss allocated over %d to %d reps fit a line "
+          + "poorly (R^2=%.2f), so the %.2f %ss per rep may be misleading. Allocations that "
+          + "depend on more than the reps, such as on the benchmark's state, vary between "
+          + "sections.", type, reps[0], reps[FIT_SECTIONS - 1], line.getRSquared(),
+          line.getSlope(), type));
+    }
+    return result;
   }
 
+  /**
+   * Returns the allocations per rep of the benchmark thread, with the
+   * allocations per rep of every thread that allocated as metrics.
+   */
   private Measurement measureAllocations(ConfiguredBenchmark benchmark, int reps, long toIgnore)
       throws Exception {
-    prepareForTest();
-    log(LogConstants.MEASURED_SECTION_STARTING);
-    resetAllocations();
-    recordAllocations = true;
-    benchmark.run(reps);
-    recordAllocations = false;
-    log(LogConstants.MEASURED_SECTION_DONE);
-    long allocations = (allocationCount - toIgnore) / reps;
-    long outOfThreadAllocations = outOfThreadAllocationCount;
+    Tally tally = measureSection(benchmark, reps);
+    long allocations = (tally.get(allocatingThread).units - toIgnore) / reps;
+    long outOfThreadAllocations = 0;
+    Map<String, Double> metrics = new HashMap<String, Double>();
+    for (ThreadCounter counter : tally.all) {
+      long threadAllocations;
+      if (counter.thread == allocatingThread) {
+        threadAllocations = allocations * reps;
+      } else {
+        threadAllocations = counter.units;
+        outOfThreadAllocations += counter.units;
+      }
+      String metric = Measurement.ALLOCATIONS_BY_THREAD_PREFIX + counter.thread.getName();
+      Double previous = metrics.get(metric); // thread names needn't be unique
+      metrics.put(metric, (previous != null ? previous : 0) + (double) threadAllocations / reps);
+    }
+    metrics.put(Measurement.OUT_OF_THREAD_ALLOCATIONS, (double) outOfThreadAllocations / reps);
     log(allocations + " " + type + "(s) allocated per rep");
     log(outOfThreadAllocations + " out of thread " + type + "(s) allocated in " + reps + " reps");
     benchmark.close();
-    return getMeasurement(benchmark, allocations);
+    Measurement measurement = getMeasurement(benchmark, allocations);
+    return new Measurement(measurement.getUnitNames(), measurement.getRaw(),
+        measurement.getProcessed(), metrics);
   }
 
   protected abstract Measurement getMeasurement(ConfiguredBenchmark benchmark, long allocations);
 
-  private long measureAllocationsTotal(ConfiguredBenchmark benchmark, int reps)
+  /**
+   * Returns the total allocations and sampler calls of the benchmark thread.
+   */
+  private ThreadCounter measureAllocationsTotal(ConfiguredBenchmark benchmark, int reps)
       throws Exception {
-    prepareForTest();
-    log(LogConstants.MEASURED_SECTION_STARTING);
-    resetAllocations();
-    recordAllocations = true;
-    benchmark.run(reps);
-    recordAllocations = false;
-    log(LogConstants.MEASURED_SECTION_DONE);
-    long allocations = allocationCount;
-    long outOfThreadAllocations = outOfThreadAllocationCount;
-    log(allocations + " " + type + "(s) allocated in " + reps + " reps");
+    Tally tally = measureSection(benchmark, reps);
+    ThreadCounter allocations = tally.get(allocatingThread);
+    long outOfThreadAllocations = 0;
+    for (ThreadCounter counter : tally.all) {
+      if (counter.thread != allocatingThread) {
+        outOfThreadAllocations += counter.units;
+      }
+    }
+    log(allocations.units + " " + type + "(s) allocated in " + reps + " reps");
     if (outOfThreadAllocations > 0) {
       log(outOfThreadAllocations + " out of thread " + type + "(s) allocated in " + reps + " reps");
     }
@@ -157,9 +348,90 @@ public abstract class AllocationMeasurer extends Measurer {
     return allocations;
   }
 
-  private void resetAllocations() {
-    allocationCount = 0;
-    outOfThreadAllocationCount = 0;
-    numberOfAllocations = 0;
+  /**
+   * Runs {@code reps} while recording allocations, and returns the counters of
+   * every thread that allocated. The benchmark's threads have finished their
+   * reps once it returns, so their counters can be read without locking.
+   */
+  private Tally measureSection(ConfiguredBenchmark benchmark, int reps) throws Exception {
+    prepareForTest();
+    log(LogConstants.MEASURED_SECTION_STARTING);
+    Tally result = new Tally(sampleStacks ? stackInterval : 0);
+    tally = result;
+    benchmark.run(reps);
+    tally = null;
+    log(LogConstants.MEASURED_SECTION_DONE);
+    sectionHistogram = new AllocationHistogram();
+    for (ThreadCounter counter : result.all) {
+      sectionHistogram.addAll(counter.histogram);
+      if (counter.stacks != null) {
+        stacks.addAll(counter.stacks);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The allocations recorded by one thread during a measured section. Only
+   * that thread writes to it, so the sampler needs neither locks nor atomic
+   * updates.
+   */
+  private static final class ThreadCounter {
+    final Thread thread;
+    final AllocationHistogram histogram = new AllocationHistogram();
+    long units;
+    long calls;
+
+    /** The sampled stacks, or null if stacks aren't being sampled. */
+    final AllocationStackTrie stacks;
+    int stackInterval;
+    int untilNextStack;
+    long stackNanos;
+
+    ThreadCounter(Thread thread, int stackInterval) {
+      this.thread = thread;
+      this.stacks = stackInterval > 0 ? new AllocationStackTrie(MAX_STACK_NODES) : null;
+      this.stackInterval = stackInterval;
+      this.untilNextStack = stackInterval;
+    }
+  }
+
+  /**
+   * The counters of every thread that allocated during a measured section.
+   * Each thread registers its counter on its first allocation; the recorder
+   * doesn't sample the allocations made while doing so.
+   */
+  private static final class Tally {
+    final long startNanos = System.nanoTime();
+    final int stackInterval;
+    final Queue<ThreadCounter> all = new ConcurrentLinkedQueue<ThreadCounter>();
+    final ThreadLocal<ThreadCounter> counters = new ThreadLocal<ThreadCounter>() {
+      @Override protected ThreadCounter initialValue() {
+        ThreadCounter counter = new ThreadCounter(Thread.currentThread(), stackInterval);
+        all.add(counter);
+        return counter;
+      }
+    };
+
+    /**
+     * @param stackInterval the initial interval at which each thread samples
+     *     allocation stacks, or 0 to sample none.
+     */
+    Tally(int stackInterval) {
+      this.stackInterval = stackInterval;
+    }
+
+    /**
+     * Returns the counter of {@code thread}, which is empty if it didn't
+     * allocate.
+     */
+    ThreadCounter get(Thread thread) {
+      for (ThreadCounter counter : all) {
+        if (counter.thread == thread) {
+          return counter;
+        }
+      }
+      return new ThreadCounter(thread, 0);
+    }
   }
 }
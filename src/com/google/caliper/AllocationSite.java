@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.Serializable;
+
+/**
+ * The instances and bytes of one type that a benchmark allocates per rep.
+ *
+ * <p>Gwt-safe.
+ */
+@SuppressWarnings("serial")
+public final class AllocationSite
+    implements Serializable /* for GWT Serialization */ {
+
+  /** The allocated type, such as "java/lang/Integer" or "int[]". */
+  private /*final*/ String type;
+  private /*final*/ double instancesPerRep;
+  private /*final*/ double bytesPerRep;
+
+  public AllocationSite(String type, double instancesPerRep, double bytesPerRep) {
+    this.type = type;
+    this.instancesPerRep = instancesPerRep;
+    this.bytesPerRep = bytesPerRep;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public double getInstancesPerRep() {
+    return instancesPerRep;
+  }
+
+  public double getBytesPerRep() {
+    return bytesPerRep;
+  }
+
+  @Override public String toString() {
+    return type + ": " + instancesPerRep + " instances, " + bytesPerRep + " bytes";
+  }
+
+  private AllocationSite() {} // for GWT Serialization
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sampled allocation stacks, with common callers stored once. Each path from
+ * the root is a stack from its outermost frame inwards, ending with the
+ * allocated type, and each node weighs the allocations its samples stand for.
+ *
+ * <p>The trie stops growing at {@code maxNodes} nodes; samples that would
+ * need more are added to a single node under the root instead.
+ */
+final class AllocationStackTrie {
+
+  /** The frames closest to the allocation are kept, up to this many. */
+  static final int MAX_DEPTH = 64;
+
+  /** Replaces the frames of samples that didn't fit in the trie. */
+  static final String TRUNCATED = "[truncated]";
+
+  /**
+   * Frames from these packages that call into the benchmark from the outside
+   * are dropped, since every sample would share them.
+   */
+  private static final String[] HARNESS_PACKAGES = {
+      "com.google.caliper.", "java.lang.reflect.", "sun.reflect.", "jdk.internal.reflect."};
+
+  private final int maxNodes;
+  private final Node root = new Node();
+  private int nodes;
+  private boolean empty = true;
+
+  /**
+   * @param maxNodes the most nodes to store, including the root and the node
+   *     for samples that didn't fit.
+   */
+  AllocationStackTrie(int maxNodes) {
+    this.maxNodes = maxNodes;
+    root.children.put(TRUNCATED, new Node());
+    nodes = 2;
+  }
+
+  /**
+   * Adds a sampled allocation.
+   *
+   * @param stack the stack of the allocating thread, innermost frame first, as
+   *     returned by {@link Throwable#getStackTrace}. Frames of the allocation
+   *     recorder come first and are skipped.
+   * @param type the allocated type.
+   * @param weight how many allocations the sample stands for.
+   */
+  public void add(StackTraceElement[] stack, String type, long weight) {
+    int innermost = 0;
+    while (innermost < stack.length && isRecorderFrame(stack[innermost])) {
+      innermost++;
+    }
+    int outermost = stack.length - 1;
+    while (outermost >= innermost && isHarnessFrame(stack[outermost])) {
+      outermost--;
+    }
+    outermost = Math.min(outermost, innermost + MAX_DEPTH - 1);
+
+    List<String> frames = new ArrayList<String>();
+    for (int i = outermost; i >= innermost; i--) {
+      frames.add(stack[i].getClassName() + "." + stack[i].getMethodName());
+    }
+    frames.add(type);
+    add(frames, weight);
+  }
+
+  /**
+   * Adds the samples of {@code other} to this trie.
+   */
+  public void addAll(AllocationStackTrie other) {
+    addAll(other.root, new ArrayList<String>());
+  }
+
+  private void addAll(Node node, List<String> path) {
+    if (node.weight > 0) {
+      add(path, node.weight);
+    }
+    for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+      path.add(entry.getKey());
+      addAll(entry.getValue(), path);
+      path.remove(path.size() - 1);
+    }
+  }
+
+  /**
+   * Returns the samples in the collapsed stack format read by flame graph
+   * tools: one line per distinct stack, with its frames outermost first
+   * separated by semicolons, followed by a space and its weight.
+   */
+  public List<String> toCollapsedStacks() {
+    List<String> result = new ArrayList<String>();
+    collapse(root, new StringBuilder(), result);
+    Collections.sort(result);
+    return result;
+  }
+
+  private void collapse(Node node, StringBuilder path, List<String> result) {
+    if (node.weight > 0) {
+      result.add(path + " " + node.weight);
+    }
+    for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+      int length = path.length();
+      if (length > 0) {
+        path.append(';');
+      }
+      path.append(entry.getKey().replace(';', ':'));
+      collapse(entry.getValue(), path, result);
+      path.setLength(length);
+    }
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  private void add(List<String> frames, long weight) {
+    Node node = root;
+    for (String frame : frames) {
+      Node child = node.children.get(frame);
+      if (child == null) {
+        if (nodes == maxNodes) {
+          node = truncatedNode();
+          break;
+        }
+        child = new Node();
+        node.children.put(frame, child);
+        nodes++;
+      }
+      node = child;
+    }
+    node.weight += weight;
+    empty = false;
+  }
+
+  /**
+   * Returns the node under the root that stands in for samples that didn't
+   * fit. It is created with the trie, so that it always fits.
+   */
+  private Node truncatedNode() {
+    return root.children.get(TRUNCATED);
+  }
+
+  private static boolean isRecorderFrame(StackTraceElement frame) {
+    return frame.getClassName().startsWith("com.google.monitoring.runtime.instrumentation.")
+        || frame.getClassName().equals(AllocationMeasurer.class.getName())
+        || frame.getClassName().startsWith(AllocationMeasurer.class.getName() + "$")
+        || frame.getClassName().equals(AllocationStackTrie.class.getName())
+        || frame.getClassName().equals(Throwable.class.getName());
+  }
+
+  private static boolean isHarnessFrame(StackTraceElement frame) {
+    for (String harnessPackage : HARNESS_PACKAGES) {
+      if (frame.getClassName().startsWith(harnessPackage)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Node {
+    final Map<String, Node> children = new HashMap<String, Node>();
+    long weight;
+  }
+}
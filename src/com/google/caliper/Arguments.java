@@ -54,9 +54,20 @@ public final class Arguments {
    */
   private final Multimap<String, String> vmParameters = LinkedHashMultimap.create();
 
+  /** Thread modes like platform and virtual to run each benchmark in */
+  private final Set<String> threadModes = Sets.newLinkedHashSet();
+
+  /** Cache modes like warm and cold to run each benchmark in */
+  private final Set<String> cacheModes = Sets.newLinkedHashSet();
+
   private int trials = 1;
   private long warmupMillis = 3000;
+  private long minWarmupMillis = -1;
   private long runMillis = 1000;
+  private long coldCacheBytes = -1;
+  private long heapSweepMinBytes = -1;
+  private long heapSweepMaxBytes = -1;
+  private double heapSweepTolerance = 0.1;
   private String timeUnit = null;
   private String instanceUnit = null;
   private String memoryUnit = null;
@@ -65,6 +76,10 @@ public final class Arguments {
   private boolean captureVmLog = false;
   private boolean printScore = false;
   private boolean measureMemory = false;
+  private int allocationStackInterval = 0;
+  private boolean allocationFit = false;
+  private boolean discardLevelShifts = false;
+  private boolean rerunGcTrials = false;
   private boolean debug = false;
   private int debugReps = defaultDebugReps;
   private MeasurementType measurementType;
@@ -87,6 +102,66 @@ public final class Arguments {
     return userVms;
   }
 
+  public Set<String> getThreadModes() {
+    return threadModes;
+  }
+
+  public Set<String> getCacheModes() {
+    return cacheModes;
+  }
+
+  /**
+   * Returns the size of the buffer that cold cache trials walk to evict the
+   * caches, or -1 to size it from the host's cache size.
+   */
+  public long getColdCacheBytes() {
+    return coldCacheBytes;
+  }
+
+  /**
+   * Returns the smallest maximum heap size to try in a heap sweep, or -1 if
+   * no sweep was requested.
+   */
+  public long getHeapSweepMinBytes() {
+    return heapSweepMinBytes;
+  }
+
+  /**
+   * Returns the largest maximum heap size to try in a heap sweep, or -1 if no
+   * sweep was requested.
+   */
+  public long getHeapSweepMaxBytes() {
+    return heapSweepMaxBytes;
+  }
+
+  /**
+   * Returns how much slower than with its own heap settings a scenario may
+   * run for a heap size to be acceptable, such as 0.1 for 10%.
+   */
+  public double getHeapSweepTolerance() {
+    return heapSweepTolerance;
+  }
+
+  public boolean getHeapSweep() {
+    return heapSweepMinBytes != -1;
+  }
+
+  /**
+   * Returns the interval at which allocation stacks are sampled, or 0 if they
+   * aren't sampled.
+   */
+  public int getAllocationStackInterval() {
+    return allocationStackInterval;
+  }
+
+  /**
+   * Returns true if allocations are fit to a line over many rep counts rather
+   * than required to grow by the same amount with every rep.
+   */
+  public boolean getAllocationFit() {
+    return allocationFit;
+  }
+
   public int getTrials() {
     return trials;
   }
@@ -103,6 +178,14 @@ public final class Arguments {
     return warmupMillis;
   }
 
+  /**
+   * Returns the shortest warmup permitted if the benchmark settles early. This
+   * is the same as the warmup duration unless an adaptive warmup was requested.
+   */
+  public long getMinWarmupMillis() {
+    return minWarmupMillis == -1 ? warmupMillis : minWarmupMillis;
+  }
+
   public long getRunMillis() {
     return runMillis;
   }
@@ -139,6 +222,14 @@ public final class Arguments {
     return measureMemory;
   }
 
+  public boolean getDiscardLevelShifts() {
+    return discardLevelShifts;
+  }
+
+  public boolean getRerunGcTrials() {
+    return rerunGcTrials;
+  }
+
   public MeasurementType getMeasurementType() {
     return measurementType;
   }
@@ -167,6 +258,8 @@ public final class Arguments {
     Map<String, String> userParameterStrings = Maps.newLinkedHashMap();
     Map<String, String> vmParameterStrings = Maps.newLinkedHashMap();
     String vmString = null;
+    String threadModesString = null;
+    String cacheModesString = null;
     boolean standardRun = false;
     while (args.hasNext()) {
       String arg = args.next();
@@ -218,6 +311,17 @@ public final class Arguments {
       } else if ("--warmupMillis".equals(arg)) {
         result.warmupMillis = Long.parseLong(args.next());
         standardRun = true;
+      } else if ("--minWarmupMillis".equals(arg)) {
+        String value = args.next();
+        try {
+          result.minWarmupMillis = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        if (result.minWarmupMillis < 0) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        standardRun = true;
       } else if ("--runMillis".equals(arg)) {
         result.runMillis = Long.parseLong(args.next());
         standardRun = true;
@@ -238,6 +342,49 @@ public final class Arguments {
         }
         vmString = args.next();
         standardRun = true;
+      } else if ("--threadModes".equals(arg)) {
+        if (threadModesString != null) {
+          throw new UserException.DuplicateParameterException(arg);
+        }
+        threadModesString = args.next();
+        standardRun = true;
+      } else if ("--cacheModes".equals(arg)) {
+        if (cacheModesString != null) {
+          throw new UserException.DuplicateParameterException(arg);
+        }
+        cacheModesString = args.next();
+        standardRun = true;
+      } else if ("--coldCacheBytes".equals(arg)) {
+        String value = args.next();
+        result.coldCacheBytes = CacheThrasher.parseBytes(value);
+        if (result.coldCacheBytes <= 0 || result.coldCacheBytes > Integer.MAX_VALUE) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        standardRun = true;
+      } else if ("--heapSweep".equals(arg)) {
+        String value = args.next();
+        int separator = value.indexOf("..");
+        if (separator == -1) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        result.heapSweepMinBytes = CacheThrasher.parseBytes(value.substring(0, separator));
+        result.heapSweepMaxBytes = CacheThrasher.parseBytes(value.substring(separator + 2));
+        if (result.heapSweepMinBytes <= 0
+            || result.heapSweepMaxBytes <= result.heapSweepMinBytes) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        standardRun = true;
+      } else if ("--heapSweepTolerance".equals(arg)) {
+        String value = args.next();
+        try {
+          result.heapSweepTolerance = Double.parseDouble(value) / 100;
+        } catch (NumberFormatException e) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        if (!(result.heapSweepTolerance >= 0)) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        standardRun = true;
       } else if ("--delimiter".equals(arg)) {
         delimiter = args.next();
         standardRun = true;
@@ -256,6 +403,26 @@ public final class Arguments {
       } else if ("--measureMemory".equals(arg)) {
         result.measureMemory = true;
         standardRun = true;
+      } else if ("--allocationStackInterval".equals(arg)) {
+        String value = args.next();
+        try {
+          result.allocationStackInterval = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        if (result.allocationStackInterval < 1) {
+          throw new InvalidParameterValueException(arg, value);
+        }
+        standardRun = true;
+      } else if ("--allocationFit".equals(arg)) {
+        result.allocationFit = true;
+        standardRun = true;
+      } else if ("--discardLevelShifts".equals(arg)) {
+        result.discardLevelShifts = true;
+        standardRun = true;
+      } else if ("--rerunGcTrials".equals(arg)) {
+        result.rerunGcTrials = true;
+        standardRun = true;
       } else if ("--debug".equals(arg)) {
         result.debug = true;
       } else if ("--debug-reps".equals(arg)) {
@@ -303,6 +470,25 @@ public final class Arguments {
       Iterables.addAll(result.userVms, delimiterSplitter.split(vmString));
     }
 
+    if (threadModesString != null) {
+      for (String threadMode : delimiterSplitter.split(threadModesString)) {
+        if (!threadMode.equals(VirtualThreads.PLATFORM)
+            && !threadMode.equals(VirtualThreads.VIRTUAL)) {
+          throw new InvalidParameterValueException("--threadModes", threadMode);
+        }
+        result.threadModes.add(threadMode);
+      }
+    }
+
+    if (cacheModesString != null) {
+      for (String cacheMode : delimiterSplitter.split(cacheModesString)) {
+        if (!cacheMode.equals(CacheThrasher.WARM) && !cacheMode.equals(CacheThrasher.COLD)) {
+          throw new InvalidParameterValueException("--cacheModes", cacheMode);
+        }
+        result.cacheModes.add(cacheMode);
+      }
+    }
+
     Set<String> duplicates = Sets.intersection(
         userParameterStrings.keySet(), vmParameterStrings.keySet());
     if (!duplicates.isEmpty()) {
@@ -310,7 +496,17 @@ public final class Arguments {
     }
 
     for (Map.Entry<String, String> entry : userParameterStrings.entrySet()) {
-      result.userParameters.putAll(entry.getKey(), delimiterSplitter.split(entry.getValue()));
+      for (String value : delimiterSplitter.split(entry.getValue())) {
+        if (!ParameterRange.isRange(value)) {
+          result.userParameters.put(entry.getKey(), value);
+          continue;
+        }
+        try {
+          result.userParameters.putAll(entry.getKey(), ParameterRange.expand(value));
+        } catch (IllegalArgumentException e) {
+          throw new InvalidParameterValueException("-D" + entry.getKey(), value);
+        }
+      }
     }
     for (Map.Entry<String, String> entry : vmParameterStrings.entrySet()) {
       result.vmParameters.putAll(entry.getKey(), delimiterSplitter.split(entry.getValue()));
@@ -324,12 +520,28 @@ public final class Arguments {
       throw new NoBenchmarkClassException();
     }
 
+    if (result.getMinWarmupMillis() > result.warmupMillis) {
+      throw new IncompatibleArgumentsException("--minWarmupMillis " + result.minWarmupMillis);
+    }
+
     if (result.primaryMeasurementType != null
-        && result.primaryMeasurementType != MeasurementType.TIME && !result.measureMemory) {
+        && result.primaryMeasurementType != MeasurementType.TIME
+        && result.primaryMeasurementType != MeasurementType.FOOTPRINT && !result.measureMemory) {
       throw new IncompatibleArgumentsException(
           "--primaryMeasurementType " + result.primaryMeasurementType.toString().toLowerCase());
     }
 
+    // measuring processes get --measurementType instead of --measureMemory
+    if (result.allocationStackInterval > 0 && !result.measureMemory
+        && result.measurementType == null) {
+      throw new IncompatibleArgumentsException(
+          "--allocationStackInterval " + result.allocationStackInterval);
+    }
+
+    if (result.allocationFit && !result.measureMemory && result.measurementType == null) {
+      throw new IncompatibleArgumentsException("--allocationFit");
+    }
+
     return result;
   }
 
@@ -347,6 +559,11 @@ public final class Arguments {
     System.out.println();
     System.out.println("        For example: \"-Dfoo=bar,baz,bat\"");
     System.out.println();
+    System.out.println("        Numeric values can also be given as a geometric range, with");
+    System.out.println("        K, M and G standing for powers of 1024. \"-Dsize=16..16M*2\"");
+    System.out.println("        doubles from 16 to 16M, and \"-Dsize=1K..1M:20log\" takes 20");
+    System.out.println("        values evenly spaced on a logarithmic scale.");
+    System.out.println();
     System.out.println("        \"benchmark\" is a special parameter that can be used to specify");
     System.out.println("        which benchmark methods to run. For example, if a benchmark has");
     System.out.println("        the method \"timeFoo\", it can be run alone by using");
@@ -365,6 +582,11 @@ public final class Arguments {
     System.out.println();
     System.out.println("  --warmupMillis <millis>: duration to warmup each benchmark");
     System.out.println();
+    System.out.println("  --minWarmupMillis <millis>: end warmup early, but no sooner than this,");
+    System.out.println("        once JIT compilation and the time per rep have settled.");
+    System.out.println("        --warmupMillis is then the longest warmup permitted.");
+    System.out.println("        Default: same as --warmupMillis");
+    System.out.println();
     System.out.println("  --runMillis <millis>: duration to execute each benchmark");
     System.out.println();
     System.out.println("  --captureVmLog: record the VM's just-in-time compiler and GC logs.");
@@ -374,10 +596,60 @@ public final class Arguments {
     System.out.println("        memory used by invocations of the benchmark.");
     System.out.println("        Default: off");
     System.out.println();
+    System.out.println("  --allocationStackInterval <n>: with --measureMemory, sample the stack");
+    System.out.println("        of one in n allocations and write them in collapsed stack format");
+    System.out.println("        for flame graph tools, one file per scenario. The interval grows");
+    System.out.println("        if capturing stacks would slow the benchmark down too much.");
+    System.out.println("        Default: off");
+    System.out.println();
+    System.out.println("  --allocationFit: with --measureMemory, measure allocations over rep");
+    System.out.println("        counts from 1 to 64 and fit them to a line, reporting the");
+    System.out.println("        allocations per rep, the allocations made once and how well the");
+    System.out.println("        line fits. Use this for benchmarks whose allocations grow in");
+    System.out.println("        amortized steps, such as by resizing collections, which otherwise");
+    System.out.println("        fail for not allocating the same amount in every rep.");
+    System.out.println("        Default: off");
+    System.out.println();
+    System.out.println("  --discardLevelShifts: if the time per rep shifts to a new level partway");
+    System.out.println("        through the trials, discard the trials before the shift and take");
+    System.out.println("        new ones instead of reporting results that span both levels.");
+    System.out.println("        Takes at least 6 trials so that a shift can be found.");
+    System.out.println("        Default: off");
+    System.out.println();
+    System.out.println("  --rerunGcTrials: rerun trials that were interrupted by garbage");
+    System.out.println("        collection, up to three times each, instead of amortizing the");
+    System.out.println("        cost of collection across the results.");
+    System.out.println("        Default: off");
+    System.out.println();
     System.out.println("  --vm <vm>: executable to test benchmark on. Multiple VMs may be passed");
     System.out.println("        in as a list separated by the delimiter specified in the");
     System.out.println("        --delimiter argument.");
     System.out.println();
+    System.out.println("  --threadModes <modes>: run each benchmark on \"platform\" threads,");
+    System.out.println("        \"virtual\" threads, or both, separated by the delimiter");
+    System.out.println("        specified in the --delimiter argument. Virtual thread scenarios");
+    System.out.println("        are skipped on VMs that don't support virtual threads.");
+    System.out.println("        Default: platform");
+    System.out.println();
+    System.out.println("  --cacheModes <modes>: run each benchmark with \"warm\" caches, with");
+    System.out.println("        \"cold\" caches, or both, separated by the delimiter specified in");
+    System.out.println("        the --delimiter argument. Cold cache trials evict the CPU caches");
+    System.out.println("        between small batches of reps, outside of the timed region.");
+    System.out.println("        Default: warm");
+    System.out.println();
+    System.out.println("  --coldCacheBytes <size>: size of the buffer that cold cache trials");
+    System.out.println("        walk to evict the caches, such as 64M.");
+    System.out.println("        Default: twice the host's reported cache size");
+    System.out.println();
+    System.out.println("  --heapSweep <min>..<max>: after timing each scenario, search this");
+    System.out.println("        range of maximum heap sizes, such as 16M..1G, for the smallest");
+    System.out.println("        one in which the scenario still runs nearly as fast, and report");
+    System.out.println("        its time per rep at each size tried.");
+    System.out.println();
+    System.out.println("  --heapSweepTolerance <percent>: how much slower than with its own heap");
+    System.out.println("        settings a scenario may run in a heap size found by --heapSweep.");
+    System.out.println("        Default: 10");
+    System.out.println();
     System.out.println("  --timeUnit <unit>: unit of time to use for result. Depends on the units");
     System.out.println("        defined in the benchmark's getTimeUnitNames() method, if defined.");
     System.out.println("        Default Options: ns, us, ms, s");
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Starts asynchronous operations, keeping up to a fixed number of them in
+ * flight, and records how long each took to complete.
+ *
+ * <p>Completion of a {@link ListenableFuture} is observed as soon as it
+ * happens. Other futures can only be waited for, so they are awaited in the
+ * order they were started; an operation that completes before an earlier one
+ * is recorded as completing when the earlier one does.
+ */
+abstract class AsyncLoop {
+
+  /** Latencies are sampled into a reservoir of at most this many values. */
+  private static final int MAX_LATENCY_SAMPLES = 10000;
+
+  private final int operationsInFlight;
+
+  private final LinkedList<Operation> pending = new LinkedList<Operation>();
+  private final BlockingQueue<Operation> completed = new LinkedBlockingQueue<Operation>();
+  private int listenableInFlight;
+  private boolean awaitedInOrder;
+
+  private final long[] latencySamples = new long[MAX_LATENCY_SAMPLES];
+  private long operationCount;
+  private int random = 1;
+
+  AsyncLoop(int operationsInFlight) {
+    this.operationsInFlight = operationsInFlight;
+  }
+
+  /**
+   * Starts a single operation and returns its future.
+   */
+  abstract Future<?> startOperation() throws Exception;
+
+  /**
+   * Runs {@code operations} operations and returns once all of them have
+   * completed. If any operation fails, its exception is thrown.
+   */
+  public void run(int operations) throws Exception {
+    operationCount = 0;
+    awaitedInOrder = false;
+    for (int i = 0; i < operations; i++) {
+      while (pending.size() + listenableInFlight >= operationsInFlight) {
+        awaitOne();
+      }
+      start();
+    }
+    while (pending.size() + listenableInFlight > 0) {
+      awaitOne();
+    }
+  }
+
+  private void start() throws Exception {
+    final Operation operation = new Operation(System.nanoTime());
+    operation.future = startOperation();
+    if (operation.future instanceof ListenableFuture) {
+      listenableInFlight++;
+      ((ListenableFuture<?>) operation.future).addListener(new Runnable() {
+        @Override public void run() {
+          operation.endNanos = System.nanoTime();
+          completed.add(operation);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+    } else {
+      pending.add(operation);
+      awaitedInOrder = true;
+    }
+  }
+
+  private void awaitOne() throws Exception {
+    Operation operation = completed.poll();
+    if (operation == null && pending.isEmpty()) {
+      operation = completed.take();
+    }
+
+    if (operation != null) {
+      listenableInFlight--;
+      getResult(operation.future);
+    } else {
+      operation = pending.removeFirst();
+      getResult(operation.future);
+      operation.endNanos = System.nanoTime();
+    }
+    recordLatency(operation.endNanos - operation.startNanos);
+  }
+
+  /**
+   * Returns true if any operation of the most recent run returned a future
+   * that isn't listenable, and so was awaited in order.
+   */
+  public boolean awaitedInOrder() {
+    return awaitedInOrder;
+  }
+
+  /**
+   * Keeps a uniform sample of all latencies, using reservoir sampling.
+   */
+  private void recordLatency(long nanos) {
+    operationCount++;
+    if (operationCount <= MAX_LATENCY_SAMPLES) {
+      latencySamples[(int) operationCount - 1] = nanos;
+      return;
+    }
+    random ^= random << 13;
+    random ^= random >>> 17;
+    random ^= random << 5;
+    long index = (random & 0x7fffffffL) % operationCount;
+    if (index < MAX_LATENCY_SAMPLES) {
+      latencySamples[(int) index] = nanos;
+    }
+  }
+
+  /**
+   * Returns the median and 99th percentile latencies of the most recent run.
+   */
+  public Map<String, Double> getLatencyMetrics() {
+    Map<String, Double> result = new HashMap<String, Double>();
+    int count = (int) Math.min(operationCount, MAX_LATENCY_SAMPLES);
+    if (count == 0) {
+      return result;
+    }
+    long[] sorted = new long[count];
+    System.arraycopy(latencySamples, 0, sorted, 0, count);
+    Arrays.sort(sorted);
+    result.put(Measurement.LATENCY_MEDIAN_NANOS, (double) sorted[(count - 1) / 2]);
+    result.put(Measurement.LATENCY_99TH_NANOS, (double) sorted[(int) ((count - 1) * 0.99)]);
+    return result;
+  }
+
+  private static void getResult(Future<?> future) throws Exception {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private static class Operation {
+    final long startNanos;
+    volatile long endNanos;
+    Future<?> future;
+
+    Operation(long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Calls an asynchronous timed method of a {@link SimpleBenchmark}, which takes
+ * an {@link Executor} and returns a future. Like {@link TimedMethodInvoker},
+ * this is a generated class where possible.
+ *
+ * <p>This class is public only so that generated subclasses, which are defined
+ * in their own class loader, can extend it. It is not part of Caliper's API.
+ */
+public abstract class AsyncMethodInvoker {
+
+  private static final Map<Method, AsyncMethodInvoker> invokers =
+      new HashMap<Method, AsyncMethodInvoker>();
+
+  protected AsyncMethodInvoker() {}
+
+  /**
+   * Invokes the asynchronous timed method on {@code benchmark}, which starts a
+   * single operation and returns its future.
+   */
+  public abstract Object invokeAsync(Object benchmark, Executor executor) throws Exception;
+
+  /**
+   * Returns the invoker for {@code method}. Invokers are cached, so that each
+   * timed method's call site only ever sees a single invoker class.
+   */
+  static synchronized AsyncMethodInvoker forMethod(Method method) {
+    AsyncMethodInvoker invoker = invokers.get(method);
+    if (invoker == null) {
+      invoker = new InvokerGenerator(method).generate(AsyncMethodInvoker.class);
+      if (invoker == null) {
+        invoker = new ReflectiveInvoker(method);
+      }
+      invokers.put(method, invoker);
+    }
+    return invoker;
+  }
+
+  /**
+   * Calls the method through reflection, for VMs that can't load generated
+   * classes and for benchmark classes that generated classes can't access.
+   */
+  static final class ReflectiveInvoker extends AsyncMethodInvoker {
+    private final Method method;
+
+    ReflectiveInvoker(Method method) {
+      this.method = method;
+    }
+
+    @Override public Object invokeAsync(Object benchmark, Executor executor) throws Exception {
+      return SimpleBenchmark.invoke(benchmark, method, executor);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a no-argument method of a {@link SimpleBenchmark} to be invoked before
+ * every rep, outside of the timed region. Use this to restore state that the
+ * timed method destroys, such as an array that is sorted in place.
+ *
+ * <p>When a benchmark declares per-rep hooks, Caliper invokes the timed method
+ * with one rep at a time and excludes the time spent in the hooks from the
+ * result. Starting and stopping the clock for every rep has a fixed cost, so
+ * this mode is only accurate when each rep takes considerably longer than that
+ * cost. Caliper measures it and warns if it is not.
+ *
+ * <p>Hooks declared by superclasses run before those declared by subclasses,
+ * and a hook overridden by a subclass runs once.
+ *
+ * @see AfterRep
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BeforeRep {}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evicts the benchmark's working set from the CPU caches by walking a buffer
+ * that is larger than the last level cache. Cold cache trials do this between
+ * batches of reps, outside of the timed region.
+ */
+final class CacheThrasher {
+
+  /** The scenario variable value for running with the caches left as they are. */
+  static final String WARM = "warm";
+
+  /** The scenario variable value for evicting the caches between batches of reps. */
+  static final String COLD = "cold";
+
+  /** The buffer is this many times the reported cache size. */
+  private static final int CACHE_SIZE_MULTIPLE = 2;
+
+  /** Used when the host doesn't report its cache size. */
+  private static final long DEFAULT_BYTES = 64L * 1024 * 1024;
+
+  /** Touching one byte in each line is enough to load the whole line. */
+  private static final int CACHE_LINE_BYTES = 64;
+
+  private static final Pattern CACHE_SIZE_PATTERN =
+      Pattern.compile("(\\d+)\\s*([KMG]?)B?", Pattern.CASE_INSENSITIVE);
+
+  private final byte[] buffer;
+
+  /** Written after each walk so that the walk can't be optimized away. */
+  private volatile int sideEffect;
+
+  CacheThrasher(int bytes) {
+    this.buffer = new byte[bytes];
+  }
+
+  /**
+   * Reads and writes every cache line of the buffer. Writing leaves the lines
+   * dirty, so that the benchmark's lines must also be refetched in an
+   * exclusive state.
+   */
+  public void thrash() {
+    byte[] buffer = this.buffer;
+    int sum = 0;
+    for (int i = 0; i < buffer.length; i += CACHE_LINE_BYTES) {
+      sum += buffer[i];
+      buffer[i] = (byte) sum;
+    }
+    sideEffect = sum;
+  }
+
+  public int getBytes() {
+    return buffer.length;
+  }
+
+  /**
+   * Returns the default buffer size: larger than the cache size in {@code
+   * cacheSizeDescription} if it can be parsed, but no more than a quarter of
+   * the maximum heap.
+   *
+   * @param cacheSizeDescription the {@code host.cpu.cachesize} property of the
+   *     {@link Environment}, or null if it is unknown.
+   */
+  static int defaultBytes(String cacheSizeDescription) {
+    long cacheBytes = parseCacheSize(cacheSizeDescription);
+    long bytes = cacheBytes > 0 ? CACHE_SIZE_MULTIPLE * cacheBytes : DEFAULT_BYTES;
+    bytes = Math.min(bytes, Runtime.getRuntime().maxMemory() / 4);
+    return (int) Math.min(bytes, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the largest size in a cache size description like "8192 KB" or
+   * "[512 KB x 4]", or -1 if it contains no size.
+   */
+  static long parseCacheSize(String cacheSizeDescription) {
+    if (cacheSizeDescription == null) {
+      return -1;
+    }
+    long result = -1;
+    Matcher matcher = CACHE_SIZE_PATTERN.matcher(cacheSizeDescription);
+    while (matcher.find()) {
+      String unit = matcher.group(2).toUpperCase();
+      if (unit.length() == 0 && !matcher.group().toUpperCase().endsWith("B")) {
+        continue; // a count, such as the 4 in "x 4"
+      }
+      result = Math.max(result, toBytes(matcher));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes in a size like "1048576", "64M" or "512 KB",
+   * or -1 if it isn't a size.
+   */
+  static long parseBytes(String size) {
+    Matcher matcher = CACHE_SIZE_PATTERN.matcher(size.trim());
+    return matcher.matches() ? toBytes(matcher) : -1;
+  }
+
+  private static long toBytes(Matcher matcher) {
+    long size;
+    try {
+      size = Long.parseLong(matcher.group(1));
+    } catch (NumberFormatException e) {
+      return -1; // too many digits
+    }
+    String unit = matcher.group(2).toUpperCase();
+    if (unit.equals("K")) {
+      size *= 1024;
+    } else if (unit.equals("M")) {
+      size *= 1024 * 1024;
+    } else if (unit.equals("G")) {
+      size *= 1024 * 1024 * 1024;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.List;
+
+/**
+ * Finds level shifts in a time-ordered sequence of trial results, such as
+ * those caused by late recompilation, deoptimization or CPU frequency changes.
+ *
+ * <p>Each possible split of the sequence into a leading and trailing segment
+ * is scored with Welch's t statistic. The best split is reported as a level
+ * shift if its statistic and the relative difference of the segment means
+ * both exceed their thresholds.
+ */
+final class ChangePointDetector {
+
+  /** Each segment must contain at least this many trials. */
+  private static final int MIN_SEGMENT_SIZE = 2;
+
+  /** A level shift can only be found among at least this many values. */
+  static final int MIN_VALUES = 2 * MIN_SEGMENT_SIZE;
+
+  private final double minTStatistic;
+  private final double minRelativeShift;
+
+  ChangePointDetector() {
+    this(5.0, 0.05);
+  }
+
+  ChangePointDetector(double minTStatistic, double minRelativeShift) {
+    this.minTStatistic = minTStatistic;
+    this.minRelativeShift = minRelativeShift;
+  }
+
+  /**
+   * Returns the index of the first value after a level shift in {@code
+   * values}, or 0 if the values contain no level shift. This is always 0 for
+   * fewer than {@link #MIN_VALUES} values.
+   */
+  public int findLevelShift(List<Double> values) {
+    int n = values.size();
+    int bestIndex = 0;
+    double bestT = 0;
+    for (int k = MIN_SEGMENT_SIZE; k <= n - MIN_SEGMENT_SIZE; k++) {
+      double leftMean = mean(values, 0, k);
+      double rightMean = mean(values, k, n);
+      double shift = Math.abs(leftMean - rightMean);
+      if (shift < minRelativeShift * Math.min(leftMean, rightMean)) {
+        continue;
+      }
+
+      double standardError = Math.sqrt(variance(values, 0, k, leftMean) / k
+          + variance(values, k, n, rightMean) / (n - k));
+      double t = standardError == 0 ? Double.POSITIVE_INFINITY : shift / standardError;
+      if (t > bestT) {
+        bestT = t;
+        bestIndex = k;
+      }
+    }
+    return bestT >= minTStatistic ? bestIndex : 0;
+  }
+
+  private static double mean(List<Double> values, int from, int to) {
+    double sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += values.get(i);
+    }
+    return sum / (to - from);
+  }
+
+  private static double variance(List<Double> values, int from, int to, double mean) {
+    double sumOfSquares = 0;
+    for (int i = from; i < to; i++) {
+      double delta = values.get(i) - mean;
+      sumOfSquares += delta * delta;
+    }
+    return sumOfSquares / (to - from - 1);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds performance cliffs along a size axis, such as where a working set
+ * stops fitting in a CPU cache.
+ *
+ * <p>The time per rep of most benchmarks grows as a power of the size, so the
+ * growth between each pair of neighbouring sizes is compared on a log-log
+ * scale against the median growth across the whole sweep. A step that grows
+ * by more than {@code minRatio} times the trend is reported as a cliff.
+ */
+final class CliffDetector {
+
+  /** Sweeps with fewer sizes than this have too little trend to compare against. */
+  private static final int MIN_SIZES = 4;
+
+  private final double minRatio;
+
+  CliffDetector() {
+    this(1.5);
+  }
+
+  CliffDetector(double minRatio) {
+    this.minRatio = minRatio;
+  }
+
+  /**
+   * Returns the cliffs in a sweep, or an empty list if there are none.
+   *
+   * @param sizes distinct positive sizes, in ascending order.
+   * @param nanos the time per rep at each size.
+   */
+  public List<Cliff> findCliffs(List<Double> sizes, List<Double> nanos) {
+    if (sizes.size() < MIN_SIZES) {
+      return Collections.emptyList();
+    }
+
+    int steps = sizes.size() - 1;
+    double[] sizeGrowth = new double[steps];
+    double[] timeGrowth = new double[steps];
+    List<Double> slopes = new ArrayList<Double>();
+    for (int i = 0; i < steps; i++) {
+      sizeGrowth[i] = Math.log(sizes.get(i + 1) / sizes.get(i));
+      timeGrowth[i] = Math.log(nanos.get(i + 1) / nanos.get(i));
+      slopes.add(timeGrowth[i] / sizeGrowth[i]);
+    }
+    Collections.sort(slopes);
+    double trend = steps % 2 == 1
+        ? slopes.get(steps / 2)
+        : (slopes.get(steps / 2 - 1) + slopes.get(steps / 2)) / 2;
+
+    List<Cliff> result = new ArrayList<Cliff>();
+    for (int i = 0; i < steps; i++) {
+      double ratio = Math.exp(timeGrowth[i] - trend * sizeGrowth[i]);
+      if (ratio >= minRatio) {
+        result.add(new Cliff(i, ratio));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A jump in the time per rep between two neighbouring sizes.
+   */
+  static final class Cliff {
+    private final int index;
+    private final double ratio;
+
+    Cliff(int index, double ratio) {
+      this.index = index;
+      this.ratio = ratio;
+    }
+
+    /** Returns the index of the size after which the time per rep jumps. */
+    public int getIndex() {
+      return index;
+    }
+
+    /** Returns how many times more the time per rep grew than the trend predicts. */
+    public double getRatio() {
+      return ratio;
+    }
+  }
+}
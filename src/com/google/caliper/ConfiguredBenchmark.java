@@ -16,6 +16,7 @@
 
 package com.google.caliper;
 
+import java.util.Collections;
 import java.util.Map;
 
 public abstract class ConfiguredBenchmark {
@@ -37,6 +38,70 @@ public abstract class ConfiguredBenchmark {
 
   public abstract void close() throws Exception;
 
+  /**
+   * Returns true if this benchmark defines an object graph for the footprint
+   * measurement to build.
+   */
+  public boolean hasFootprint() {
+    return false;
+  }
+
+  /**
+   * Builds the object graph whose retained size the footprint measurement
+   * reports, or returns null if this benchmark doesn't define one.
+   */
+  public Object createFootprint() throws Exception {
+    return null;
+  }
+
+  /**
+   * Returns the number of operations each rep performs, or 0 if this benchmark
+   * doesn't report throughput in operations.
+   */
+  public double getOperationsPerRep() {
+    return 0;
+  }
+
+  /**
+   * Returns the number of bytes each rep processes, or 0 if this benchmark
+   * doesn't report throughput in bytes.
+   */
+  public double getBytesPerRep() {
+    return 0;
+  }
+
+  /**
+   * Returns metrics recorded by the benchmark itself during the most recent
+   * call to {@link #run}, such as the latency of asynchronous operations.
+   */
+  public Map<String, Double> getTrialMetrics() {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Returns true if this benchmark passes its results to a {@link Sink}, whose
+   * cost is then included in its measurements.
+   */
+  public boolean usesSink() {
+    return false;
+  }
+
+  /**
+   * Returns true if this benchmark runs untimed code before or after each rep,
+   * such as {@link BeforeRep} and {@link AfterRep} methods.
+   */
+  public boolean hasPerRepHooks() {
+    return false;
+  }
+
+  /**
+   * Returns the nanos spent outside of the timed region during the most recent
+   * call to {@link #run}. The harness subtracts this from the elapsed time.
+   */
+  public long getUntimedNanos() {
+    return 0;
+  }
+
   public final Benchmark getBenchmark() {
     return underlyingBenchmark;
   }
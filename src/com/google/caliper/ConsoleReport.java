@@ -16,19 +16,25 @@
 
 package com.google.caliper;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Prints a report containing the tested values and the corresponding
@@ -47,6 +53,15 @@ final class ConsoleReport {
 
   private static final int barGraphWidth = 30;
 
+  /**
+   * Trials whose wall clock time exceeds the benchmark thread's CPU time by
+   * more than this factor are flagged.
+   */
+  private static final double MAX_WALL_TO_CPU_RATIO = 1.5;
+
+  /** How many of the types allocated or retained the most bytes to list for each scenario. */
+  private static final int TOP_ALLOCATION_SITES = 10;
+
   private static final int UNITS_FOR_SCORE_100 = 1;
   private static final int UNITS_FOR_SCORE_10 = 1000000000; // 1 s
 
@@ -54,6 +69,27 @@ final class ConsoleReport {
       new LinearTranslation(Math.log(UNITS_FOR_SCORE_10), 10,
                             Math.log(UNITS_FOR_SCORE_100), 100);
 
+  private static final Map<String, Integer> OPERATIONS_PER_SECOND_UNITS = ImmutableMap.of(
+      "op/s", 1, "Kop/s", 1000, "Mop/s", 1000000, "Gop/s", 1000000000);
+
+  private static final Map<String, Integer> BYTES_PER_SECOND_UNITS = ImmutableMap.of(
+      "B/s", 1, "KB/s", 1000, "MB/s", 1000000, "GB/s", 1000000000);
+
+  private static final Map<String, Integer> ALLOCATED_BYTES_UNITS = ImmutableMap.of(
+      "B thread", 1, "KiB thread", 1024, "MiB thread", 1048576, "GiB thread", 1073741824);
+
+  private static final Map<String, Integer> LATENCY_MEDIAN_UNITS = ImmutableMap.of(
+      "ns p50", 1, "us p50", 1000, "ms p50", 1000000, "s p50", 1000000000);
+
+  private static final Map<String, Integer> LATENCY_99TH_UNITS = ImmutableMap.of(
+      "ns p99", 1, "us p99", 1000, "ms p99", 1000000, "s p99", 1000000000);
+
+  private static final Map<String, Integer> PINNED_EVENTS_UNITS = ImmutableMap.of(
+      "pinned", 1, "K pinned", 1000, "M pinned", 1000000);
+
+  private static final Map<String, Integer> CARRIER_UTILIZATION_UNITS = ImmutableMap.of(
+      "carrier%", 1);
+
   public static final Ordering<Entry<String, Integer>> UNIT_ORDERING =
       new Ordering<Entry<String, Integer>>() {
         @Override public int compare(Entry<String, Integer> a, Entry<String, Integer> b) {
@@ -63,6 +99,7 @@ final class ConsoleReport {
 
   private final List<Variable> variables;
   private final Run run;
+  private final Environment environment;
   private final List<Scenario> scenarios;
 
   private final List<MeasurementType> orderedMeasurementTypes;
@@ -78,18 +115,24 @@ final class ConsoleReport {
       new EnumMap<MeasurementType, String>(MeasurementType.class);
   private final EnumMap<MeasurementType, Integer> measurementColumnLengthMap =
       new EnumMap<MeasurementType, Integer>(MeasurementType.class);
+  private final List<MetricColumn> metricColumns = new ArrayList<MetricColumn>();
   private boolean printScore;
 
-  ConsoleReport(Run run, Arguments arguments) {
+  ConsoleReport(Run run, Environment environment, Arguments arguments) {
     this.run = run;
+    this.environment = environment;
     unitMap.put(MeasurementType.TIME, arguments.getTimeUnit());
     unitMap.put(MeasurementType.INSTANCE, arguments.getInstanceUnit());
     unitMap.put(MeasurementType.MEMORY, arguments.getMemoryUnit());
 
+    orderedMeasurementTypes = new ArrayList<MeasurementType>();
+    orderedMeasurementTypes.add(MeasurementType.TIME);
     if (arguments.getMeasureMemory()) {
-      orderedMeasurementTypes = Arrays.asList(MeasurementType.values());
-    } else {
-      orderedMeasurementTypes = Arrays.asList(MeasurementType.TIME);
+      orderedMeasurementTypes.add(MeasurementType.INSTANCE);
+      orderedMeasurementTypes.add(MeasurementType.MEMORY);
+    }
+    if (allMeasured(MeasurementType.FOOTPRINT)) {
+      orderedMeasurementTypes.add(MeasurementType.FOOTPRINT);
     }
 
     if (arguments.getPrimaryMeasurementType() != null) {
@@ -192,9 +235,96 @@ final class ConsoleReport {
           : 1, unitMap.get(measurementType).trim().length()));
     }
 
+    // shown next to the allocation agent's counts
+    if (orderedMeasurementTypes.contains(MeasurementType.MEMORY)) {
+      addMetricColumn(Measurement.ALLOCATED_BYTES_PER_REP, ALLOCATED_BYTES_UNITS);
+    }
+    addMetricColumn(Measurement.OPERATIONS_PER_SECOND, OPERATIONS_PER_SECOND_UNITS);
+    addMetricColumn(Measurement.BYTES_PER_SECOND, BYTES_PER_SECOND_UNITS);
+    addMetricColumn(Measurement.LATENCY_MEDIAN_NANOS, LATENCY_MEDIAN_UNITS);
+    addMetricColumn(Measurement.LATENCY_99TH_NANOS, LATENCY_99TH_UNITS);
+    for (String metric : getGroupMetrics()) {
+      String method = metric.substring(Measurement.GROUP_NANOS_PREFIX.length());
+      addMetricColumn(metric, ImmutableMap.of("ns " + method, 1, "us " + method, 1000,
+          "ms " + method, 1000000, "s " + method, 1000000000));
+    }
+    addMetricColumn(Measurement.PINNED_EVENTS, PINNED_EVENTS_UNITS);
+    addMetricColumn(Measurement.CARRIER_UTILIZATION, CARRIER_UTILIZATION_UNITS);
+
     this.printScore = arguments.printScore();
   }
 
+  /**
+   * Adds a column for the named metric if any scenario recorded it,
+   * using the largest unit in which every value is at least 1.
+   */
+  private void addMetricColumn(String metric, Map<String, Integer> units) {
+    double min = Double.POSITIVE_INFINITY;
+    double max = 0;
+    for (ScenarioResult scenarioResult : run.getMeasurements().values()) {
+      double value = medianMetric(scenarioResult, metric);
+      if (!Double.isNaN(value)) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+    }
+    if (max == 0) {
+      return;
+    }
+
+    List<Entry<String, Integer>> entries = UNIT_ORDERING.reverse().sortedCopy(units.entrySet());
+    Entry<String, Integer> unit = entries.get(entries.size() - 1);
+    for (Entry<String, Integer> entry : entries) {
+      if (min / entry.getValue() >= 1) {
+        unit = entry;
+        break;
+      }
+    }
+
+    double divideBy = unit.getValue();
+    // counts like pinning events may be zero for some scenarios
+    int decimalDigits = min > 0 ? Math.max(0, 3 - ceil(Math.log10(min / divideBy))) : 0;
+    int length = Math.max(1, ceil(Math.log10(max / divideBy)))
+        + (decimalDigits > 0 ? 1 + decimalDigits : 0);
+    metricColumns.add(new MetricColumn(metric, unit.getKey(), divideBy,
+        Math.max(length, unit.getKey().length()), decimalDigits));
+  }
+
+  /**
+   * Returns the per-method metrics of every thread group that was run.
+   */
+  private Set<String> getGroupMetrics() {
+    Set<String> result = new TreeSet<String>();
+    for (ScenarioResult scenarioResult : run.getMeasurements().values()) {
+      MeasurementSet measurementSet = scenarioResult.getMeasurementSet(MeasurementType.TIME);
+      for (Measurement measurement : measurementSet.getMeasurements()) {
+        for (String metric : measurement.getMetrics().keySet()) {
+          if (metric.startsWith(Measurement.GROUP_NANOS_PREFIX)) {
+            result.add(metric);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if every scenario has measurements of {@code measurementType}.
+   */
+  private boolean allMeasured(MeasurementType measurementType) {
+    for (ScenarioResult scenarioResult : run.getMeasurements().values()) {
+      if (scenarioResult.getMeasurementSet(measurementType) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double medianMetric(ScenarioResult scenarioResult, String metric) {
+    MeasurementSet measurementSet = scenarioResult.getMeasurementSet(MeasurementType.TIME);
+    return measurementSet != null ? measurementSet.medianMetric(metric) : Double.NaN;
+  }
+
   private String getUnit(String userSuppliedUnit, MeasurementType measurementType, double min) {
     Map<String, Integer> units = getUnits(measurementType);
 
@@ -279,6 +409,38 @@ final class ConsoleReport {
     }
   }
 
+  /**
+   * A column showing the median of a per-trial metric, such as operations per
+   * second or the latency of asynchronous operations.
+   */
+  private static class MetricColumn {
+    final String metric;
+    final String unit;
+    final double divideBy;
+    final int length;
+    final int decimalDigits;
+
+    MetricColumn(String metric, String unit, double divideBy, int length,
+        int decimalDigits) {
+      this.metric = metric;
+      this.unit = unit;
+      this.divideBy = divideBy;
+      this.length = length;
+      this.decimalDigits = decimalDigits;
+    }
+
+    String header() {
+      return String.format("%" + length + "s ", unit);
+    }
+
+    String value(ScenarioResult scenarioResult) {
+      double value = medianMetric(scenarioResult, metric);
+      return Double.isNaN(value)
+          ? String.format("%" + length + "s ", "-")
+          : String.format("%" + length + "." + decimalDigits + "f ", value / divideBy);
+    }
+  }
+
   /**
    * Orders scenarios by the variables.
    */
@@ -301,6 +463,19 @@ final class ConsoleReport {
     System.out.println();
     printUninterestingVariables();
     printCharCounts();
+    printSinkCost();
+    printAsyncOverhead();
+    printEliminatedAllocations();
+    printThreadAllocations();
+    printOffHeapMemory();
+    printGcPressure();
+    printAllocationFits();
+    printAllocationSites();
+    printRetainedTypes();
+    printHeapSweeps();
+    printRuntimeFootprints();
+    printCliffs();
+    printWarnings();
   }
 
   private void printCharCounts() {
@@ -323,6 +498,537 @@ final class ConsoleReport {
     }
   }
 
+  /**
+   * Prints the calibrated cost of a Sink.consume call, if any scenario used a
+   * sink. This cost is included in those scenarios' results.
+   */
+  private void printSinkCost() {
+    double min = Double.POSITIVE_INFINITY;
+    double max = 0;
+    for (ScenarioResult scenarioResult : run.getMeasurements().values()) {
+      MeasurementSet measurementSet = scenarioResult.getMeasurementSet(MeasurementType.TIME);
+      if (measurementSet != null && measurementSet.getSinkConsumeNanos() > 0) {
+        min = Math.min(min, measurementSet.getSinkConsumeNanos());
+        max = Math.max(max, measurementSet.getSinkConsumeNanos());
+      }
+    }
+    if (max > 0) {
+      System.out.println();
+      System.out.printf("Note: each Sink.consume call took %s, which is included in the "
+          + "results of benchmarks that use a Sink.%n",
+          min == max ? String.format("%.2fns", max) : String.format("%.2f-%.2fns", min, max));
+    }
+  }
+
+  /**
+   * Prints the calibrated executor overhead of each asynchronous scenario.
+   * This overhead is included in those scenarios' results.
+   */
+  private void printAsyncOverhead() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      double overhead = medianMetric(run.getMeasurements().get(scenario),
+          Measurement.ASYNC_OVERHEAD_NANOS);
+      if (Double.isNaN(overhead)) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: asynchronous results include the overhead of their executor. "
+            + "With no-op operations, it was:");
+        first = false;
+      }
+      System.out.printf("  %.2fns per operation for %s%n", overhead, scenario);
+    }
+  }
+
+  /**
+   * Prints the scenarios whose compiled code allocated fewer bytes per rep
+   * than the allocation agent counted. The agent's instrumentation prevents
+   * escape analysis, so the difference was probably scalar replaced. Both
+   * count only the benchmark thread's allocations.
+   */
+  private void printEliminatedAllocations() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      ScenarioResult scenarioResult = run.getMeasurements().get(scenario);
+      MeasurementSet agentMeasurements = scenarioResult.getMeasurementSet(MeasurementType.MEMORY);
+      double jitBytes = medianMetric(scenarioResult, Measurement.ALLOCATED_BYTES_PER_REP);
+      if (agentMeasurements == null || Double.isNaN(jitBytes)) {
+        continue;
+      }
+      double agentBytes = agentMeasurements.medianRaw();
+      // allow for the rounding of the per-rep counts
+      if (agentBytes - jitBytes < 1) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: the compiled code allocated less than the allocation agent "
+            + "counted. Escape analysis probably eliminated the difference:");
+        first = false;
+      }
+      System.out.printf("  %.0f of %.0f bytes per rep for %s%n",
+          agentBytes - jitBytes, agentBytes, scenario);
+    }
+  }
+
+  /**
+   * Prints the bytes allocated per rep by each thread, for the scenarios in
+   * which threads other than the benchmark thread allocated.
+   */
+  private void printThreadAllocations() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      MeasurementSet measurementSet =
+          run.getMeasurements().get(scenario).getMeasurementSet(MeasurementType.MEMORY);
+      if (measurementSet == null
+          || !(measurementSet.medianMetric(Measurement.OUT_OF_THREAD_ALLOCATIONS) > 0)) {
+        continue;
+      }
+      Set<String> metrics = new TreeSet<String>();
+      for (Measurement measurement : measurementSet.getMeasurements()) {
+        for (String metric : measurement.getMetrics().keySet()) {
+          if (metric.startsWith(Measurement.ALLOCATIONS_BY_THREAD_PREFIX)) {
+            metrics.add(metric);
+          }
+        }
+      }
+      List<String> threads = new ArrayList<String>();
+      for (String metric : metrics) {
+        threads.add(String.format("%s %.0fB",
+            metric.substring(Measurement.ALLOCATIONS_BY_THREAD_PREFIX.length()),
+            measurementSet.medianMetric(metric)));
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: other threads allocated during some scenarios. Bytes per rep by "
+            + "thread:");
+        first = false;
+      }
+      System.out.println("  " + Joiner.on(", ").join(threads) + " for " + scenario);
+    }
+  }
+
+  /**
+   * Prints how the buffer pools and the VM's memory outside the heap changed
+   * per rep, for the scenarios in which they changed.
+   */
+  private void printOffHeapMemory() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      MeasurementSet measurementSet =
+          run.getMeasurements().get(scenario).getMeasurementSet(MeasurementType.TIME);
+      if (measurementSet == null) {
+        continue;
+      }
+      Set<String> pools = new TreeSet<String>();
+      for (Measurement measurement : measurementSet.getMeasurements()) {
+        for (String metric : measurement.getMetrics().keySet()) {
+          if (metric.startsWith(Measurement.BUFFER_POOL_PREFIX)
+              && metric.endsWith(Measurement.PER_REP_SUFFIX)) {
+            pools.add(metric.substring(Measurement.BUFFER_POOL_PREFIX.length(),
+                metric.indexOf('.', Measurement.BUFFER_POOL_PREFIX.length())));
+          }
+        }
+      }
+
+      List<String> changes = new ArrayList<String>();
+      for (String pool : pools) {
+        String prefix = Measurement.BUFFER_POOL_PREFIX + pool + ".";
+        double count = measurementSet.medianChange(prefix + "count" + Measurement.PER_REP_SUFFIX);
+        double used = measurementSet.medianChange(prefix + "used" + Measurement.PER_REP_SUFFIX);
+        if (count != 0 || used != 0) {
+          changes.add(String.format("%s %+.2f buffers %+.0fB", pool, count, used));
+        }
+      }
+      double nativeCommitted = measurementSet.medianChange(
+          Measurement.NATIVE_COMMITTED + Measurement.PER_REP_SUFFIX);
+      if (nativeCommitted != 0) {
+        changes.add(String.format("native %+.0fB", nativeCommitted));
+      }
+      if (changes.isEmpty()) {
+        continue;
+      }
+
+      if (first) {
+        System.out.println();
+        System.out.println("Note: memory outside the Java heap changed during some scenarios. "
+            + "Change per rep:");
+        first = false;
+      }
+      System.out.println("  " + Joiner.on(", ").join(changes) + " for " + scenario);
+    }
+  }
+
+  /**
+   * Prints the bytes per rep that outlived young collections, for the
+   * scenarios in which any were promoted to the old generation or it grew.
+   */
+  private void printGcPressure() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      MeasurementSet measurementSet =
+          run.getMeasurements().get(scenario).getMeasurementSet(MeasurementType.TIME);
+      if (measurementSet == null) {
+        continue;
+      }
+      double promoted = measurementSet.medianMetric(
+          Measurement.GC_PROMOTED_BYTES + Measurement.PER_REP_SUFFIX);
+      double oldGrowth = measurementSet.medianMetric(
+          Measurement.GC_OLD_GROWTH_BYTES + Measurement.PER_REP_SUFFIX);
+      if (!(promoted > 0) && !(oldGrowth > 0)) {
+        continue;
+      }
+
+      if (first) {
+        System.out.println();
+        System.out.println("Note: objects outlived young collections during some scenarios. "
+            + "Bytes per rep:");
+        first = false;
+      }
+      List<String> values = new ArrayList<String>();
+      if (!Double.isNaN(promoted)) {
+        values.add(String.format("%.1fB promoted", promoted));
+      }
+      if (!Double.isNaN(oldGrowth)) {
+        values.add(String.format("old generation %+.1fB", oldGrowth));
+      }
+      System.out.println("  " + Joiner.on(", ").join(values) + " for " + scenario);
+    }
+  }
+
+  /**
+   * Prints the line fit to the allocations of each scenario measured with
+   * --allocationFit: the allocations per rep, those made once, and how well
+   * the line fits.
+   */
+  private void printAllocationFits() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      ScenarioResult result = run.getMeasurements().get(scenario);
+      List<String> fits = new ArrayList<String>();
+      for (MeasurementType type : new MeasurementType[] {
+          MeasurementType.INSTANCE, MeasurementType.MEMORY}) {
+        MeasurementSet measurementSet = result.getMeasurementSet(type);
+        if (measurementSet == null) {
+          continue;
+        }
+        double rSquared = measurementSet.medianMetric(Measurement.ALLOCATION_FIT_R_SQUARED);
+        if (Double.isNaN(rSquared)) {
+          continue;
+        }
+        String unit = type == MeasurementType.INSTANCE ? " instances" : "B";
+        fits.add(String.format("%.2f%s per rep + %.0f%s once (R^2=%.3f)",
+            measurementSet.medianRaw(), unit,
+            measurementSet.medianMetric(Measurement.ALLOCATION_FIT_INTERCEPT), unit, rSquared));
+      }
+      if (fits.isEmpty()) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: allocations were fit to a line over increasing rep counts:");
+        first = false;
+      }
+      System.out.println("  " + Joiner.on(", ").join(fits) + " for " + scenario);
+    }
+  }
+
+  /**
+   * Prints the types each scenario allocated the most bytes of per rep.
+   */
+  private void printAllocationSites() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      List<AllocationSite> sites = run.getMeasurements().get(scenario).getAllocationSites();
+      if (sites.isEmpty()) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: the types allocated the most per rep were:");
+        first = false;
+      }
+      System.out.println("  " + scenario);
+      System.out.printf("  %12s %12s  %s%n", "bytes", "instances", "type");
+      for (AllocationSite site : sites.subList(0, Math.min(sites.size(), TOP_ALLOCATION_SITES))) {
+        System.out.printf("  %12.1f %12.1f  %s%n",
+            site.getBytesPerRep(), site.getInstancesPerRep(), site.getType());
+      }
+    }
+  }
+
+  /**
+   * Prints the size of each measured footprint and the types retaining the
+   * most of it.
+   */
+  private void printRetainedTypes() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      MeasurementSet measurementSet =
+          run.getMeasurements().get(scenario).getMeasurementSet(MeasurementType.FOOTPRINT);
+      if (measurementSet == null) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: the footprint methods' object graphs retained:");
+        first = false;
+      }
+      System.out.printf("  %.0f bytes in %.0f objects for %s%n", measurementSet.medianRaw(),
+          measurementSet.medianMetric(Measurement.FOOTPRINT_OBJECTS), scenario);
+      List<RetainedType> types = measurementSet.getRetainedTypes();
+      System.out.printf("  %12s %12s  %s%n", "bytes", "instances", "type");
+      for (RetainedType type : types.subList(0, Math.min(types.size(), TOP_ALLOCATION_SITES))) {
+        System.out.printf("  %12d %12d  %s%n",
+            type.getBytes(), type.getInstances(), type.getType());
+      }
+    }
+  }
+
+  /**
+   * Prints the smallest heap each swept scenario ran well in, and its time
+   * per rep at each heap size tried.
+   */
+  private void printHeapSweeps() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      HeapSweep sweep = run.getMeasurements().get(scenario)
+          .getMeasurementSet(MeasurementType.TIME).getHeapSweep();
+      if (sweep == null) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Note: the heap sweep found these smallest maximum heap sizes:");
+        first = false;
+      }
+      if (sweep.getSmallestHeapBytes() == -1) {
+        System.out.printf("  none within %.0f%% of %.1f ns for %s%n",
+            sweep.getTolerance() * 100, sweep.getBaselineNanos(), scenario);
+      } else {
+        System.out.printf("  %dMB within %.0f%% of %.1f ns for %s%n",
+            sweep.getSmallestHeapBytes() / HeapBisection.MEGABYTE, sweep.getTolerance() * 100,
+            sweep.getBaselineNanos(), scenario);
+      }
+      System.out.printf("  %12s %12s%n", "heap", "ns");
+      for (HeapSizePoint point : sweep.getPoints()) {
+        System.out.printf("  %10dMB %12s%n", point.getHeapBytes() / HeapBisection.MEGABYTE,
+            point.failed() ? point.getFailure() : String.format("%.1f", point.getNanosPerRep()));
+      }
+    }
+  }
+
+  /**
+   * Prints the classes loaded and the metaspace and code cache used at each
+   * stage of the time measurement of each scenario, as changes from the first
+   * stage. The first stage's own footprint is mostly the VM's and Caliper's,
+   * so only the changes are the benchmark's.
+   */
+  private void printRuntimeFootprints() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      MeasurementSet measurementSet =
+          run.getMeasurements().get(scenario).getMeasurementSet(MeasurementType.TIME);
+      if (measurementSet == null) {
+        continue;
+      }
+      List<RuntimeFootprint> footprints = measurementSet.getRuntimeFootprints();
+      if (footprints.size() < 2) {
+        continue;
+      }
+      RuntimeFootprint baseline = footprints.get(0);
+      List<RuntimeFootprint> stages = footprints.subList(1, footprints.size());
+      if (first) {
+        System.out.println();
+        System.out.print("Note: classes loaded, metaspace and code cache used");
+        for (RuntimeFootprint footprint : stages) {
+          System.out.print(footprint == stages.get(0) ? " " : ", ");
+          System.out.print(footprint.getStage());
+        }
+        System.out.println(", compared to " + baseline.getStage() + ":");
+        first = false;
+      }
+      List<String> classes = new ArrayList<String>();
+      List<String> metaspace = new ArrayList<String>();
+      List<String> codeCache = new ArrayList<String>();
+      for (RuntimeFootprint footprint : stages) {
+        classes.add(String.format("%+d",
+            footprint.getLoadedClasses() - baseline.getLoadedClasses()));
+        metaspace.add(formatKilobytesChange(
+            baseline.getMetaspaceBytes(), footprint.getMetaspaceBytes()));
+        codeCache.add(formatKilobytesChange(
+            baseline.getCodeCacheBytes(), footprint.getCodeCacheBytes()));
+      }
+      System.out.printf("  %s classes, %s metaspace, %s code cache for %s%n",
+          Joiner.on(" -> ").join(classes), Joiner.on(" -> ").join(metaspace),
+          Joiner.on(" -> ").join(codeCache), scenario);
+    }
+  }
+
+  private static String formatKilobytesChange(long before, long after) {
+    return before == -1 || after == -1
+        ? "?" : String.format("%+dKB", Math.round((after - before) / 1024.0));
+  }
+
+  /**
+   * Prints the performance cliffs along each numeric variable, such as a size
+   * swept with a range, and where the host's caches would fill along it.
+   */
+  private void printCliffs() {
+    CliffDetector cliffDetector = new CliffDetector();
+    Map<String, Long> cacheSizes = getCacheSizes();
+    boolean first = true;
+    for (Variable axis : variables) {
+      if (!isNumeric(axis) || axis.name.equals(Scenario.TRIAL_KEY)) {
+        continue;
+      }
+
+      /*
+       * Each combination of the other variables is a separate sweep along the
+       * axis. Trials of the same scenario are averaged.
+       */
+      Map<String, SortedMap<Double, List<Double>>> sweeps =
+          new LinkedHashMap<String, SortedMap<Double, List<Double>>>();
+      for (Scenario scenario : scenarios) {
+        StringBuilder others = new StringBuilder();
+        for (Variable variable : variables) {
+          if (variable != axis && variable.isInteresting()
+              && !variable.name.equals(Scenario.TRIAL_KEY)) {
+            others.append(others.length() == 0 ? "" : ", ")
+                .append(variable.name).append("=").append(variable.get(scenario));
+          }
+        }
+        SortedMap<Double, List<Double>> sweep = sweeps.get(others.toString());
+        if (sweep == null) {
+          sweep = new TreeMap<Double, List<Double>>();
+          sweeps.put(others.toString(), sweep);
+        }
+        double size = Double.parseDouble(axis.get(scenario));
+        List<Double> nanos = sweep.get(size);
+        if (nanos == null) {
+          nanos = new ArrayList<Double>();
+          sweep.put(size, nanos);
+        }
+        nanos.add(run.getMeasurements().get(scenario)
+            .getMeasurementSet(MeasurementType.TIME).medianRaw());
+      }
+
+      for (Entry<String, SortedMap<Double, List<Double>>> sweep : sweeps.entrySet()) {
+        List<Double> sizes = new ArrayList<Double>(sweep.getValue().keySet());
+        List<Double> nanos = new ArrayList<Double>();
+        for (List<Double> trials : sweep.getValue().values()) {
+          double sum = 0;
+          for (double d : trials) {
+            sum += d;
+          }
+          nanos.add(sum / trials.size());
+        }
+
+        for (CliffDetector.Cliff cliff : cliffDetector.findCliffs(sizes, nanos)) {
+          if (first) {
+            System.out.println();
+            System.out.println("Note: the time per rep jumped beyond its trend at these points:");
+            first = false;
+          }
+          System.out.printf("  %.1fx from %s=%s to %s%s%n", cliff.getRatio(), axis.name,
+              formatSize(sizes.get(cliff.getIndex())), formatSize(sizes.get(cliff.getIndex() + 1)),
+              sweep.getKey().length() > 0 ? " for " + sweep.getKey() : "");
+          printCacheCrossings(cacheSizes, axis.name, sizes.get(cliff.getIndex()),
+              sizes.get(cliff.getIndex() + 1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Prints how many bytes per unit of {@code axis} would make the working set
+   * cross each cache between {@code from} and {@code to}. A cliff is most
+   * likely caused by the cache whose figure matches the benchmark's data.
+   */
+  private void printCacheCrossings(Map<String, Long> cacheSizes, String axis,
+      double from, double to) {
+    if (cacheSizes.isEmpty()) {
+      return;
+    }
+    StringBuilder crossings = new StringBuilder();
+    for (Entry<String, Long> cache : cacheSizes.entrySet()) {
+      crossings.append(crossings.length() == 0 ? "" : ", ")
+          .append(String.format("%s (%dK) at %.3g-%.3g", cache.getKey(), cache.getValue() / 1024,
+              cache.getValue() / to, cache.getValue() / from));
+    }
+    System.out.println("    the working set fills " + crossings + " bytes per unit of " + axis);
+  }
+
+  /**
+   * Returns the size of each data cache level reported in the environment,
+   * falling back to the single cache size from /proc/cpuinfo.
+   */
+  private Map<String, Long> getCacheSizes() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    if (environment == null) {
+      return result;
+    }
+    String prefix = "host.cpu.cache.";
+    for (Entry<String, String> property : environment.getProperties().entrySet()) {
+      if (property.getKey().startsWith(prefix)) {
+        long bytes = CacheThrasher.parseBytes(property.getValue());
+        if (bytes > 0) {
+          result.put(property.getKey().substring(prefix.length()), bytes);
+        }
+      }
+    }
+    if (result.isEmpty()) {
+      long bytes = CacheThrasher.parseCacheSize(
+          environment.getProperties().get("host.cpu.cachesize"));
+      if (bytes > 0) {
+        result.put("cache", bytes);
+      }
+    }
+    return result;
+  }
+
+  private static String formatSize(double size) {
+    return size == Math.rint(size) ? Long.toString((long) size) : Double.toString(size);
+  }
+
+  private static boolean isNumeric(Variable variable) {
+    try {
+      for (String value : variable.values) {
+        if (!(Double.parseDouble(value) > 0)) {
+          return false;
+        }
+      }
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Prints the warnings recorded for each scenario, if any.
+   */
+  private void printWarnings() {
+    boolean first = true;
+    for (Scenario scenario : scenarios) {
+      ScenarioResult scenarioResult = run.getMeasurements().get(scenario);
+      for (MeasurementType measurementType : MeasurementType.values()) {
+        MeasurementSet measurementSet = scenarioResult.getMeasurementSet(measurementType);
+        if (measurementSet == null) {
+          continue;
+        }
+        for (String warning : measurementSet.getWarnings()) {
+          if (first) {
+            System.out.println();
+            first = false;
+          }
+          System.out.println("Warning: " + scenario + ": " + warning);
+        }
+      }
+    }
+  }
+
   /**
    * Prints a table of values.
    */
@@ -352,6 +1058,9 @@ final class ConsoleReport {
               + (type == measurementType ? "" : " "));
     }
 
+    for (MetricColumn column : metricColumns) {
+      System.out.print(column.header());
+    }
     System.out.printf("%" + measurementColumnLengthMap.get(type) + "s", unitMap.get(type).trim());
     if (showGraphs) {
       String comparisonType = showLinear ? "linear" : "logarithmic";
@@ -360,6 +1069,8 @@ final class ConsoleReport {
     System.out.println();
 
     double sumOfLogs = 0.0;
+    boolean anyLevelShift = false;
+    boolean anyCpuStarved = false;
 
     for (Scenario scenario : scenarios) {
       for (Variable variable : variables) {
@@ -377,15 +1088,40 @@ final class ConsoleReport {
         }
       }
 
+      for (MetricColumn column : metricColumns) {
+        System.out.print(column.value(measurement));
+      }
       System.out.printf(numbersFormatMap.get(type),
           measurement.getMeasurementSet(type).medianUnits() / divideByMap.get(type));
       if (showGraphs) {
         System.out.printf(" %s", barGraph(measurement.getMeasurementSet(type).medianUnits(),
             showLinear));
       }
+      if (hasLevelShift(measurement)) {
+        System.out.print(" *");
+        anyLevelShift = true;
+      }
+      if (isCpuStarved(measurement)) {
+        System.out.print(" !");
+        anyCpuStarved = true;
+      }
       System.out.println();
     }
 
+    if (anyLevelShift) {
+      System.out.println();
+      System.out.println("* the measurements span a level shift and don't represent a single "
+          + "steady state. See the warnings below.");
+    }
+    if (anyCpuStarved) {
+      if (!anyLevelShift) {
+        System.out.println();
+      }
+      System.out.println("! in some trials the wall clock time was much longer than the CPU "
+          + "time of the benchmark thread. The thread was blocked or descheduled, perhaps "
+          + "because the host is oversubscribed.");
+    }
+
     if (printScore) {
       // arithmetic mean of logs, aka log of geometric mean
       double meanLogUnits = sumOfLogs / scenarios.size();
@@ -393,6 +1129,41 @@ final class ConsoleReport {
     }
   }
 
+  private boolean hasLevelShift(ScenarioResult scenarioResult) {
+    for (MeasurementType measurementType : orderedMeasurementTypes) {
+      MeasurementSet measurementSet = scenarioResult.getMeasurementSet(measurementType);
+      if (measurementSet != null && measurementSet.hasLevelShift()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if a time measurement has trials whose wall clock time far
+   * exceeds the benchmark thread's CPU time. Asynchronous benchmarks and
+   * thread groups are expected to wait for other threads, so they are never
+   * flagged.
+   */
+  private boolean isCpuStarved(ScenarioResult scenarioResult) {
+    MeasurementSet measurementSet = scenarioResult.getMeasurementSet(MeasurementType.TIME);
+    return measurementSet != null
+        && Double.isNaN(measurementSet.medianMetric(Measurement.ASYNC_OVERHEAD_NANOS))
+        && !isGroup(measurementSet)
+        && measurementSet.countCpuStarvedMeasurements(MAX_WALL_TO_CPU_RATIO) > 0;
+  }
+
+  private static boolean isGroup(MeasurementSet measurementSet) {
+    for (Measurement measurement : measurementSet.getMeasurements()) {
+      for (String metric : measurement.getMetrics().keySet()) {
+        if (metric.startsWith(Measurement.GROUP_NANOS_PREFIX)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Prints variables with only one unique value.
    */
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the CPU time of the benchmark thread and of the whole process during
+ * a trial. Metrics the VM can't provide are omitted.
+ */
+final class CpuProbe extends TrialProbe {
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private final OperatingSystemMXBean operatingSystemBean =
+      ManagementFactory.getOperatingSystemMXBean();
+  private final boolean threadCpuTimeSupported;
+  private final Method processCpuTimeMethod;
+
+  private long threadNanosBefore;
+  private long userNanosBefore;
+  private long processNanosBefore;
+
+  CpuProbe() {
+    threadCpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+    if (threadCpuTimeSupported && !threadBean.isThreadCpuTimeEnabled()) {
+      threadBean.setThreadCpuTimeEnabled(true);
+    }
+    processCpuTimeMethod = findProcessCpuTimeMethod();
+  }
+
+  @Override public void start() {
+    threadNanosBefore = threadCpuTime();
+    userNanosBefore = threadUserTime();
+    processNanosBefore = processCpuTime();
+  }
+
+  @Override public Map<String, Double> stop() {
+    Map<String, Double> result = new HashMap<String, Double>();
+    long threadNanos = threadCpuTime();
+    if (threadNanos >= 0 && threadNanosBefore >= 0) {
+      result.put(Measurement.CPU_NANOS, (double) (threadNanos - threadNanosBefore));
+    }
+    long userNanos = threadUserTime();
+    if (userNanos >= 0 && userNanosBefore >= 0) {
+      result.put(Measurement.CPU_USER_NANOS, (double) (userNanos - userNanosBefore));
+    }
+    long processNanos = processCpuTime();
+    if (processNanos >= 0 && processNanosBefore >= 0) {
+      result.put(Measurement.PROCESS_CPU_NANOS, (double) (processNanos - processNanosBefore));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the CPU time of the current thread, or -1 if it is unavailable,
+   * as it is for virtual threads on some VMs.
+   */
+  private long threadCpuTime() {
+    if (!threadCpuTimeSupported) {
+      return -1;
+    }
+    try {
+      return threadBean.getCurrentThreadCpuTime();
+    } catch (UnsupportedOperationException e) {
+      return -1;
+    }
+  }
+
+  private long threadUserTime() {
+    if (!threadCpuTimeSupported) {
+      return -1;
+    }
+    try {
+      return threadBean.getCurrentThreadUserTime();
+    } catch (UnsupportedOperationException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Process CPU time is only available through the {@code
+   * com.sun.management} extension of the operating system bean, so it is
+   * looked up reflectively.
+   */
+  private Method findProcessCpuTimeMethod() {
+    try {
+      Class<?> extension = Class.forName("com.sun.management.OperatingSystemMXBean");
+      if (extension.isInstance(operatingSystemBean)) {
+        return extension.getMethod("getProcessCpuTime");
+      }
+    } catch (ClassNotFoundException ignored) {
+    } catch (NoSuchMethodException ignored) {
+    }
+    return null;
+  }
+
+  /**
+   * Returns the process CPU time in nanoseconds, or -1 if it is unavailable.
+   */
+  private long processCpuTime() {
+    if (processCpuTimeMethod == null) {
+      return -1;
+    }
+    try {
+      return (Long) processCpuTimeMethod.invoke(operatingSystemBean);
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
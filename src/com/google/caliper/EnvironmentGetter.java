@@ -19,12 +19,15 @@ package com.google.caliper;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.Multimap;
+import com.google.common.io.Files;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -77,6 +80,7 @@ public final class EnvironmentGetter {
     propertyMap.put("host.cpu.cores", describe(cpuInfo, s));
     propertyMap.put("host.cpu.names", describe(cpuInfo, "model name"));
     propertyMap.put("host.cpu.cachesize", describe(cpuInfo, "cache size"));
+    getLinuxCacheSizes(propertyMap);
 
     Multimap<String, String> memInfo = propertiesFromLinuxFile("/proc/meminfo");
     // TODO redo memInfo.toString() so we don't get square brackets
@@ -86,6 +90,38 @@ public final class EnvironmentGetter {
     getAndroidEnvironment(propertyMap);
   }
 
+  /**
+   * Records the size of each data cache level, such as "host.cpu.cache.L1d",
+   * from the first CPU's entries in sysfs.
+   */
+  private void getLinuxCacheSizes(Map<String, String> propertyMap) {
+    File[] caches = new File("/sys/devices/system/cpu/cpu0/cache").listFiles();
+    if (caches == null) {
+      return;
+    }
+    for (File cache : caches) {
+      if (!cache.getName().startsWith("index")) {
+        continue;
+      }
+      try {
+        String level = readLine(new File(cache, "level"));
+        String type = readLine(new File(cache, "type"));
+        String size = readLine(new File(cache, "size"));
+        if (type.equals("Data")) {
+          propertyMap.put("host.cpu.cache.L" + level + "d", size);
+        } else if (type.equals("Unified")) {
+          propertyMap.put("host.cpu.cache.L" + level, size);
+        }
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private static String readLine(File file) throws IOException {
+    String line = Files.readFirstLine(file, Charset.forName("ISO-8859-1"));
+    return line != null ? line.trim() : "";
+  }
+
   private void getAndroidEnvironment(Map<String, String> propertyMap) {
     try {
       Map<String, String> map = getAndroidProperties();
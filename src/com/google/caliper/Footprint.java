@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The objects reachable from a root object, and the bytes they occupy.
+ * Objects reachable along several paths are counted once. Classes and class
+ * loaders aren't followed, since what they hold is shared by the whole VM
+ * rather than retained by the graph.
+ */
+final class Footprint {
+
+  private final Map<Class<?>, long[]> countsByType = new HashMap<Class<?>, long[]>();
+  private long objects;
+  private long bytes;
+
+  private Footprint() {}
+
+  /**
+   * Walks the object graph reachable from {@code root}.
+   */
+  public static Footprint of(Object root, ObjectLayout layout) throws Exception {
+    Footprint result = new Footprint();
+    Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+    // an explicit stack, since deep graphs like linked lists would overflow the thread's
+    List<Object> pending = new ArrayList<Object>();
+    if (root != null) {
+      pending.add(root);
+    }
+    while (!pending.isEmpty()) {
+      Object object = pending.remove(pending.size() - 1);
+      if (visited.put(object, Boolean.TRUE) != null
+          || object instanceof Class || object instanceof ClassLoader) {
+        continue;
+      }
+      result.add(object.getClass(), layout.sizeOf(object));
+      layout.addReferents(object, pending);
+    }
+    return result;
+  }
+
+  private void add(Class<?> type, long size) {
+    long[] counts = countsByType.get(type);
+    if (counts == null) {
+      counts = new long[2];
+      countsByType.put(type, counts);
+    }
+    counts[0]++;
+    counts[1] += size;
+    objects++;
+    bytes += size;
+  }
+
+  public long getObjects() {
+    return objects;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the {@code limit} types with the most bytes, in descending order
+   * of bytes.
+   */
+  public List<RetainedType> getRetainedTypes(int limit) {
+    List<RetainedType> result = new ArrayList<RetainedType>();
+    for (Map.Entry<Class<?>, long[]> entry : countsByType.entrySet()) {
+      result.add(new RetainedType(typeName(entry.getKey()),
+          entry.getValue()[0], entry.getValue()[1]));
+    }
+    Collections.sort(result, new Comparator<RetainedType>() {
+      @Override public int compare(RetainedType a, RetainedType b) {
+        return a.getBytes() != b.getBytes()
+            ? (a.getBytes() > b.getBytes() ? -1 : 1)
+            : a.getType().compareTo(b.getType());
+      }
+    });
+    return result.size() > limit ? new ArrayList<RetainedType>(result.subList(0, limit)) : result;
+  }
+
+  /**
+   * Returns the name of {@code type} as it appears in source, such as
+   * "java.lang.Object[]" rather than "[Ljava.lang.Object;".
+   */
+  private static String typeName(Class<?> type) {
+    return type.isArray() ? typeName(type.getComponentType()) + "[]" : type.getName();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.base.Supplier;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the bytes retained by the object graph that a benchmark's
+ * footprint method builds, rather than the bytes allocated while building it.
+ */
+final class FootprintMeasurer extends Measurer {
+
+  /** Each trial builds and walks a new graph, to catch graphs that differ between builds. */
+  private static final int TRIALS = 3;
+
+  private static final int MAX_RETAINED_TYPES = 50;
+
+  private final ObjectLayout layout = new ObjectLayout();
+
+  @Override public MeasurementSet run(Supplier<ConfiguredBenchmark> testSupplier) throws Exception {
+    log(layout.describe());
+    Measurement[] measurements = new Measurement[TRIALS];
+    Footprint footprint = null;
+    for (int i = 0; i < TRIALS; i++) {
+      prepareForTest();
+      ConfiguredBenchmark benchmark = testSupplier.get();
+      if (!benchmark.hasFootprint()) {
+        benchmark.close();
+        throw new ConfigurationException(benchmark.getBenchmark().getClass().getName()
+            + " doesn't define a footprint for this benchmark");
+      }
+      footprint = Footprint.of(benchmark.createFootprint(), layout);
+      benchmark.close();
+      log(footprint.getBytes() + " byte(s) retained by " + footprint.getObjects() + " object(s)");
+
+      Map<String, Double> metrics = new HashMap<String, Double>();
+      metrics.put(Measurement.FOOTPRINT_OBJECTS, (double) footprint.getObjects());
+      measurements[i] = new Measurement(retainedUnitNames(benchmark), footprint.getBytes(),
+          benchmark.bytesToUnits(footprint.getBytes()), metrics);
+    }
+
+    MeasurementSet result = new MeasurementSet(measurements)
+        .plusRetainedTypes(footprint.getRetainedTypes(MAX_RETAINED_TYPES));
+    if (result.minRaw() != result.maxRaw()) {
+      result = result.plusWarning(String.format("The object graph retained between %.0f and %.0f "
+          + "bytes when built %d times. Its size may depend on hash codes, timing or state "
+          + "shared between builds.", result.minRaw(), result.maxRaw(), TRIALS));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the benchmark's memory units, distinguished from those of
+   * allocations, as in "KiB retained".
+   */
+  private static Map<String, Integer> retainedUnitNames(ConfiguredBenchmark benchmark) {
+    Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : benchmark.memoryUnitNames().entrySet()) {
+      result.put(entry.getKey().trim() + " retained", entry.getValue());
+    }
+    return result;
+  }
+}
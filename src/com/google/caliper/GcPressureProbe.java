@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Records how much the benchmark's garbage survives collection during a
+ * trial, from the notification the VM sends after each collection: the bytes
+ * young collections promoted to the old generation, and the growth of the
+ * old generation after collections, fitted across the trial. Objects that
+ * die young cost little to collect; objects that are promoted fill the old
+ * generation and lead to long pauses.
+ *
+ * <p>Trials must be long enough to span several collections. Metrics that
+ * the collections during a trial can't support are omitted, as are all of
+ * them on VMs that don't send collection notifications or whose collectors
+ * aren't generational. Notifications arrive on another thread, so the
+ * metrics are also omitted for a trial whose last collections haven't been
+ * notified by the time it stops, rather than waiting for them.
+ */
+final class GcPressureProbe extends TrialProbe {
+
+  private static final String NOTIFICATION_TYPE = "com.sun.management.gc.notification";
+
+  /** The old generation's growth is only fitted across at least this many collections. */
+  private static final int MIN_COLLECTIONS_FOR_GROWTH = 3;
+
+  private final List<GarbageCollectorMXBean> collectorBeans =
+      ManagementFactory.getGarbageCollectorMXBeans();
+  private final RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
+  private final ConcurrentLinkedQueue<CollectionEvent> collections =
+      new ConcurrentLinkedQueue<CollectionEvent>();
+  private volatile long collectionsNotified;
+  private boolean supported;
+
+  private long collectionCountBefore;
+  private long notifiedBefore;
+  private long startUptimeMillis;
+
+  GcPressureProbe() {
+    NotificationListener listener = new NotificationListener() {
+      @Override public void handleNotification(Notification notification, Object handback) {
+        if (NOTIFICATION_TYPE.equals(notification.getType())) {
+          CollectionEvent collection = CollectionEvent.fromNotification(notification);
+          if (collection != null) {
+            collections.add(collection);
+          }
+          collectionsNotified++; // only this listener's thread writes it
+        }
+      }
+    };
+    for (GarbageCollectorMXBean collectorBean : collectorBeans) {
+      if (collectorBean instanceof NotificationEmitter) {
+        ((NotificationEmitter) collectorBean).addNotificationListener(listener, null, null);
+        supported = true;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the VM sends a notification after each collection.
+   */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  @Override public void start() {
+    collectionCountBefore = collectionCount();
+    notifiedBefore = collectionsNotified;
+    collections.clear();
+    startUptimeMillis = runtimeBean.getUptime();
+  }
+
+  @Override public Map<String, Double> stop() {
+    long stopUptimeMillis = runtimeBean.getUptime();
+    if (collectionsNotified - notifiedBefore < collectionCount() - collectionCountBefore) {
+      return new HashMap<String, Double>();
+    }
+    // a late notification of the previous trial's last collection may be queued
+    List<CollectionEvent> trialCollections = new ArrayList<CollectionEvent>();
+    for (CollectionEvent collection : collections) {
+      if (collection.endMillis >= startUptimeMillis) {
+        trialCollections.add(collection);
+      }
+    }
+    return summarize(trialCollections, stopUptimeMillis - startUptimeMillis);
+  }
+
+  /**
+   * Returns the metrics supported by the collections that ran during a trial
+   * of the given length.
+   */
+  static Map<String, Double> summarize(List<CollectionEvent> collections, long trialMillis) {
+    Map<String, Double> result = new HashMap<String, Double>();
+    long promoted = 0;
+    boolean generational = false;
+    for (CollectionEvent collection : collections) {
+      if (collection.young && collection.hasOldGeneration) {
+        generational = true;
+        promoted += Math.max(0, collection.oldAfter - collection.oldBefore);
+      }
+    }
+    if (generational) {
+      result.put(Measurement.GC_PROMOTED_BYTES, (double) promoted);
+    }
+
+    double slope = oldGrowthPerMilli(collections);
+    if (!Double.isNaN(slope)) {
+      result.put(Measurement.GC_OLD_GROWTH_BYTES, slope * trialMillis);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the least squares slope of the old generation's usage after each
+   * collection against the time it ended, or NaN if too few collections ran.
+   */
+  static double oldGrowthPerMilli(List<CollectionEvent> collections) {
+    int n = 0;
+    double sumX = 0;
+    double sumY = 0;
+    double sumXY = 0;
+    double sumXX = 0;
+    for (CollectionEvent collection : collections) {
+      if (!collection.hasOldGeneration) {
+        continue;
+      }
+      double x = collection.endMillis;
+      double y = collection.oldAfter;
+      n++;
+      sumX += x;
+      sumY += y;
+      sumXY += x * y;
+      sumXX += x * x;
+    }
+    double denominator = n * sumXX - sumX * sumX;
+    if (n < MIN_COLLECTIONS_FOR_GROWTH || denominator == 0) {
+      return Double.NaN;
+    }
+    return (n * sumXY - sumX * sumY) / denominator;
+  }
+
+  private long collectionCount() {
+    long result = 0;
+    for (GarbageCollectorMXBean collectorBean : collectorBeans) {
+      result += Math.max(0, collectorBean.getCollectionCount());
+    }
+    return result;
+  }
+
+  /**
+   * The heap usage of the generations before and after one collection.
+   */
+  static final class CollectionEvent {
+    final boolean young;
+    final boolean hasOldGeneration;
+    final long endMillis;
+    final long oldBefore;
+    final long oldAfter;
+
+    CollectionEvent(boolean young, boolean hasOldGeneration, long endMillis, long oldBefore,
+        long oldAfter) {
+      this.young = young;
+      this.hasOldGeneration = hasOldGeneration;
+      this.endMillis = endMillis;
+      this.oldBefore = oldBefore;
+      this.oldAfter = oldAfter;
+    }
+
+    /**
+     * Reads a collection notification, which is open data rather than the
+     * {@code com.sun.management} types, so that this works on any VM that
+     * sends one. Returns null if it can't be read.
+     */
+    static CollectionEvent fromNotification(Notification notification) {
+      try {
+        CompositeData data = (CompositeData) notification.getUserData();
+        CompositeData gcInfo = (CompositeData) data.get("gcInfo");
+        Map<String, Long> before = usedByPool((TabularData) gcInfo.get("memoryUsageBeforeGc"));
+        Map<String, Long> after = usedByPool((TabularData) gcInfo.get("memoryUsageAfterGc"));
+        long oldBefore = 0;
+        long oldAfter = 0;
+        boolean hasOldGeneration = false;
+        for (Map.Entry<String, Long> entry : after.entrySet()) {
+          String pool = entry.getKey();
+          if (isOldGeneration(pool)) {
+            hasOldGeneration = true;
+            oldAfter += entry.getValue();
+            Long used = before.get(pool);
+            oldBefore += used != null ? used : 0;
+          }
+        }
+        String action = (String) data.get("gcAction");
+        return new CollectionEvent(action != null && action.contains("minor"), hasOldGeneration,
+            ((Number) gcInfo.get("endTime")).longValue(), oldBefore, oldAfter);
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+
+    private static boolean isOldGeneration(String pool) {
+      return pool.contains("Old Gen") || pool.contains("Tenured");
+    }
+
+    private static Map<String, Long> usedByPool(TabularData usages) {
+      Map<String, Long> result = new HashMap<String, Long>();
+      for (Object row : usages.values()) {
+        CompositeData entry = (CompositeData) row;
+        CompositeData usage = (CompositeData) entry.get("value");
+        result.put((String) entry.get("key"), ((Number) usage.get("used")).longValue());
+      }
+      return result;
+    }
+  }
+}
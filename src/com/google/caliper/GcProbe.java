@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the garbage collections that ran during a trial and heap usage
+ * before and after it.
+ */
+final class GcProbe extends TrialProbe {
+
+  private final List<GarbageCollectorMXBean> collectorBeans =
+      ManagementFactory.getGarbageCollectorMXBeans();
+  private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+  private long countBefore;
+  private long millisBefore;
+  private long heapUsedBefore;
+
+  @Override public void start() {
+    heapUsedBefore = memoryBean.getHeapMemoryUsage().getUsed();
+    countBefore = totalCount();
+    millisBefore = totalMillis();
+  }
+
+  @Override public Map<String, Double> stop() {
+    long count = totalCount() - countBefore;
+    long millis = totalMillis() - millisBefore;
+    long heapUsedAfter = memoryBean.getHeapMemoryUsage().getUsed();
+
+    Map<String, Double> result = new HashMap<String, Double>();
+    result.put(Measurement.GC_COUNT, (double) count);
+    result.put(Measurement.GC_MILLIS, (double) millis);
+    result.put(Measurement.HEAP_USED_BEFORE, (double) heapUsedBefore);
+    result.put(Measurement.HEAP_USED_AFTER, (double) heapUsedAfter);
+    return result;
+  }
+
+  /**
+   * Returns the total number of collections across all collectors. Collectors
+   * that don't report a count return -1, and are ignored.
+   */
+  private long totalCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean collectorBean : collectorBeans) {
+      total += Math.max(0, collectorBean.getCollectionCount());
+    }
+    return total;
+  }
+
+  private long totalMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collectorBean : collectorBeans) {
+      total += Math.max(0, collectorBean.getCollectionTime());
+    }
+    return total;
+  }
+}
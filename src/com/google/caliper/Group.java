@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds timed methods of a {@link SimpleBenchmark} into a group that runs as a
+ * single scenario, with each method on its own threads and all of them sharing
+ * one instance of the benchmark. Use this to measure contention between
+ * different operations on shared state, such as the readers and writer of a
+ * cache:
+ *
+ * <pre>
+ *   &#64;Param({"1", "3", "15"}) int readers;
+ *
+ *   &#64;Group(value = "ReadWrite", threads = "readers")
+ *   public void timeGet(int reps) { ... }
+ *
+ *   &#64;Group(value = "ReadWrite")
+ *   public void timePut(int reps) { ... }
+ * </pre>
+ *
+ * <p>The group is selected by its name, as in {@code -Dbenchmark=ReadWrite},
+ * and its methods are not run on their own. All of its threads start
+ * together and each runs every rep of its method. Threads that finish early
+ * keep running their method, untimed, until the others have finished, so that
+ * every timed rep runs under contention. The scenario's time per rep is that
+ * of the slowest thread, and the time per rep of each method, averaged over
+ * its threads, is reported alongside it.
+ *
+ * <p>Grouped methods may not be asynchronous, and their benchmark may not
+ * have per-rep hooks.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Group {
+
+  /**
+   * The name of the group, which must differ from the names of the timed
+   * methods.
+   */
+  String value();
+
+  /**
+   * The number of threads to run the method on: a number, or the name of an
+   * int {@link Param} so that the thread count can be swept like any other
+   * parameter.
+   */
+  String threads() default "1";
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the timed methods of a {@link Group} concurrently, each on its own
+ * threads, and records how long each thread took to run its reps.
+ *
+ * <p>The threads are started once, before the first run, and wait at a
+ * barrier between runs so that thread startup isn't timed.
+ *
+ * <p>Threads that finish their reps early keep running their method one rep
+ * at a time until every thread has finished, so that the timed reps of the
+ * slower threads still run under contention.
+ */
+final class GroupLoop {
+
+  private final Object target;
+  private final List<String> names = new ArrayList<String>();
+  private final List<TimedMethodInvoker> invokers = new ArrayList<TimedMethodInvoker>();
+  private final List<Boolean> sinks = new ArrayList<Boolean>();
+
+  /** The index into {@code names} of the method run by each thread. */
+  private final List<Integer> threadMethods = new ArrayList<Integer>();
+
+  /** Releases the threads to run, or to exit once closed. */
+  private CyclicBarrier start;
+  /** Waits for every thread to finish its reps. */
+  private CyclicBarrier done;
+  private boolean closed = false;
+
+  private final AtomicInteger remaining = new AtomicInteger();
+  private int reps;
+  private long[] threadNanos;
+  private Throwable[] failures;
+  private long untimedNanos;
+
+  GroupLoop(Object target) {
+    this.target = target;
+  }
+
+  /**
+   * Adds {@code threads} threads that run {@code invoker}'s method.
+   */
+  public void add(String name, TimedMethodInvoker invoker, boolean usesSink, int threads) {
+    if (start != null) {
+      throw new IllegalStateException("already started");
+    }
+    int index = names.size();
+    names.add(name);
+    invokers.add(invoker);
+    sinks.add(usesSink);
+    for (int i = 0; i < threads; i++) {
+      threadMethods.add(index);
+    }
+  }
+
+  /**
+   * Starts the threads, which then wait for the first run.
+   */
+  public void start() throws Exception {
+    int threadCount = threadMethods.size();
+    start = new CyclicBarrier(threadCount + 1);
+    done = new CyclicBarrier(threadCount + 1);
+    threadNanos = new long[threadCount];
+    failures = new Throwable[threadCount];
+
+    ThreadFactory threadFactory = createThreadFactory();
+    for (int i = 0; i < threadCount; i++) {
+      final int thread = i;
+      final TimedMethodInvoker invoker = invokers.get(threadMethods.get(i));
+      final Sink sink = sinks.get(threadMethods.get(i)) ? new Sink() : null;
+      threadFactory.newThread(new Runnable() {
+        @Override public void run() {
+          try {
+            while (true) {
+              start.await();
+              if (closed) {
+                return;
+              }
+              runReps(thread, invoker, sink);
+              done.await();
+            }
+          } catch (InterruptedException e) {
+            // the loop is being abandoned
+          } catch (BrokenBarrierException e) {
+            // another thread was interrupted
+          }
+        }
+      }).start();
+    }
+  }
+
+  private void runReps(int thread, TimedMethodInvoker invoker, Sink sink) {
+    try {
+      long startNanos = System.nanoTime();
+      invoker.invoke(target, reps, sink);
+      threadNanos[thread] = System.nanoTime() - startNanos;
+      remaining.decrementAndGet();
+      while (remaining.get() > 0) {
+        invoker.invoke(target, 1, sink);
+      }
+    } catch (Throwable t) {
+      failures[thread] = t;
+      remaining.set(0);
+    }
+  }
+
+  /**
+   * Runs {@code reps} reps on every thread and returns once all of them have
+   * finished. If any thread fails, its exception is thrown.
+   */
+  public void run(int reps) throws Exception {
+    if (start == null || closed) {
+      throw new IllegalStateException("not running");
+    }
+    long runStartNanos = System.nanoTime();
+    this.reps = reps;
+    Arrays.fill(threadNanos, 0);
+    Arrays.fill(failures, null);
+    remaining.set(threadNanos.length);
+    start.await();
+    done.await();
+
+    for (Throwable failure : failures) {
+      if (failure instanceof Exception) {
+        throw (Exception) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+    }
+
+    long slowestNanos = 0;
+    for (long nanos : threadNanos) {
+      slowestNanos = Math.max(slowestNanos, nanos);
+    }
+    untimedNanos = System.nanoTime() - runStartNanos - slowestNanos;
+  }
+
+  /**
+   * Lets the threads exit once they are waiting for the next run.
+   */
+  public void close() throws Exception {
+    if (start == null || closed) {
+      return;
+    }
+    closed = true;
+    start.await();
+  }
+
+  /**
+   * Returns the nanos spent during the most recent run outside of the slowest
+   * thread's reps, such as releasing the threads and waiting for them.
+   */
+  public long getUntimedNanos() {
+    return untimedNanos;
+  }
+
+  /**
+   * Returns the nanos per rep of each method during the most recent run,
+   * averaged over its threads.
+   */
+  public Map<String, Double> getMethodMetrics() {
+    double[] totalNanos = new double[names.size()];
+    int[] threadCounts = new int[names.size()];
+    for (int i = 0; i < threadNanos.length; i++) {
+      totalNanos[threadMethods.get(i)] += threadNanos[i];
+      threadCounts[threadMethods.get(i)]++;
+    }
+    Map<String, Double> result = new HashMap<String, Double>();
+    for (int i = 0; i < names.size(); i++) {
+      result.put(Measurement.GROUP_NANOS_PREFIX + names.get(i),
+          totalNanos[i] / threadCounts[i] / reps);
+    }
+    return result;
+  }
+
+  /**
+   * Group threads are virtual if the benchmark is running on a virtual
+   * thread, and daemons so that a stuck benchmark can't keep the VM alive.
+   */
+  private static ThreadFactory createThreadFactory() throws Exception {
+    if (VirtualThreads.isCurrentThreadVirtual()) {
+      return VirtualThreads.factory();
+    }
+    return new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Searches a range of maximum heap sizes for the smallest one in which a
+ * scenario runs within a tolerance of its time per rep with its own heap
+ * settings. A heap size in which it fails, such as by running out of memory,
+ * is too small.
+ *
+ * <p>The largest size is tried first, then the smallest, and then the range
+ * between the largest size that was too small and the smallest that wasn't is
+ * bisected on a logarithmic scale until the two are close.
+ */
+final class HeapBisection {
+
+  /** The search stops once the sizes it brackets are within this factor of each other. */
+  static final double RESOLUTION = 1.1;
+
+  /** Heap sizes are whole megabytes, as -Xmx takes them. */
+  static final long MEGABYTE = 1024 * 1024;
+
+  private final long minBytes;
+  private final long maxBytes;
+  private final double baselineNanos;
+  private final double tolerance;
+  private final List<HeapSizePoint> points = new ArrayList<HeapSizePoint>();
+
+  /** The largest size found too small, or 0 if none was. */
+  private long tooSmall;
+
+  /** The smallest size found acceptable, or 0 if none was. */
+  private long acceptable;
+
+  private boolean done;
+
+  HeapBisection(long minBytes, long maxBytes, double baselineNanos, double tolerance) {
+    this.minBytes = roundToMegabytes(minBytes);
+    this.maxBytes = roundToMegabytes(maxBytes);
+    this.baselineNanos = baselineNanos;
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Returns the next heap size to try, or -1 if the search is over.
+   */
+  public long next() {
+    if (done) {
+      return -1;
+    }
+    if (points.isEmpty()) {
+      return maxBytes;
+    }
+    if (points.size() == 1) {
+      return minBytes;
+    }
+    long mid = roundToMegabytes((long) Math.sqrt((double) tooSmall * acceptable));
+    return mid > tooSmall && mid < acceptable ? mid : -1;
+  }
+
+  /**
+   * Records the time per rep with {@code heapBytes}.
+   *
+   * @param failure why the scenario couldn't run, or null if it ran.
+   */
+  public void record(long heapBytes, double nanosPerRep, String failure) {
+    points.add(new HeapSizePoint(heapBytes, failure == null ? nanosPerRep : 0, failure));
+    if (failure == null && nanosPerRep <= baselineNanos * (1 + tolerance)) {
+      acceptable = acceptable == 0 ? heapBytes : Math.min(acceptable, heapBytes);
+    } else {
+      tooSmall = Math.max(tooSmall, heapBytes);
+    }
+    done = acceptable == 0 // even the largest size was too small
+        || acceptable <= minBytes
+        || (double) acceptable / tooSmall <= RESOLUTION
+        || next() == -1;
+  }
+
+  public HeapSweep getResult() {
+    List<HeapSizePoint> result = new ArrayList<HeapSizePoint>(points);
+    Collections.sort(result, new Comparator<HeapSizePoint>() {
+      @Override public int compare(HeapSizePoint a, HeapSizePoint b) {
+        return a.getHeapBytes() < b.getHeapBytes() ? -1
+            : a.getHeapBytes() > b.getHeapBytes() ? 1 : 0;
+      }
+    });
+    return new HeapSweep(result, baselineNanos, tolerance, acceptable > 0 ? acceptable : -1);
+  }
+
+  private static long roundToMegabytes(long bytes) {
+    return Math.max(1, (bytes + MEGABYTE / 2) / MEGABYTE) * MEGABYTE;
+  }
+}
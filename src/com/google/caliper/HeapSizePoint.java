@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.Serializable;
+
+/**
+ * The time per rep of a scenario with one maximum heap size, or why it
+ * couldn't run with it.
+ *
+ * <p>Gwt-safe.
+ */
+@SuppressWarnings("serial")
+public final class HeapSizePoint
+    implements Serializable /* for GWT Serialization */ {
+
+  private /*final*/ long heapBytes;
+  private /*final*/ double nanosPerRep;
+
+  /** Why the scenario couldn't run, such as "OutOfMemoryError", or null if it ran. */
+  private /*final*/ String failure;
+
+  public HeapSizePoint(long heapBytes, double nanosPerRep, String failure) {
+    this.heapBytes = heapBytes;
+    this.nanosPerRep = nanosPerRep;
+    this.failure = failure;
+  }
+
+  public long getHeapBytes() {
+    return heapBytes;
+  }
+
+  /**
+   * Returns the median time per rep, or 0 if the scenario failed.
+   */
+  public double getNanosPerRep() {
+    return nanosPerRep;
+  }
+
+  public String getFailure() {
+    return failure;
+  }
+
+  public boolean failed() {
+    return failure != null;
+  }
+
+  @Override public String toString() {
+    return heapBytes + " bytes: " + (failed() ? failure : nanosPerRep + " ns");
+  }
+
+  private HeapSizePoint() {} // for GWT Serialization
+}
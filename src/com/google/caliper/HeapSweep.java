@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The time per rep of a scenario across the maximum heap sizes tried while
+ * searching for the smallest heap it runs well in.
+ *
+ * <p>Gwt-safe.
+ */
+@SuppressWarnings("serial")
+public final class HeapSweep
+    implements Serializable /* for GWT Serialization */ {
+
+  /** In ascending order of heap size. */
+  private /*final*/ List<HeapSizePoint> points;
+
+  /** The time per rep with the scenario's own heap settings. */
+  private /*final*/ double baselineNanos;
+
+  /** How much slower than the baseline a heap size may be, such as 0.1 for 10%. */
+  private /*final*/ double tolerance;
+
+  /** The smallest heap size that was within the tolerance, or -1 if none was. */
+  private /*final*/ long smallestHeapBytes;
+
+  public HeapSweep(List<HeapSizePoint> points, double baselineNanos, double tolerance,
+      long smallestHeapBytes) {
+    this.points = new ArrayList<HeapSizePoint>(points);
+    this.baselineNanos = baselineNanos;
+    this.tolerance = tolerance;
+    this.smallestHeapBytes = smallestHeapBytes;
+  }
+
+  public List<HeapSizePoint> getPoints() {
+    return new ArrayList<HeapSizePoint>(points);
+  }
+
+  public double getBaselineNanos() {
+    return baselineNanos;
+  }
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  public long getSmallestHeapBytes() {
+    return smallestHeapBytes;
+  }
+
+  @Override public String toString() {
+    return "smallest heap: " + smallestHeapBytes + ", points: " + points;
+  }
+
+  private HeapSweep() {} // for GWT Serialization
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Supplier;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Executes a benchmark in the current VM.
@@ -43,6 +44,10 @@ final class InProcessRunner {
             + "scenario but got " + scenarios.size());
       }
       Scenario scenario = scenarios.get(0);
+      if (CacheThrasher.COLD.equals(scenario.getVariables().get(Scenario.CACHE_MODE_KEY))
+          && measurer instanceof TimeMeasurer) {
+        ((TimeMeasurer) measurer).setCacheThrasher(createCacheThrasher(arguments));
+      }
 
       System.out.println("starting " + scenario);
       MeasurementSet measurementSet = run(scenarioSelection, scenario, measurer);
@@ -55,7 +60,7 @@ final class InProcessRunner {
   }
 
   public MeasurementSet run(final ScenarioSelection scenarioSelection, final Scenario scenario,
-      Measurer measurer) throws Exception {
+      final Measurer measurer) throws Exception {
     Supplier<ConfiguredBenchmark> supplier = new Supplier<ConfiguredBenchmark>() {
       @Override public ConfiguredBenchmark get() {
         return scenarioSelection.createBenchmark(scenario);
@@ -69,7 +74,12 @@ final class InProcessRunner {
     System.setOut(countedOut);
     System.setErr(countedErr);
     try {
-      MeasurementSet measurementSet = measurer.run(supplier);
+      MeasurementSet measurementSet;
+      if (VirtualThreads.VIRTUAL.equals(scenario.getVariables().get(Scenario.THREAD_MODE_KEY))) {
+        measurementSet = runOnVirtualThread(measurer, supplier);
+      } else {
+        measurementSet = measurer.run(supplier);
+      }
       if (measurementSet != null) {
         measurementSet = measurementSet.plusCharCounts(
             countedOut.getCount(), countedErr.getCount());
@@ -81,13 +91,49 @@ final class InProcessRunner {
     }
   }
 
+  /**
+   * Runs the whole measurement on a virtual thread, so that the benchmark's
+   * blocking calls unmount it from its carrier as they would in production.
+   */
+  private MeasurementSet runOnVirtualThread(final Measurer measurer,
+      final Supplier<ConfiguredBenchmark> supplier) throws Exception {
+    if (measurer instanceof TimeMeasurer) {
+      ((TimeMeasurer) measurer).addProbe(new VirtualThreadProbe());
+    }
+    return VirtualThreads.runOnVirtualThread(new Callable<MeasurementSet>() {
+      @Override public MeasurementSet call() throws Exception {
+        return measurer.run(supplier);
+      }
+    });
+  }
+
+  private CacheThrasher createCacheThrasher(Arguments arguments) {
+    int bytes;
+    if (arguments.getColdCacheBytes() > 0) {
+      bytes = (int) arguments.getColdCacheBytes();
+    } else {
+      Environment environment = new EnvironmentGetter().getEnvironmentSnapshot();
+      bytes = CacheThrasher.defaultBytes(environment.getProperties().get("host.cpu.cachesize"));
+    }
+    return new CacheThrasher(bytes);
+  }
+
   private Measurer getMeasurer(Arguments arguments) {
     if (arguments.getMeasurementType() == MeasurementType.TIME) {
-      return new TimeMeasurer(arguments.getWarmupMillis(), arguments.getRunMillis());
+      return new TimeMeasurer(arguments.getMinWarmupMillis(), arguments.getWarmupMillis(),
+          arguments.getRunMillis(), arguments.getDiscardLevelShifts(),
+          arguments.getRerunGcTrials());
     } else if (arguments.getMeasurementType() == MeasurementType.INSTANCE) {
-      return new InstancesAllocationMeasurer();
+      InstancesAllocationMeasurer measurer = new InstancesAllocationMeasurer();
+      measurer.setFit(arguments.getAllocationFit());
+      return measurer;
     } else if (arguments.getMeasurementType() == MeasurementType.MEMORY) {
-      return new MemoryAllocationMeasurer();
+      MemoryAllocationMeasurer measurer = new MemoryAllocationMeasurer();
+      measurer.setStackInterval(arguments.getAllocationStackInterval());
+      measurer.setFit(arguments.getAllocationFit());
+      return measurer;
+    } else if (arguments.getMeasurementType() == MeasurementType.FOOTPRINT) {
+      return new FootprintMeasurer();
     } else if (arguments.getMeasurementType() == MeasurementType.DEBUG) {
       return new DebugMeasurer(arguments.getDebugReps());
     } else {
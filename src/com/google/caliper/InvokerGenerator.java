@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Generates a {@link TimedMethodInvoker} subclass that calls a single timed
+ * method directly. The generated class is equivalent to this source:
+ * <pre>   {@code
+ *
+ *   public final class FooBenchmark$$Invoker$timeBar extends TimedMethodInvoker {
+ *     public Object invoke(Object benchmark, int reps, Sink sink) {
+ *       return ((FooBenchmark) benchmark).timeBar(reps, sink);
+ *     }
+ *   }}</pre>
+ *
+ * <p>Asynchronous timed methods, which take an {@link Executor}, get an
+ * {@link AsyncMethodInvoker} subclass instead.
+ *
+ * <p>The class file is written by hand to avoid a dependency on a bytecode
+ * library. It targets class file version 49 so that it doesn't need stack map
+ * frames, which is safe because the generated code never branches.
+ */
+final class InvokerGenerator {
+
+  private static final int CLASS_FILE_VERSION = 49;
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private static final int ALOAD_0 = 0x2a;
+  private static final int ALOAD_1 = 0x2b;
+  private static final int ALOAD_2 = 0x2c;
+  private static final int ILOAD_2 = 0x1c;
+  private static final int ALOAD_3 = 0x2d;
+  private static final int ACONST_NULL = 0x01;
+  private static final int CHECKCAST = 0xc0;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESPECIAL = 0xb7;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int ARETURN = 0xb0;
+  private static final int RETURN = 0xb1;
+
+  private static final String INVOKE_DESCRIPTOR =
+      "(Ljava/lang/Object;I" + descriptor(Sink.class) + ")Ljava/lang/Object;";
+  private static final String INVOKE_ASYNC_DESCRIPTOR =
+      "(Ljava/lang/Object;" + descriptor(Executor.class) + ")Ljava/lang/Object;";
+
+  private final Method method;
+  private final boolean async;
+
+  private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+  private final Map<String, Integer> constantIndices = new HashMap<String, Integer>();
+  private int constantCount = 1;
+
+  InvokerGenerator(Method method) {
+    this.method = method;
+    this.async = Arrays.equals(method.getParameterTypes(), new Class<?>[] { Executor.class });
+  }
+
+  /**
+   * Returns an instance of the generated invoker, or null if the method can't
+   * be called from generated code or this VM can't load generated classes.
+   *
+   * @param superclass {@link TimedMethodInvoker} or {@link
+   *     AsyncMethodInvoker}, whichever matches the method.
+   */
+  <T> T generate(Class<T> superclass) {
+    if (async != (superclass == AsyncMethodInvoker.class)) {
+      throw new IllegalArgumentException(method + " can't be invoked by a " + superclass);
+    }
+    Class<?> benchmarkClass = method.getDeclaringClass();
+    if (!Modifier.isPublic(benchmarkClass.getModifiers())
+        || !Modifier.isPublic(method.getModifiers())
+        || benchmarkClass.getClassLoader() == null) {
+      return null;
+    }
+
+    String className = benchmarkClass.getName() + "$$Invoker$" + method.getName();
+    try {
+      byte[] classFile = writeClassFile(className.replace('.', '/'), internalName(superclass));
+      Class<?> invokerClass = new InvokerClassLoader(benchmarkClass.getClassLoader())
+          .define(className, classFile);
+      return superclass.cast(invokerClass.getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      return null;
+    } catch (LinkageError e) {
+      return null; // such as on VMs that don't run Java bytecode
+    }
+  }
+
+  private byte[] writeClassFile(String className, String superclassName) throws IOException {
+    int thisClass = classConstant(className);
+    int superClass = classConstant(superclassName);
+    byte[] constructor = writeConstructor(superClass);
+    byte[] invoke = writeInvoke();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);
+    out.writeShort(CLASS_FILE_VERSION);
+    out.writeShort(constantCount);
+    constantPool.flush();
+    constantPoolBytes.writeTo(out);
+    out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+    out.writeShort(thisClass);
+    out.writeShort(superClass);
+    out.writeShort(0); // interfaces
+    out.writeShort(0); // fields
+    out.writeShort(2); // methods
+    out.write(constructor);
+    out.write(invoke);
+    out.writeShort(0); // attributes
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private byte[] writeConstructor(int superClass) throws IOException {
+    ByteArrayOutputStream code = new ByteArrayOutputStream();
+    code.write(ALOAD_0);
+    writeMethodInstruction(code, INVOKESPECIAL,
+        methodConstant(superClass, "<init>", "()V"));
+    code.write(RETURN);
+    return writeMethod("<init>", "()V", 1, 1, code.toByteArray());
+  }
+
+  private byte[] writeInvoke() throws IOException {
+    Class<?> benchmarkClass = method.getDeclaringClass();
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    Class<?> returnType = method.getReturnType();
+
+    StringBuilder descriptor = new StringBuilder("(");
+    for (Class<?> parameterType : parameterTypes) {
+      descriptor.append(descriptor(parameterType));
+    }
+    descriptor.append(")").append(descriptor(returnType));
+
+    ByteArrayOutputStream code = new ByteArrayOutputStream();
+    code.write(ALOAD_1);
+    code.write(CHECKCAST);
+    writeShort(code, classConstant(internalName(benchmarkClass)));
+    if (async) {
+      code.write(ALOAD_2);
+    } else {
+      code.write(ILOAD_2);
+      if (parameterTypes.length == 2) {
+        code.write(ALOAD_3);
+      }
+    }
+    int benchmarkClassIndex = classConstant(internalName(benchmarkClass));
+    writeMethodInstruction(code, INVOKEVIRTUAL,
+        methodConstant(benchmarkClassIndex, method.getName(), descriptor.toString()));
+
+    if (returnType == void.class) {
+      code.write(ACONST_NULL);
+    } else if (returnType.isPrimitive()) {
+      // box primitive results, just like Method.invoke() does
+      Class<?> wrapper = wrapperType(returnType);
+      writeMethodInstruction(code, INVOKESTATIC, methodConstant(
+          classConstant(internalName(wrapper)), "valueOf",
+          "(" + descriptor(returnType) + ")" + descriptor(wrapper)));
+    }
+    code.write(ARETURN);
+
+    // the receiver, reps and sink occupy three stack slots
+    return async
+        ? writeMethod("invokeAsync", INVOKE_ASYNC_DESCRIPTOR, 3, 3, code.toByteArray())
+        : writeMethod("invoke", INVOKE_DESCRIPTOR, 3, 4, code.toByteArray());
+  }
+
+  private byte[] writeMethod(String name, String descriptor, int maxStack, int maxLocals,
+      byte[] code) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(ACC_PUBLIC);
+    out.writeShort(utf8Constant(name));
+    out.writeShort(utf8Constant(descriptor));
+    out.writeShort(1); // attributes
+    out.writeShort(utf8Constant("Code"));
+    out.writeInt(12 + code.length);
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(code.length);
+    out.write(code);
+    out.writeShort(0); // exception table
+    out.writeShort(0); // attributes
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeMethodInstruction(ByteArrayOutputStream code, int opcode, int index) {
+    code.write(opcode);
+    writeShort(code, index);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private int utf8Constant(String value) throws IOException {
+    String key = "utf8:" + value;
+    Integer index = constantIndices.get(key);
+    if (index == null) {
+      constantPool.writeByte(CONSTANT_UTF8);
+      constantPool.writeUTF(value);
+      index = addConstant(key);
+    }
+    return index;
+  }
+
+  private int classConstant(String internalName) throws IOException {
+    String key = "class:" + internalName;
+    Integer index = constantIndices.get(key);
+    if (index == null) {
+      int nameIndex = utf8Constant(internalName);
+      constantPool.writeByte(CONSTANT_CLASS);
+      constantPool.writeShort(nameIndex);
+      index = addConstant(key);
+    }
+    return index;
+  }
+
+  private int methodConstant(int classIndex, String name, String descriptor) throws IOException {
+    String key = "method:" + classIndex + "." + name + descriptor;
+    Integer index = constantIndices.get(key);
+    if (index == null) {
+      int nameIndex = utf8Constant(name);
+      int descriptorIndex = utf8Constant(descriptor);
+      constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+      constantPool.writeShort(nameIndex);
+      constantPool.writeShort(descriptorIndex);
+      int nameAndTypeIndex = addConstant("nameAndType:" + name + descriptor);
+      constantPool.writeByte(CONSTANT_METHODREF);
+      constantPool.writeShort(classIndex);
+      constantPool.writeShort(nameAndTypeIndex);
+      index = addConstant(key);
+    }
+    return index;
+  }
+
+  private int addConstant(String key) {
+    int index = constantCount++;
+    constantIndices.put(key, index);
+    return index;
+  }
+
+  private static String internalName(Class<?> type) {
+    return type.getName().replace('.', '/');
+  }
+
+  private static String descriptor(Class<?> type) {
+    if (type.isArray()) {
+      return internalName(type);
+    } else if (type == void.class) {
+      return "V";
+    } else if (type == boolean.class) {
+      return "Z";
+    } else if (type == byte.class) {
+      return "B";
+    } else if (type == char.class) {
+      return "C";
+    } else if (type == short.class) {
+      return "S";
+    } else if (type == int.class) {
+      return "I";
+    } else if (type == long.class) {
+      return "J";
+    } else if (type == float.class) {
+      return "F";
+    } else if (type == double.class) {
+      return "D";
+    } else {
+      return "L" + internalName(type) + ";";
+    }
+  }
+
+  private static Class<?> wrapperType(Class<?> primitive) {
+    if (primitive == boolean.class) {
+      return Boolean.class;
+    } else if (primitive == byte.class) {
+      return Byte.class;
+    } else if (primitive == char.class) {
+      return Character.class;
+    } else if (primitive == short.class) {
+      return Short.class;
+    } else if (primitive == int.class) {
+      return Integer.class;
+    } else if (primitive == long.class) {
+      return Long.class;
+    } else if (primitive == float.class) {
+      return Float.class;
+    } else {
+      return Double.class;
+    }
+  }
+
+  private static final class InvokerClassLoader extends ClassLoader {
+    InvokerClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] classFile) {
+      return defineClass(name, classFile, 0, classFile.length);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -96,11 +97,16 @@ public final class Json {
         JsonDeserializationContext context) throws JsonParseException {
       JsonObject obj = jsonElement.getAsJsonObject();
       if (obj.has("raw") && obj.has("processed")) {
+        Map<String, Double> metrics = obj.has("metrics")
+            ? context.<Map<String, Double>>deserialize(obj.get("metrics"),
+                new TypeToken<Map<String, Double>>() {}.getType())
+            : new HashMap<String, Double>();
         return new Measurement(
             context.<Map<String, Integer>>deserialize(obj.get("unitNames"),
                 new TypeToken<Map<String, Integer>>() {}.getType()),
             context.<Double>deserialize(obj.get("raw"), Double.class),
-            context.<Double>deserialize(obj.get("processed"), Double.class));
+            context.<Double>deserialize(obj.get("processed"), Double.class),
+            metrics);
       }
       if (obj.has("nanosPerRep") && obj.has("unitsPerRep") && obj.has("unitNames")) {
         return new Measurement(
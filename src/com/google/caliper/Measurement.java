@@ -44,20 +44,165 @@ public final class Measurement
     }
   };
 
+  /** The number of garbage collections that ran during the trial. */
+  public static final String GC_COUNT = "gc.count";
+  /** The milliseconds spent in garbage collection during the trial. */
+  public static final String GC_MILLIS = "gc.millis";
+  /** Bytes of heap in use when the trial started. */
+  public static final String HEAP_USED_BEFORE = "heap.usedBefore";
+  /** Bytes of heap in use when the trial ended. */
+  public static final String HEAP_USED_AFTER = "heap.usedAfter";
+  /**
+   * Bytes that young collections during the trial moved into the old
+   * generation.
+   */
+  public static final String GC_PROMOTED_BYTES = "gc.promotedBytes";
+  /**
+   * Growth of the old generation's usage after collections over the trial,
+   * fitted across the collections that ran during it.
+   */
+  public static final String GC_OLD_GROWTH_BYTES = "gc.oldGrowthBytes";
+  /** Wall clock nanoseconds of the whole trial, including any untimed work. */
+  public static final String WALL_NANOS = "time.wallNanos";
+  /** CPU nanoseconds used by the benchmark thread during the trial. */
+  public static final String CPU_NANOS = "cpu.threadNanos";
+  /** CPU nanoseconds the benchmark thread spent in user mode during the trial. */
+  public static final String CPU_USER_NANOS = "cpu.userNanos";
+  /** CPU nanoseconds used by all threads of the process during the trial. */
+  public static final String PROCESS_CPU_NANOS = "cpu.processNanos";
+  /** Page faults served without disk I/O during the trial. */
+  public static final String OS_MINOR_FAULTS = "os.minorFaults";
+  /** Page faults that required disk I/O during the trial. */
+  public static final String OS_MAJOR_FAULTS = "os.majorFaults";
+  /** Times the benchmark thread gave up the CPU, such as to block, during the trial. */
+  public static final String OS_VOLUNTARY_SWITCHES = "os.voluntaryContextSwitches";
+  /** Times the benchmark thread was preempted during the trial. */
+  public static final String OS_INVOLUNTARY_SWITCHES = "os.involuntaryContextSwitches";
+  /** Nanoseconds the benchmark thread was runnable but waiting for a CPU. */
+  public static final String OS_RUN_QUEUE_WAIT_NANOS = "os.runQueueWaitNanos";
+
+  /**
+   * Bytes allocated by the benchmark thread during the trial, as counted by the
+   * VM rather than the allocation agent.
+   */
+  public static final String THREAD_ALLOCATED_BYTES = "alloc.threadBytes";
+  /**
+   * {@link #THREAD_ALLOCATED_BYTES} divided by the reps of the trial, rounded
+   * to whole bytes so that the harness's occasional allocations read as 0.
+   */
+  public static final String ALLOCATED_BYTES_PER_REP = "alloc.bytesPerRep";
+
+  /**
+   * Allocations per rep by threads other than the benchmark thread, in the
+   * units of the allocation measurement.
+   */
+  public static final String OUT_OF_THREAD_ALLOCATIONS = "alloc.outOfThreadPerRep";
+  /**
+   * Prefix of the allocations per rep by each thread, keyed by its name, as
+   * in "alloc.thread.main".
+   */
+  public static final String ALLOCATIONS_BY_THREAD_PREFIX = "alloc.thread.";
+  /**
+   * Allocations made once per measured section rather than per rep, from an
+   * allocation measurement fit to a line over many rep counts.
+   */
+  public static final String ALLOCATION_FIT_INTERCEPT = "alloc.fitIntercept";
+  /** How well an allocation measurement's line fits, from 0 to 1. */
+  public static final String ALLOCATION_FIT_R_SQUARED = "alloc.fitRSquared";
+
+  /**
+   * Prefix of the change during the trial in an NIO buffer pool's buffers,
+   * their capacity and the bytes they use, as in "buffers.direct.count",
+   * "buffers.direct.capacity" and "buffers.mapped.used".
+   */
+  public static final String BUFFER_POOL_PREFIX = "buffers.";
+  /**
+   * Change during the trial in the bytes the VM committed outside the Java
+   * heap, from its native memory tracking.
+   */
+  public static final String NATIVE_COMMITTED = "native.committed";
+  /**
+   * Suffix of an off-heap or garbage collection metric divided by the reps of
+   * the trial, as in "buffers.direct.used.perRep".
+   */
+  public static final String PER_REP_SUFFIX = ".perRep";
+
+  /** Objects reachable from the object graph of a footprint measurement. */
+  public static final String FOOTPRINT_OBJECTS = "footprint.objects";
+
+  /** Operations per second, for benchmarks that declare operations per rep. */
+  public static final String OPERATIONS_PER_SECOND = "throughput.operationsPerSecond";
+  /** Bytes per second, for benchmarks that declare bytes per rep. */
+  public static final String BYTES_PER_SECOND = "throughput.bytesPerSecond";
+
+  /** Median completion latency of the operations of an async benchmark. */
+  public static final String LATENCY_MEDIAN_NANOS = "async.latencyMedianNanos";
+  /** 99th percentile completion latency of the operations of an async benchmark. */
+  public static final String LATENCY_99TH_NANOS = "async.latency99thNanos";
+  /**
+   * Nanoseconds per operation spent starting and awaiting no-op operations on
+   * an async benchmark's executor, with the same number in flight.
+   */
+  public static final String ASYNC_OVERHEAD_NANOS = "async.overheadNanos";
+
+  /**
+   * Prefix of the nanos per rep of each method of a {@link Group}, averaged
+   * over its threads, as in "group.nanosPerRep.Get" for {@code timeGet}.
+   */
+  public static final String GROUP_NANOS_PREFIX = "group.nanosPerRep.";
+
+  /** Carrier threads that were running virtual threads at the end of the trial. */
+  public static final String CARRIER_THREADS = "vthreads.carriers";
+  /** Percent of the carrier threads' available time that they spent on the CPU. */
+  public static final String CARRIER_UTILIZATION = "vthreads.carrierUtilizationPercent";
+  /**
+   * Times a virtual thread blocked while pinned to its carrier. This is
+   * recorded once across all of the measured trials, as a metric of the
+   * {@link MeasurementSet} rather than of each measurement.
+   */
+  public static final String PINNED_EVENTS = "vthreads.pinnedEvents";
+
   private /*final*/ double raw;
   private /*final*/ double processed;
   private /*final*/ Map<String, Integer> unitNames;
 
+  /**
+   * Additional values recorded during this trial, such as {@link #GC_COUNT}.
+   * This may be null for measurements recorded by older versions of Caliper.
+   */
+  private /*final*/ Map<String, Double> metrics;
+
   public Measurement(Map<String, Integer> unitNames, double raw, double processed) {
+    this(unitNames, raw, processed, new HashMap<String, Double>());
+  }
+
+  public Measurement(Map<String, Integer> unitNames, double raw, double processed,
+      Map<String, Double> metrics) {
     this.unitNames = new HashMap<String, Integer>(unitNames);
     this.raw = raw;
     this.processed = processed;
+    this.metrics = new HashMap<String, Double>(metrics);
   }
 
   public Map<String, Integer> getUnitNames() {
     return new HashMap<String, Integer>(unitNames);
   }
 
+  public Map<String, Double> getMetrics() {
+    if (metrics == null) {
+      return new HashMap<String, Double>();
+    }
+    return new HashMap<String, Double>(metrics);
+  }
+
+  /**
+   * Returns the named metric recorded during this trial, or null if it wasn't
+   * recorded.
+   */
+  public Double getMetric(String name) {
+    return metrics == null ? null : metrics.get(name);
+  }
+
   public double getRaw() {
     return raw;
   }
@@ -40,8 +40,82 @@ public final class MeasurementSet
   private /*final*/ int systemOutCharCount;
   private /*final*/ int systemErrCharCount;
 
+  /**
+   * Problems with these measurements that the user should know about. This may
+   * be null for measurement sets recorded by older versions of Caliper.
+   */
+  private /*final*/ List<String> warnings;
+
+  /**
+   * How long the benchmark was warmed up before these measurements were taken,
+   * or 0 if unknown.
+   */
+  private /*final*/ long warmupNanos;
+
+  /**
+   * The index of the first measurement after a level shift in the sequence of
+   * measurements, or 0 if there is no level shift.
+   */
+  private /*final*/ int levelShiftIndex;
+
+  /**
+   * The calibrated nanoseconds per call to Sink.consume, which are included in
+   * these measurements, or 0 if the benchmark didn't use a sink.
+   */
+  private /*final*/ double sinkConsumeNanos;
+
+  /**
+   * The operations and bytes that each rep processes, or 0 if the benchmark
+   * doesn't declare them.
+   */
+  private /*final*/ double operationsPerRep;
+  private /*final*/ double bytesPerRep;
+
+  /**
+   * Whether the benchmark's work appears to have been optimized away by the
+   * runtime. The warnings explain why.
+   */
+  private /*final*/ boolean suspectedOptimizedAway;
+
+  /**
+   * The types allocated the most bytes per rep, in descending order of bytes.
+   * This may be null for measurement sets that didn't record allocations.
+   */
+  private /*final*/ List<AllocationSite> allocationSites;
+
+  /**
+   * Sampled allocation stacks in collapsed stack format, or null if they
+   * weren't sampled.
+   */
+  private /*final*/ List<String> allocationStacks;
+
+  /**
+   * The types retaining the most bytes in a footprint measurement's object
+   * graph, in descending order of bytes, or null if footprint wasn't measured.
+   */
+  private /*final*/ List<RetainedType> retainedTypes;
+
+  /**
+   * The time per rep across the maximum heap sizes tried by a heap sweep, or
+   * null if none was run.
+   */
+  private /*final*/ HeapSweep heapSweep;
+
+  /**
+   * The classes loaded and the metaspace and code cache used at each stage of
+   * the measurement, in order, or null if they weren't sampled.
+   */
+  private /*final*/ List<RuntimeFootprint> runtimeFootprints;
+
+  /**
+   * Metrics recorded once across all of the measured trials rather than for
+   * each trial, keyed by name, or null if there are none.
+   */
+  private /*final*/ Map<String, Double> metrics;
+
   public MeasurementSet(Measurement... measurements) {
     this(0, 0, getUnitNamesFromMeasurements(measurements), Arrays.asList(measurements));
+    this.warnings = new ArrayList<String>();
   }
 
   private static Map<String, Integer> getUnitNamesFromMeasurements(Measurement... measurements) {
@@ -69,6 +143,29 @@ public final class MeasurementSet
     this.measurements = measurements;
   }
 
+  /**
+   * Returns a copy of this measurement set, for plus methods to modify before
+   * returning it.
+   */
+  private MeasurementSet copy() {
+    MeasurementSet result = new MeasurementSet(systemOutCharCount, systemErrCharCount,
+        unitNames, measurements);
+    result.warnings = warnings;
+    result.warmupNanos = warmupNanos;
+    result.levelShiftIndex = levelShiftIndex;
+    result.sinkConsumeNanos = sinkConsumeNanos;
+    result.operationsPerRep = operationsPerRep;
+    result.bytesPerRep = bytesPerRep;
+    result.suspectedOptimizedAway = suspectedOptimizedAway;
+    result.allocationSites = allocationSites;
+    result.allocationStacks = allocationStacks;
+    result.retainedTypes = retainedTypes;
+    result.heapSweep = heapSweep;
+    result.runtimeFootprints = runtimeFootprints;
+    result.metrics = metrics;
+    return result;
+  }
+
   /**
    * This is the same as getUnitNames(), but is for backwards compatibility on the server
    * when null pointer exceptions need to be avoided.
@@ -84,6 +181,9 @@ public final class MeasurementSet
     return new HashMap<String, Integer>(unitNames);
   }
 
+  /**
+   * Returns the measurements in the order they were taken.
+   */
   public List<Measurement> getMeasurements() {
     return new ArrayList<Measurement>(measurements);
   }
@@ -100,6 +200,104 @@ public final class MeasurementSet
     return systemErrCharCount;
   }
 
+  public long getWarmupNanos() {
+    return warmupNanos;
+  }
+
+  public double getSinkConsumeNanos() {
+    return sinkConsumeNanos;
+  }
+
+  public double getOperationsPerRep() {
+    return operationsPerRep;
+  }
+
+  public double getBytesPerRep() {
+    return bytesPerRep;
+  }
+
+  /**
+   * Returns the index of the first measurement after a level shift, or 0 if
+   * the measurements are consistent with a single steady state.
+   */
+  public int getLevelShiftIndex() {
+    return levelShiftIndex;
+  }
+
+  public boolean hasLevelShift() {
+    return levelShiftIndex > 0;
+  }
+
+  public boolean isSuspectedOptimizedAway() {
+    return suspectedOptimizedAway;
+  }
+
+  /**
+   * Returns the types allocated the most bytes per rep, in descending order of
+   * bytes, or an empty list if they weren't recorded.
+   */
+  public List<AllocationSite> getAllocationSites() {
+    if (allocationSites == null) {
+      return new ArrayList<AllocationSite>();
+    }
+    return new ArrayList<AllocationSite>(allocationSites);
+  }
+
+  /**
+   * Returns the sampled allocation stacks in the collapsed stack format read
+   * by flame graph tools, or an empty list if they weren't sampled.
+   */
+  public List<String> getAllocationStacks() {
+    if (allocationStacks == null) {
+      return new ArrayList<String>();
+    }
+    return new ArrayList<String>(allocationStacks);
+  }
+
+  /**
+   * Returns the types retaining the most bytes in the measured object graph,
+   * in descending order of bytes, or an empty list if footprint wasn't
+   * measured.
+   */
+  public List<RetainedType> getRetainedTypes() {
+    if (retainedTypes == null) {
+      return new ArrayList<RetainedType>();
+    }
+    return new ArrayList<RetainedType>(retainedTypes);
+  }
+
+  /**
+   * Returns the result of the heap sweep, or null if none was run.
+   */
+  public HeapSweep getHeapSweep() {
+    return heapSweep;
+  }
+
+  public List<RuntimeFootprint> getRuntimeFootprints() {
+    if (runtimeFootprints == null) {
+      return new ArrayList<RuntimeFootprint>();
+    }
+    return new ArrayList<RuntimeFootprint>(runtimeFootprints);
+  }
+
+  /**
+   * Returns the metrics recorded once across all of the measured trials,
+   * keyed by name.
+   */
+  public Map<String, Double> getMetrics() {
+    if (metrics == null) {
+      return new HashMap<String, Double>();
+    }
+    return new HashMap<String, Double>(metrics);
+  }
+
+  public List<String> getWarnings() {
+    if (warnings == null) {
+      return new ArrayList<String>();
+    }
+    return new ArrayList<String>(warnings);
+  }
+
   public List<Double> getMeasurementsRaw() {
     List<Double> measurementRaw = new ArrayList<Double>();
     for (Measurement measurement : measurements) {
@@ -116,6 +314,93 @@ public final class MeasurementSet
     return measurementUnits;
   }
 
+  /**
+   * Returns the values of the named metric in the order the measurements were
+   * taken, skipping measurements that didn't record it.
+   */
+  public List<Double> getMetricValues(String name) {
+    List<Double> values = new ArrayList<Double>();
+    for (Measurement measurement : measurements) {
+      Double value = measurement.getMetric(name);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Returns the number of measurements whose wall clock time exceeded the CPU
+   * time of the benchmark thread by more than {@code maxWallToCpuRatio}. In
+   * such trials the thread was blocked or descheduled for much of the time,
+   * for example because the host was oversubscribed.
+   */
+  public int countCpuStarvedMeasurements(double maxWallToCpuRatio) {
+    int result = 0;
+    for (Measurement measurement : measurements) {
+      Double wallNanos = measurement.getMetric(Measurement.WALL_NANOS);
+      Double cpuNanos = measurement.getMetric(Measurement.CPU_NANOS);
+      if (wallNanos != null && cpuNanos != null && wallNanos > maxWallToCpuRatio * cpuNanos) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the median of the named metric, its value across all trials if it
+   * was recorded once for this set, or NaN if it wasn't recorded.
+   */
+  public double medianMetric(String name) {
+    List<Double> values = getMetricValues(name);
+    if (!values.isEmpty()) {
+      return median(values);
+    }
+    Double value = metrics != null ? metrics.get(name) : null;
+    return value != null ? value : Double.NaN;
+  }
+
+  /**
+   * Returns the median of a metric that is only recorded when it changed,
+   * counting the measurements that didn't record it as unchanged.
+   */
+  public double medianChange(String name) {
+    List<Double> values = new ArrayList<Double>();
+    for (Measurement measurement : measurements) {
+      Double value = measurement.getMetric(name);
+      values.add(value != null ? value : 0.0);
+    }
+    return values.isEmpty() ? 0 : median(values);
+  }
+
+  /**
+   * Returns a measurement set containing only the measurements during which
+   * no garbage collection was recorded. The result may be empty.
+   */
+  public MeasurementSet withoutGarbageCollection() {
+    List<Measurement> gcFree = new ArrayList<Measurement>();
+    for (Measurement measurement : measurements) {
+      Double gcCount = measurement.getMetric(Measurement.GC_COUNT);
+      if (gcCount == null || gcCount == 0) {
+        gcFree.add(measurement);
+      }
+    }
+    MeasurementSet result = copy();
+    result.measurements = gcFree;
+    result.levelShiftIndex = 0;
+    return result;
+  }
+
+  /**
+   * Returns a copy of this measurement set without its sampled allocation
+   * stacks, for once they have been written out on their own.
+   */
+  public MeasurementSet withoutAllocationStacks() {
+    MeasurementSet result = copy();
+    result.allocationStacks = null;
+    return result;
+  }
+
   /**
    * Returns the median measurement, with respect to raw units.
    */
@@ -226,14 +511,143 @@ public final class MeasurementSet
 
     List<Measurement> resultMeasurements = new ArrayList<Measurement>(measurements);
     resultMeasurements.add(measurement);
-    Map<String, Integer> newUnitNames = unitNames == null ? measurement.getUnitNames() : unitNames;
-    return new MeasurementSet(systemOutCharCount, systemErrCharCount,
-        newUnitNames, resultMeasurements);
+    MeasurementSet result = copy();
+    result.unitNames = unitNames == null ? measurement.getUnitNames() : unitNames;
+    result.measurements = resultMeasurements;
+    return result;
   }
 
   public MeasurementSet plusCharCounts(int systemOutCharCount, int systemErrCharCount) {
-    return new MeasurementSet(this.systemOutCharCount + systemOutCharCount,
-        this.systemErrCharCount + systemErrCharCount, unitNames, measurements);
+    MeasurementSet result = copy();
+    result.systemOutCharCount += systemOutCharCount;
+    result.systemErrCharCount += systemErrCharCount;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that contains the warnings in this set plus
+   * the given additional warning.
+   */
+  public MeasurementSet plusWarning(String warning) {
+    MeasurementSet result = copy();
+    result.warnings = getWarnings();
+    result.warnings.add(warning);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the types allocated per rep.
+   */
+  public MeasurementSet plusAllocationSites(List<AllocationSite> allocationSites) {
+    MeasurementSet result = copy();
+    result.allocationSites = new ArrayList<AllocationSite>(allocationSites);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records sampled allocation stacks.
+   */
+  public MeasurementSet plusAllocationStacks(List<String> allocationStacks) {
+    MeasurementSet result = copy();
+    result.allocationStacks = new ArrayList<String>(allocationStacks);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the types retained by the
+   * measured object graph.
+   */
+  public MeasurementSet plusRetainedTypes(List<RetainedType> retainedTypes) {
+    MeasurementSet result = copy();
+    result.retainedTypes = new ArrayList<RetainedType>(retainedTypes);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the runtime's footprint at
+   * each stage of the measurement.
+   */
+  public MeasurementSet plusRuntimeFootprints(List<RuntimeFootprint> runtimeFootprints) {
+    MeasurementSet result = copy();
+    result.runtimeFootprints = new ArrayList<RuntimeFootprint>(runtimeFootprints);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records metrics taken across all of
+   * its trials, in addition to any already recorded.
+   */
+  public MeasurementSet plusMetrics(Map<String, Double> metrics) {
+    MeasurementSet result = copy();
+    result.metrics = new HashMap<String, Double>();
+    if (this.metrics != null) {
+      result.metrics.putAll(this.metrics);
+    }
+    result.metrics.putAll(metrics);
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set with the result of a heap sweep.
+   */
+  public MeasurementSet plusHeapSweep(HeapSweep heapSweep) {
+    MeasurementSet result = copy();
+    result.heapSweep = heapSweep;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that is flagged as suspected of having been
+   * optimized away, with {@code reason} added to its warnings.
+   */
+  public MeasurementSet plusSuspectedOptimizedAway(String reason) {
+    MeasurementSet result = plusWarning(reason);
+    result.suspectedOptimizedAway = true;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records a level shift immediately
+   * before the measurement at {@code index}.
+   */
+  public MeasurementSet plusLevelShift(int index) {
+    if (index <= 0 || index >= measurements.size()) {
+      throw new IllegalArgumentException("no measurement at index " + index);
+    }
+    MeasurementSet result = copy();
+    result.levelShiftIndex = index;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the given warmup duration in
+   * addition to any recorded in this set.
+   */
+  public MeasurementSet plusWarmupNanos(long warmupNanos) {
+    MeasurementSet result = copy();
+    result.warmupNanos += warmupNanos;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the calibrated cost of each
+   * call to Sink.consume.
+   */
+  public MeasurementSet plusSinkConsumeNanos(double sinkConsumeNanos) {
+    MeasurementSet result = copy();
+    result.sinkConsumeNanos = sinkConsumeNanos;
+    return result;
+  }
+
+  /**
+   * Returns a new measurement set that records the operations and bytes that
+   * each rep processes.
+   */
+  public MeasurementSet plusThroughput(double operationsPerRep, double bytesPerRep) {
+    MeasurementSet result = copy();
+    result.operationsPerRep = operationsPerRep;
+    result.bytesPerRep = bytesPerRep;
+    return result;
   }
 
   private MeasurementSet() {} // for GWT Serialization
@@ -17,5 +17,5 @@
 package com.google.caliper;
 
 public enum MeasurementType {
-  TIME, INSTANCE, MEMORY, DEBUG
+  TIME, INSTANCE, MEMORY, FOOTPRINT, DEBUG
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sizes objects and finds the objects they refer to, for walking object
+ * graphs.
+ *
+ * <p>Sizes come from the allocation instrumentation agent when it is loaded.
+ * Otherwise they are modeled from the field offsets and array layout that the
+ * VM reports through {@code sun.misc.Unsafe}, rounded up to the object
+ * alignment. On VMs without it, a 64-bit layout without compressed references
+ * is assumed.
+ */
+final class ObjectLayout {
+
+  private static final int OBJECT_ALIGNMENT = 8;
+
+  private final Instrumentation instrumentation;
+  private final Object unsafe;
+  private final Method objectFieldOffset;
+  private final Method getObject;
+  private final int objectHeaderBytes;
+  private final int referenceBytes;
+  private final int arrayHeaderBytes;
+  private final Map<Class<?>, ClassLayout> classLayouts = new HashMap<Class<?>, ClassLayout>();
+
+  ObjectLayout() {
+    instrumentation = findInstrumentation();
+    Object unsafe = null;
+    Method objectFieldOffset = null;
+    Method getObject = null;
+    int arrayHeaderBytes = 20;
+    int referenceBytes = 8;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
+      getObject = unsafeClass.getMethod("getObject", Object.class, long.class);
+      arrayHeaderBytes = (Integer) unsafeClass.getMethod("arrayBaseOffset", Class.class)
+          .invoke(unsafe, byte[].class);
+      referenceBytes = (Integer) unsafeClass.getMethod("arrayIndexScale", Class.class)
+          .invoke(unsafe, Object[].class);
+    } catch (Exception e) {
+      unsafe = null;
+      objectFieldOffset = null;
+      getObject = null;
+    }
+    this.unsafe = unsafe;
+    this.objectFieldOffset = objectFieldOffset;
+    this.getObject = getObject;
+    this.arrayHeaderBytes = arrayHeaderBytes;
+    this.referenceBytes = referenceBytes;
+    // an array's header is an object header followed by its int length
+    this.objectHeaderBytes = arrayHeaderBytes - 4;
+  }
+
+  /**
+   * Returns a description of how object sizes are determined, for logging.
+   */
+  public String describe() {
+    if (instrumentation != null) {
+      return "object sizes from the instrumentation agent";
+    }
+    return String.format("object sizes modeled with %d byte headers and %d byte references%s",
+        objectHeaderBytes, referenceBytes, unsafe == null ? " (assumed)" : "");
+  }
+
+  /**
+   * Returns the shallow size of {@code object} in bytes: its header and
+   * fields, or its header and elements for an array, but not the objects it
+   * refers to.
+   */
+  public long sizeOf(Object object) {
+    if (instrumentation != null) {
+      return instrumentation.getObjectSize(object);
+    }
+    Class<?> type = object.getClass();
+    if (type.isArray()) {
+      Class<?> componentType = type.getComponentType();
+      int elementBytes =
+          componentType.isPrimitive() ? primitiveBytes(componentType) : referenceBytes;
+      // arrays of longs and doubles start on an 8 byte boundary
+      long headerBytes = elementBytes == 8 ? align(arrayHeaderBytes) : arrayHeaderBytes;
+      return align(headerBytes + (long) Array.getLength(object) * elementBytes);
+    }
+    return layout(type).instanceBytes;
+  }
+
+  /**
+   * Adds the non-null objects that {@code object} refers to through its
+   * instance fields or elements to {@code referents}.
+   */
+  public void addReferents(Object object, List<Object> referents) throws Exception {
+    Class<?> type = object.getClass();
+    if (type.isArray()) {
+      if (!type.getComponentType().isPrimitive()) {
+        for (Object element : (Object[]) object) {
+          if (element != null) {
+            referents.add(element);
+          }
+        }
+      }
+      return;
+    }
+    ClassLayout layout = layout(type);
+    for (int i = 0; i < layout.referenceFields.length; i++) {
+      Object referent = layout.offsets[i] >= 0
+          ? getObject.invoke(unsafe, object, layout.offsets[i])
+          : layout.referenceFields[i].get(object);
+      if (referent != null) {
+        referents.add(referent);
+      }
+    }
+  }
+
+  private ClassLayout layout(Class<?> type) {
+    ClassLayout result = classLayouts.get(type);
+    if (result == null) {
+      result = new ClassLayout(type);
+      classLayouts.put(type, result);
+    }
+    return result;
+  }
+
+  private int primitiveBytes(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    } else {
+      return 1;
+    }
+  }
+
+  private static long align(long bytes) {
+    return (bytes + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+  }
+
+  /**
+   * Returns the instrumentation the allocation agent was started with, or
+   * null if it wasn't loaded.
+   */
+  private static Instrumentation findInstrumentation() {
+    try {
+      Class<?> recorder =
+          Class.forName("com.google.monitoring.runtime.instrumentation.AllocationRecorder");
+      Method getInstrumentation = recorder.getDeclaredMethod("getInstrumentation");
+      getInstrumentation.setAccessible(true);
+      return (Instrumentation) getInstrumentation.invoke(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * The instance size and reference fields of a class, including those it
+   * inherits.
+   */
+  private final class ClassLayout {
+    final long instanceBytes;
+    final Field[] referenceFields;
+
+    /**
+     * The offset of each reference field for reading it through Unsafe, or -1
+     * to read it through reflection.
+     */
+    final long[] offsets;
+
+    ClassLayout(Class<?> type) {
+      List<Field> references = new ArrayList<Field>();
+      List<Long> referenceOffsets = new ArrayList<Long>();
+      long end = objectHeaderBytes;
+      long fieldBytes = 0;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          int size = field.getType().isPrimitive()
+              ? primitiveBytes(field.getType())
+              : referenceBytes;
+          fieldBytes += size;
+          long offset = offset(field);
+          if (offset >= 0) {
+            end = Math.max(end, offset + size);
+          }
+          if (!field.getType().isPrimitive()) {
+            if (offset < 0) {
+              field.setAccessible(true);
+            }
+            references.add(field);
+            referenceOffsets.add(offset);
+          }
+        }
+      }
+      // without field offsets, assume the fields are packed after the header
+      instanceBytes = align(unsafe != null ? end : objectHeaderBytes + fieldBytes);
+      referenceFields = references.toArray(new Field[references.size()]);
+      offsets = new long[referenceOffsets.size()];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = referenceOffsets.get(i);
+      }
+    }
+
+    private long offset(Field field) {
+      if (unsafe == null) {
+        return -1;
+      }
+      try {
+        return (Long) objectFieldOffset.invoke(unsafe, field);
+      } catch (Exception e) {
+        return -1; // such as for the fields of records and hidden classes
+      }
+    }
+  }
+}
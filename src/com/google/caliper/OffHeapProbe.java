@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records how memory outside the Java heap changed during a trial: the
+ * buffers, capacity and bytes used of each NIO buffer pool, such as those of
+ * direct and mapped buffers, and the memory committed by the VM outside the
+ * heap according to its native memory tracking. Only the values that changed
+ * are recorded.
+ *
+ * <p>Native memory tracking must be enabled when the VM starts, such as with
+ * {@code -Jnmt=-XX:NativeMemoryTracking=summary}; otherwise only the buffer
+ * pools are recorded. Its summary is in kilobytes, so small changes are lost.
+ * Producing the summary is slow, so it is only taken around measured trials.
+ */
+final class OffHeapProbe extends TrialProbe {
+
+  private static final String[] BUFFER_POOL_ATTRIBUTES = {"Count", "TotalCapacity", "MemoryUsed"};
+  private static final String[] BUFFER_POOL_METRICS = {"count", "capacity", "used"};
+
+  private static final Pattern TOTAL_COMMITTED =
+      Pattern.compile("Total: reserved=\\d+KB, committed=(\\d+)KB");
+  private static final Pattern HEAP_COMMITTED =
+      Pattern.compile("Java Heap \\(reserved=\\d+KB, committed=(\\d+)KB\\)");
+
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+  private final List<ObjectName> bufferPools = findBufferPools();
+  private final ObjectName diagnosticCommand = findNativeMemoryTracking();
+
+  private Map<String, Long> before;
+  private boolean measuring = false;
+
+  /**
+   * Returns true if there is any off-heap memory to record.
+   */
+  public boolean isSupported() {
+    return !bufferPools.isEmpty() || diagnosticCommand != null;
+  }
+
+  @Override public void start() {
+    before = snapshot();
+  }
+
+  @Override public Map<String, Double> stop() {
+    Map<String, Long> after = snapshot();
+    Map<String, Double> result = new HashMap<String, Double>();
+    for (Map.Entry<String, Long> entry : after.entrySet()) {
+      Long value = before.get(entry.getKey());
+      if (value != null && entry.getValue().longValue() != value) {
+        result.put(entry.getKey(), (double) (entry.getValue() - value));
+      }
+    }
+    return result;
+  }
+
+  @Override public void startMeasuring() {
+    measuring = true;
+  }
+
+  @Override public Map<String, Double> stopMeasuring() {
+    measuring = false;
+    return super.stopMeasuring();
+  }
+
+  /**
+   * Returns the current value of each metric. Values the VM reports as
+   * unknown are omitted.
+   */
+  private Map<String, Long> snapshot() {
+    Map<String, Long> result = new HashMap<String, Long>();
+    for (ObjectName bufferPool : bufferPools) {
+      try {
+        String prefix = Measurement.BUFFER_POOL_PREFIX
+            + metricName((String) server.getAttribute(bufferPool, "Name")) + ".";
+        for (int i = 0; i < BUFFER_POOL_ATTRIBUTES.length; i++) {
+          long value = ((Number) server.getAttribute(bufferPool, BUFFER_POOL_ATTRIBUTES[i]))
+              .longValue();
+          if (value >= 0) {
+            result.put(prefix + BUFFER_POOL_METRICS[i], value);
+          }
+        }
+      } catch (Exception ignored) {
+        // the pool may have been unregistered
+      }
+    }
+    long nativeCommitted = measuring ? nativeCommittedBytes() : -1;
+    if (nativeCommitted >= 0) {
+      result.put(Measurement.NATIVE_COMMITTED, nativeCommitted);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the bytes committed by the VM outside the Java heap, or -1 if
+   * native memory tracking isn't enabled.
+   */
+  private long nativeCommittedBytes() {
+    if (diagnosticCommand == null) {
+      return -1;
+    }
+    String summary = nativeMemorySummary(diagnosticCommand);
+    return summary != null ? parseNativeCommittedBytes(summary) : -1;
+  }
+
+  /**
+   * Returns the bytes committed outside the Java heap according to a native
+   * memory tracking summary, or -1 if it has no total.
+   */
+  static long parseNativeCommittedBytes(String summary) {
+    Matcher total = TOTAL_COMMITTED.matcher(summary);
+    Matcher heap = HEAP_COMMITTED.matcher(summary);
+    if (!total.find()) {
+      return -1;
+    }
+    long committedKilobytes = Long.parseLong(total.group(1));
+    if (heap.find()) {
+      committedKilobytes -= Long.parseLong(heap.group(1));
+    }
+    return committedKilobytes * 1024;
+  }
+
+  private List<ObjectName> findBufferPools() {
+    try {
+      return new ArrayList<ObjectName>(
+          server.queryNames(new ObjectName("java.nio:type=BufferPool,*"), null));
+    } catch (Exception e) {
+      return new ArrayList<ObjectName>();
+    }
+  }
+
+  /**
+   * Returns the diagnostic command bean if native memory tracking is enabled,
+   * or null otherwise.
+   */
+  private ObjectName findNativeMemoryTracking() {
+    try {
+      ObjectName name = new ObjectName("com.sun.management:type=DiagnosticCommand");
+      String summary = nativeMemorySummary(name);
+      return summary != null && TOTAL_COMMITTED.matcher(summary).find() ? name : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private String nativeMemorySummary(ObjectName diagnosticCommand) {
+    try {
+      return (String) server.invoke(diagnosticCommand, "vmNativeMemory",
+          new Object[] {new String[] {"summary"}}, new String[] {String[].class.getName()});
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a buffer pool's name in a form suitable for a metric, such as
+   * "mapped_non_volatile_memory" for "mapped - 'non-volatile memory'".
+   */
+  static String metricName(String poolName) {
+    return poolName.toLowerCase().replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the time per rep of related scenarios to find benchmarks whose
+ * work the runtime optimized away, either entirely or for some inputs.
+ *
+ * <p>Scenarios that differ only in a workload parameter should take longer as
+ * the workload grows; if the time per rep stays nearly flat, the work probably
+ * isn't being done. Scenarios that differ only in an input parameter should
+ * take about as long as each other; if they don't, the runtime probably folded
+ * some of the inputs into constants.
+ */
+final class OptimizedAwayDetector {
+
+  /**
+   * Across a workload that grows by a factor of N, the time per rep must grow
+   * by at least N to this power.
+   */
+  private static final double MIN_WORKLOAD_EXPONENT = 0.25;
+
+  /** Workloads that grow by less than this are too close to compare. */
+  private static final double MIN_WORKLOAD_GROWTH = 4;
+
+  /** The slowest value of an input may take at most this many times as long as the fastest. */
+  private static final double MAX_INPUT_SPREAD = 1.5;
+
+  private final Set<String> workloadParameterNames;
+  private final Set<String> inputParameterNames;
+
+  OptimizedAwayDetector(Set<String> workloadParameterNames, Set<String> inputParameterNames) {
+    this.workloadParameterNames = workloadParameterNames;
+    this.inputParameterNames = inputParameterNames;
+  }
+
+  /**
+   * Returns the reasons to suspect each suspicious scenario, which is empty if
+   * none are suspicious.
+   *
+   * @param nanosPerRep the time per rep of each scenario.
+   */
+  public Multimap<Scenario, String> findSuspects(Map<Scenario, Double> nanosPerRep) {
+    Multimap<Scenario, String> result = LinkedHashMultimap.create();
+    for (String name : workloadParameterNames) {
+      for (List<Scenario> scenarios : groupByAllBut(name, nanosPerRep.keySet())) {
+        checkWorkload(name, scenarios, nanosPerRep, result);
+      }
+    }
+    for (String name : inputParameterNames) {
+      for (List<Scenario> scenarios : groupByAllBut(name, nanosPerRep.keySet())) {
+        checkInput(name, scenarios, nanosPerRep, result);
+      }
+    }
+    return result;
+  }
+
+  private void checkWorkload(String name, List<Scenario> scenarios,
+      Map<Scenario, Double> nanosPerRep, Multimap<Scenario, String> result) {
+    Scenario smallest = null;
+    Scenario largest = null;
+    for (Scenario scenario : scenarios) {
+      if (Double.isNaN(workload(scenario, name))) {
+        return; // not numeric, so there's no way to tell how much it grew
+      }
+      if (smallest == null || workload(scenario, name) < workload(smallest, name)) {
+        smallest = scenario;
+      }
+      if (largest == null || workload(scenario, name) > workload(largest, name)) {
+        largest = scenario;
+      }
+    }
+    if (smallest == null || workload(smallest, name) <= 0) {
+      return;
+    }
+
+    double workloadGrowth = workload(largest, name) / workload(smallest, name);
+    double timeGrowth = nanosPerRep.get(largest) / nanosPerRep.get(smallest);
+    if (workloadGrowth < MIN_WORKLOAD_GROWTH
+        || timeGrowth >= Math.pow(workloadGrowth, MIN_WORKLOAD_EXPONENT)) {
+      return;
+    }
+    String reason = String.format("The time per rep grew only %.2fx while %s grew %.0fx from %s "
+        + "to %s. The runtime may have optimized the work away; consume its results with a Sink.",
+        timeGrowth, name, workloadGrowth, smallest.getVariables().get(name),
+        largest.getVariables().get(name));
+    for (Scenario scenario : scenarios) {
+      result.put(scenario, reason);
+    }
+  }
+
+  private void checkInput(String name, List<Scenario> scenarios,
+      Map<Scenario, Double> nanosPerRep, Multimap<Scenario, String> result) {
+    Scenario fastest = null;
+    Scenario slowest = null;
+    for (Scenario scenario : scenarios) {
+      if (fastest == null || nanosPerRep.get(scenario) < nanosPerRep.get(fastest)) {
+        fastest = scenario;
+      }
+      if (slowest == null || nanosPerRep.get(scenario) > nanosPerRep.get(slowest)) {
+        slowest = scenario;
+      }
+    }
+
+    double spread = nanosPerRep.get(slowest) / nanosPerRep.get(fastest);
+    if (!(spread > MAX_INPUT_SPREAD)) {
+      return;
+    }
+    String reason = String.format("The time per rep was %.2fx longer with %s=%s than with %s=%s, "
+        + "which shouldn't change the work. The runtime may have folded some inputs into "
+        + "constants; read them from fields rather than constants.",
+        spread, name, slowest.getVariables().get(name), name, fastest.getVariables().get(name));
+    for (Scenario scenario : scenarios) {
+      result.put(scenario, reason);
+    }
+  }
+
+  /**
+   * Returns the scenarios grouped by their values of every variable except
+   * {@code name}, omitting groups with only one scenario.
+   */
+  private static Collection<List<Scenario>> groupByAllBut(String name, Set<Scenario> scenarios) {
+    Map<Map<String, String>, List<Scenario>> groups =
+        new LinkedHashMap<Map<String, String>, List<Scenario>>();
+    for (Scenario scenario : scenarios) {
+      if (!scenario.getVariables().containsKey(name)) {
+        continue;
+      }
+      Map<String, String> others = new LinkedHashMap<String, String>(scenario.getVariables());
+      others.remove(name);
+      List<Scenario> group = groups.get(others);
+      if (group == null) {
+        group = new ArrayList<Scenario>();
+        groups.put(others, group);
+      }
+      group.add(scenario);
+    }
+
+    List<List<Scenario>> result = new ArrayList<List<Scenario>>();
+    for (List<Scenario> group : groups.values()) {
+      if (group.size() > 1) {
+        result.add(group);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the numeric value of the workload parameter in {@code scenario},
+   * or NaN if it isn't numeric.
+   */
+  private static double workload(Scenario scenario, String name) {
+    try {
+      return Double.parseDouble(scenario.getVariables().get(name));
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+}
@@ -28,7 +28,8 @@ import java.lang.annotation.Target;
  *
  * <ul>
  * <li>The command line, if specified using {@code -Dname=value1,value2,value3}
- * <li>Otherwise, the {@link #value()} list given in the annotation
+ * <li>Otherwise, the {@link #value()} list given in the annotation, or the values in its
+ *     {@link #range()}
  * <li>Otherwise, Caliper looks for a static method named {@code paramName + "Values"} (for
  *     example, if the parameter field is {@code size}, it looks for {@code sizeValues()}). The
  *     method can return any subtype of {@link Iterable}. The contents of that iterable are used as
@@ -61,4 +62,30 @@ public @interface Param {
    * line.
    */
   String[] value() default {};
+
+  /**
+   * A geometric range of default values, such as {@code "16..16M*2"} or {@code
+   * "1K..1M:20log"}, to use instead of listing each value. K, M and G stand
+   * for powers of 1024. {@code from..to*factor} multiplies by {@code factor}
+   * from {@code from} up to {@code to}; {@code from..to:Nlog} takes {@code N}
+   * values evenly spaced on a logarithmic scale. Like {@link #value()}, it is
+   * ignored if values are specified on the command line.
+   */
+  String range() default "";
+
+  /**
+   * Marks this parameter as the amount of work each rep does, such as the
+   * length of an array to sum. Caliper warns if the time per rep doesn't grow
+   * with its numeric values, since that usually means the runtime optimized
+   * the work away.
+   */
+  boolean workload() default false;
+
+  /**
+   * Marks this parameter as an input to each rep that shouldn't change how
+   * much work it does, such as the seed of the data being hashed. Caliper
+   * warns if the time per rep differs substantially between its values,
+   * since that usually means the runtime folded some of them into constants.
+   */
+  boolean input() default false;
 }
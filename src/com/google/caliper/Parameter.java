@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -64,7 +65,27 @@ abstract class Parameter<T> {
   static Parameter<?> forField(
       Class<? extends Benchmark> suiteClass, final Field field) {
     // First check for String values on the annotation itself
-    final Object[] defaults = field.getAnnotation(Param.class).value();
+    Param param = field.getAnnotation(Param.class);
+    final Object[] defaults = param.value();
+    if (param.workload() && param.input()) {
+      throw new ConfigurationException("Both workload and input set for " + field);
+    }
+    if (param.range().length() > 0) {
+      if (defaults.length > 0) {
+        throw new ConfigurationException("Both values and a range defined for " + field);
+      }
+      final List<String> rangeValues;
+      try {
+        rangeValues = ParameterRange.expand(param.range());
+      } catch (IllegalArgumentException e) {
+        throw new ConfigurationException(e.getMessage() + " for " + field);
+      }
+      return new Parameter<Object>(field) {
+        @Override public Iterable<Object> values() throws Exception {
+          return Collections.<Object>unmodifiableList(rangeValues);
+        }
+      };
+    }
     if (defaults.length > 0) {
       return new Parameter<Object>(field) {
         @Override public Iterable<Object> values() throws Exception {
@@ -198,4 +219,19 @@ abstract class Parameter<T> {
   String getName() {
     return field.getName();
   }
+
+  /**
+   * Returns true if this parameter is the amount of work each rep does.
+   */
+  boolean isWorkload() {
+    return field.getAnnotation(Param.class).workload();
+  }
+
+  /**
+   * Returns true if this parameter is an input that shouldn't change the
+   * amount of work each rep does.
+   */
+  boolean isInput() {
+    return field.getAnnotation(Param.class).input();
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Expands a geometric range of parameter values, such as {@code 16..16M*2}
+ * or {@code 1K..1M:20log}.
+ *
+ * <p>The bounds are integers, optionally with a K, M or G suffix for powers
+ * of 1024. {@code from..to*factor} starts at {@code from} and multiplies by
+ * {@code factor} until it passes {@code to}. {@code from..to:Nlog} is {@code
+ * N} values evenly spaced on a logarithmic scale from {@code from} to {@code
+ * to}, rounded to integers; values that round to the same integer are only
+ * included once.
+ */
+final class ParameterRange {
+
+  /** Guards against ranges that would create an unreasonable number of scenarios. */
+  private static final int MAX_VALUES = 10000;
+
+  private static final String BOUND = "(\\d+[KMG]?)";
+
+  private static final Pattern MULTIPLY_PATTERN =
+      Pattern.compile(BOUND + "\\.\\." + BOUND + "\\*(\\d+(?:\\.\\d+)?)");
+
+  private static final Pattern LOG_PATTERN =
+      Pattern.compile(BOUND + "\\.\\." + BOUND + ":(\\d+)log");
+
+  private ParameterRange() {}
+
+  /**
+   * Returns true if {@code value} uses the range syntax.
+   */
+  static boolean isRange(String value) {
+    return MULTIPLY_PATTERN.matcher(value).matches() || LOG_PATTERN.matcher(value).matches();
+  }
+
+  /**
+   * Returns the values in {@code range}, in ascending order.
+   *
+   * @throws IllegalArgumentException if {@code range} isn't a valid range.
+   */
+  static List<String> expand(String range) {
+    Matcher multiply = MULTIPLY_PATTERN.matcher(range);
+    if (multiply.matches()) {
+      long from = parseBound(multiply.group(1));
+      long to = parseBound(multiply.group(2));
+      double factor = Double.parseDouble(multiply.group(3));
+      if (from < 1 || from > to || factor <= 1) {
+        throw new IllegalArgumentException("Invalid range: " + range);
+      }
+      List<String> result = new ArrayList<String>();
+      long previous = 0;
+      for (double value = from; Math.round(value) <= to; value *= factor) {
+        previous = add(result, previous, Math.round(value), range);
+      }
+      return result;
+    }
+
+    Matcher log = LOG_PATTERN.matcher(range);
+    if (log.matches()) {
+      long from = parseBound(log.group(1));
+      long to = parseBound(log.group(2));
+      int count = Integer.parseInt(log.group(3));
+      if (from < 1 || from > to || count < 2) {
+        throw new IllegalArgumentException("Invalid range: " + range);
+      }
+      double logFrom = Math.log(from);
+      double step = (Math.log(to) - logFrom) / (count - 1);
+      List<String> result = new ArrayList<String>();
+      long previous = 0;
+      for (int i = 0; i < count; i++) {
+        long value = i == count - 1 ? to : Math.round(Math.exp(logFrom + i * step));
+        previous = add(result, previous, value, range);
+      }
+      return result;
+    }
+
+    throw new IllegalArgumentException("Invalid range: " + range);
+  }
+
+  /**
+   * Appends {@code value} to {@code values} unless it repeats {@code
+   * previous}, and returns the last value appended.
+   */
+  private static long add(List<String> values, long previous, long value, String range) {
+    if (value == previous) {
+      return previous;
+    }
+    if (values.size() == MAX_VALUES) {
+      throw new IllegalArgumentException("Range has more than " + MAX_VALUES + " values: "
+          + range);
+    }
+    values.add(Long.toString(value));
+    return value;
+  }
+
+  private static long parseBound(String bound) {
+    char suffix = bound.charAt(bound.length() - 1);
+    long multiplier;
+    if (suffix == 'K') {
+      multiplier = 1024L;
+    } else if (suffix == 'M') {
+      multiplier = 1024L * 1024;
+    } else if (suffix == 'G') {
+      multiplier = 1024L * 1024 * 1024;
+    } else {
+      return Long.parseLong(bound);
+    }
+    return Long.parseLong(bound.substring(0, bound.length() - 1)) * multiplier;
+  }
+}
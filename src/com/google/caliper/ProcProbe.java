@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records operating system counters for the worker process from Linux's
+ * procfs: context switches, page faults and the time the benchmark thread
+ * spent waiting on a run queue. This probe records nothing on other systems.
+ */
+final class ProcProbe extends TrialProbe {
+
+  private static final String STAT = "/proc/self/stat";
+  private static final String STATUS = threadFile("status");
+  private static final String SCHED = threadFile("sched");
+  private static final String SCHEDSTAT = threadFile("schedstat");
+
+  /** The fields of the stat file holding minflt and majflt. */
+  static final int MINOR_FAULTS_FIELD = 10;
+  static final int MAJOR_FAULTS_FIELD = 12;
+
+  /** Procfs files are small; this fits all of the ones we read. */
+  private final byte[] buffer = new byte[16 * 1024];
+
+  private final boolean available = new File(STAT).canRead();
+  private long[] before;
+
+  @Override public void start() {
+    before = available ? snapshot() : null;
+  }
+
+  @Override public Map<String, Double> stop() {
+    Map<String, Double> result = new HashMap<String, Double>();
+    if (before == null) {
+      return result;
+    }
+    long[] after = snapshot();
+    putDelta(result, Measurement.OS_MINOR_FAULTS, before[0], after[0]);
+    putDelta(result, Measurement.OS_MAJOR_FAULTS, before[1], after[1]);
+    putDelta(result, Measurement.OS_VOLUNTARY_SWITCHES, before[2], after[2]);
+    putDelta(result, Measurement.OS_INVOLUNTARY_SWITCHES, before[3], after[3]);
+    putDelta(result, Measurement.OS_RUN_QUEUE_WAIT_NANOS, before[4], after[4]);
+    return result;
+  }
+
+  private static void putDelta(Map<String, Double> result, String name, long before, long after) {
+    if (before >= 0 && after >= 0) {
+      result.put(name, (double) (after - before));
+    }
+  }
+
+  /**
+   * Returns minor faults, major faults, voluntary and involuntary context
+   * switches and run queue wait nanos. Values that couldn't be read are -1.
+   */
+  private long[] snapshot() {
+    long[] result = { -1, -1, -1, -1, -1 };
+
+    String stat = read(STAT);
+    if (stat != null) {
+      result[0] = parseStatField(stat, MINOR_FAULTS_FIELD);
+      result[1] = parseStatField(stat, MAJOR_FAULTS_FIELD);
+    }
+
+    String status = read(STATUS);
+    if (status != null) {
+      result[2] = parseStatusValue(status, "voluntary_ctxt_switches:");
+      result[3] = parseStatusValue(status, "nonvoluntary_ctxt_switches:");
+    }
+
+    String sched = read(SCHED);
+    result[4] = sched != null ? parseSchedWaitNanos(sched) : -1;
+    if (result[4] == -1) {
+      String schedstat = read(SCHEDSTAT);
+      if (schedstat != null) {
+        result[4] = parseSchedstatWaitNanos(schedstat);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a numbered field of a stat file, counting from 1 as proc(5) does,
+   * or -1 if the file doesn't have it. The command name in the second field
+   * may contain spaces and parentheses, so fields are counted from the last
+   * closing parenthesis.
+   */
+  static long parseStatField(String stat, int field) {
+    try {
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+      return Long.parseLong(fields[field - 3]);
+    } catch (NumberFormatException e) {
+      return -1;
+    } catch (IndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the number on the line of a status file that starts with {@code
+   * key}, or -1 if there is none.
+   */
+  static long parseStatusValue(String status, String key) {
+    String value = value(status, key);
+    try {
+      return value == null ? -1 : Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the wait_sum of a sched file in nanos, or -1 if it has none. It is
+   * in milliseconds, and only present when the kernel collects scheduler
+   * statistics.
+   */
+  static long parseSchedWaitNanos(String sched) {
+    int waitSum = sched.indexOf("wait_sum");
+    if (waitSum == -1) {
+      return -1;
+    }
+    int end = sched.indexOf('\n', waitSum);
+    try {
+      String millis = sched.substring(sched.indexOf(':', waitSum) + 1,
+          end == -1 ? sched.length() : end).trim();
+      return (long) (Double.parseDouble(millis) * 1000000);
+    } catch (NumberFormatException e) {
+      return -1;
+    } catch (IndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the run queue wait in nanos from the second field of a schedstat
+   * file, or -1 if it doesn't have one.
+   */
+  static long parseSchedstatWaitNanos(String schedstat) {
+    try {
+      return Long.parseLong(schedstat.trim().split(" ")[1]);
+    } catch (NumberFormatException e) {
+      return -1;
+    } catch (IndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the rest of the line that starts with {@code key}, or null if no
+   * line starts with it.
+   */
+  private static String value(String file, String key) {
+    int start;
+    if (file.startsWith(key)) {
+      start = key.length();
+    } else {
+      start = file.indexOf("\n" + key);
+      if (start == -1) {
+        return null;
+      }
+      start += 1 + key.length();
+    }
+    int end = file.indexOf('\n', start);
+    return file.substring(start, end == -1 ? file.length() : end);
+  }
+
+  private String read(String path) {
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(path);
+      int length = 0;
+      int count;
+      while (length < buffer.length
+          && (count = in.read(buffer, length, buffer.length - length)) != -1) {
+        length += count;
+      }
+      return new String(buffer, 0, length, "US-ASCII");
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Prefers the per-thread file, which describes only the benchmark thread,
+   * on kernels that have {@code /proc/thread-self}.
+   */
+  private static String threadFile(String name) {
+    return new File("/proc/thread-self").exists()
+        ? "/proc/thread-self/" + name
+        : "/proc/self/" + name;
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.Serializable;
+
+/**
+ * The instances and bytes of one type in an object graph whose footprint was
+ * measured.
+ *
+ * <p>Gwt-safe.
+ */
+@SuppressWarnings("serial")
+public final class RetainedType
+    implements Serializable /* for GWT Serialization */ {
+
+  /** The retained type, such as "java.lang.Integer" or "int[]". */
+  private /*final*/ String type;
+  private /*final*/ long instances;
+  private /*final*/ long bytes;
+
+  public RetainedType(String type, long instances, long bytes) {
+    this.type = type;
+    this.instances = instances;
+    this.bytes = bytes;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public long getInstances() {
+    return instances;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  @Override public String toString() {
+    return type + ": " + instances + " instances, " + bytes + " bytes";
+  }
+
+  private RetainedType() {} // for GWT Serialization
+}
@@ -22,6 +22,8 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.io.Closeables;
 import com.google.gson.JsonObject;
@@ -38,6 +40,8 @@ import java.io.PrintStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +69,9 @@ public final class Runner {
   private Arguments arguments;
   private ScenarioSelection scenarioSelection;
 
+  /** Whether each VM command line supports virtual threads, so each is only checked once. */
+  private final Map<List<String>, Boolean> virtualThreadSupport = Maps.newHashMap();
+
   private String createFileName(Result result) {
     String timestamp = createTimestamp();
     return String.format("%s.%s.json", result.getRun().getBenchmarkName(), timestamp);
@@ -90,7 +97,7 @@ public final class Runner {
       return;
     }
     Result result = runOutOfProcess();
-    new ConsoleReport(result.getRun(), arguments).displayResults();
+    new ConsoleReport(result.getRun(), result.getEnvironment(), arguments).displayResults();
     boolean saveResultsLocally = arguments.getSaveResultsFile() != null;
     try {
       postResults(result);
@@ -209,6 +216,11 @@ public final class Runner {
 
   private ScenarioResult runScenario(Scenario scenario) {
     MeasurementResult timeMeasurementResult = measure(scenario, MeasurementType.TIME);
+    MeasurementSet timeMeasurements = timeMeasurementResult.getMeasurements();
+    if (arguments.getHeapSweep()) {
+      timeMeasurements = timeMeasurements.plusHeapSweep(
+          sweepHeapSizes(scenario, timeMeasurements.medianRaw()));
+    }
     MeasurementSet allocationMeasurements = null;
     String allocationEventLog = null;
     MeasurementSet memoryMeasurements = null;
@@ -222,21 +234,103 @@ public final class Runner {
           measure(scenario, MeasurementType.MEMORY);
       memoryMeasurements = memoryMeasurementResult.getMeasurements();
       memoryEventLog = memoryMeasurementResult.getEventLog();
+      if (arguments.getAllocationStackInterval() > 0) {
+        writeAllocationStacks(scenario, memoryMeasurements);
+        // too large to also save and post with the results
+        memoryMeasurements = memoryMeasurements.withoutAllocationStacks();
+      }
+    }
+    MeasurementSet footprintMeasurements = null;
+    String footprintEventLog = null;
+    if (scenarioSelection.hasFootprint(scenario)) {
+      MeasurementResult footprintMeasurementResult = measure(scenario, MeasurementType.FOOTPRINT);
+      footprintMeasurements = footprintMeasurementResult.getMeasurements();
+      footprintEventLog = footprintMeasurementResult.getEventLog();
     }
 
-    return new ScenarioResult(timeMeasurementResult.getMeasurements(),
+    return new ScenarioResult(timeMeasurements,
         timeMeasurementResult.getEventLog(),
         allocationMeasurements, allocationEventLog,
-        memoryMeasurements, memoryEventLog);
+        memoryMeasurements, memoryEventLog,
+        footprintMeasurements, footprintEventLog);
+  }
+
+  /**
+   * Times {@code scenario} again with a series of maximum heap sizes, to find
+   * the smallest one in which it runs within the tolerance of {@code
+   * baselineNanos}. Runs that run out of memory count as too slow; any other
+   * failure fails the whole run, since it says nothing about the heap size.
+   */
+  private HeapSweep sweepHeapSizes(Scenario scenario, double baselineNanos) {
+    HeapBisection bisection = new HeapBisection(arguments.getHeapSweepMinBytes(),
+        arguments.getHeapSweepMaxBytes(), baselineNanos, arguments.getHeapSweepTolerance());
+    long heapBytes;
+    while ((heapBytes = bisection.next()) != -1) {
+      Map<String, String> variables = Maps.newLinkedHashMap(scenario.getVariables());
+      variables.put(Scenario.MAX_HEAP_KEY, heapBytes / HeapBisection.MEGABYTE + "m");
+      MeasurementResult result = tryMeasure(new Scenario(variables), MeasurementType.TIME);
+      if (result.getMeasurements() != null) {
+        bisection.record(heapBytes, result.getMeasurements().medianRaw(), null);
+      } else if (result.getEventLog().contains("OutOfMemoryError")) {
+        bisection.record(heapBytes, 0, "OutOfMemoryError");
+      } else {
+        throw measurementFailed(result);
+      }
+    }
+    return bisection.getResult();
+  }
+
+  /**
+   * Writes the scenario's sampled allocation stacks in collapsed stack format,
+   * next to where the results are saved.
+   */
+  private void writeAllocationStacks(Scenario scenario, MeasurementSet memoryMeasurements) {
+    File dir = getResultsDirectory();
+    dir.mkdirs();
+    String scenarioName = Joiner.on(',').withKeyValueSeparator("=")
+        .join(scenario.getVariables()).replaceAll("[^A-Za-z0-9=,._-]", "_");
+    File file = new File(dir, String.format("%s.%s.collapsed",
+        arguments.getSuiteClassName(), scenarioName));
+    PrintStream out;
+    try {
+      out = new PrintStream(new FileOutputStream(file));
+    } catch (FileNotFoundException e) {
+      throw new RuntimeException("can't open " + file, e);
+    }
+    try {
+      for (String stack : memoryMeasurements.getAllocationStacks()) {
+        out.println(stack);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the directory that results are saved in, or that they would be
+   * saved in if they were saved to a file.
+   */
+  private File getResultsDirectory() {
+    File resultsFile = arguments.getSaveResultsFile();
+    if (resultsFile == null) {
+      return new File("./caliper-results");
+    } else if (resultsFile.isDirectory()) {
+      return resultsFile;
+    } else {
+      File parent = resultsFile.getAbsoluteFile().getParentFile();
+      return parent != null ? parent : new File(".");
+    }
   }
 
   private class MeasurementResult {
     private final MeasurementSet measurements;
     private final String eventLog;
+    private final List<String> command;
 
-    MeasurementResult(MeasurementSet measurements, String eventLog) {
+    MeasurementResult(MeasurementSet measurements, String eventLog, List<String> command) {
       this.measurements = measurements;
       this.eventLog = eventLog;
+      this.command = command;
     }
 
     public MeasurementSet getMeasurements() {
@@ -246,9 +340,37 @@ public final class Runner {
     public String getEventLog() {
       return eventLog;
     }
+
+    public List<String> getCommand() {
+      return command;
+    }
   }
 
   private MeasurementResult measure(Scenario scenario, MeasurementType type) {
+    MeasurementResult result = tryMeasure(scenario, type);
+    if (result.getMeasurements() == null) {
+      throw measurementFailed(result);
+    }
+    return result;
+  }
+
+  /**
+   * Prints why a measurement failed, returning the exception to fail the run
+   * with.
+   */
+  private ConfigurationException measurementFailed(MeasurementResult result) {
+    String message = "Failed to execute " + Joiner.on(" ").join(result.getCommand());
+    System.err.println("  " + message);
+    System.err.println(result.getEventLog());
+    return new ConfigurationException(message);
+  }
+
+  /**
+   * Measures {@code scenario} in a new process. If the process doesn't report
+   * any measurements, the result has null measurements and the process's
+   * output as its event log.
+   */
+  private MeasurementResult tryMeasure(Scenario scenario, MeasurementType type) {
     Vm vm = new VmFactory().createVm(scenario);
     // this must be done before starting the forked process on certain VMs
     ProcessBuilder processBuilder = createCommand(scenario, vm, type)
@@ -284,24 +406,66 @@ public final class Runner {
       timeProcess.destroy();
     }
 
-    if (measurementSet == null) {
-      String message = "Failed to execute " + Joiner.on(" ").join(processBuilder.command());
-      System.err.println("  " + message);
-      System.err.println(eventLog.toString());
-      throw new ConfigurationException(message);
+    return new MeasurementResult(measurementSet, eventLog.toString(), processBuilder.command());
+  }
+
+  private ProcessBuilder createCommand(Scenario scenario, Vm vm, MeasurementType type) {
+    ImmutableList.Builder<String> caliperArgs = ImmutableList.builder();
+    caliperArgs.add("--warmupMillis").add(Long.toString(arguments.getWarmupMillis()));
+    caliperArgs.add("--minWarmupMillis").add(Long.toString(arguments.getMinWarmupMillis()));
+    caliperArgs.add("--runMillis").add(Long.toString(arguments.getRunMillis()));
+    if (arguments.getDiscardLevelShifts()) {
+      caliperArgs.add("--discardLevelShifts");
+    }
+    if (arguments.getRerunGcTrials()) {
+      caliperArgs.add("--rerunGcTrials");
+    }
+    String threadMode = scenario.getVariables().get(Scenario.THREAD_MODE_KEY);
+    if (threadMode != null) {
+      caliperArgs.add("--threadModes").add(threadMode);
+    }
+    String cacheMode = scenario.getVariables().get(Scenario.CACHE_MODE_KEY);
+    if (cacheMode != null) {
+      caliperArgs.add("--cacheModes").add(cacheMode);
+      if (arguments.getColdCacheBytes() > 0) {
+        caliperArgs.add("--coldCacheBytes").add(Long.toString(arguments.getColdCacheBytes()));
+      }
+    }
+    if (type == MeasurementType.MEMORY && arguments.getAllocationStackInterval() > 0) {
+      caliperArgs.add("--allocationStackInterval")
+          .add(Integer.toString(arguments.getAllocationStackInterval()));
+    }
+    if ((type == MeasurementType.INSTANCE || type == MeasurementType.MEMORY)
+        && arguments.getAllocationFit()) {
+      caliperArgs.add("--allocationFit");
+    }
+    caliperArgs.add("--measurementType").add(type.toString());
+    caliperArgs.add("--marker").add(arguments.getMarker());
+
+    Map<String,String> userParameters = scenario.getVariables(
+        scenarioSelection.getUserParameterNames());
+    for (Entry<String, String> entry : userParameters.entrySet()) {
+      caliperArgs.add("-D" + entry.getKey() + "=" + entry.getValue());
     }
+    caliperArgs.add(arguments.getSuiteClassName());
 
-    return new MeasurementResult(measurementSet, eventLog.toString());
+    return vm.newProcessBuilder(getWorkingDirectory(), getClassPath(),
+        createVmArgs(scenario, vm, type), InProcessRunner.class.getName(), caliperArgs.build());
   }
 
-  private ProcessBuilder createCommand(Scenario scenario, Vm vm, MeasurementType type) {
-    File workingDirectory = new File(System.getProperty("user.dir"));
+  private File getWorkingDirectory() {
+    return new File(System.getProperty("user.dir"));
+  }
 
+  private String getClassPath() {
     String classPath = System.getProperty("java.class.path");
     if (classPath == null || classPath.length() == 0) {
       throw new IllegalStateException("java.class.path is undefined in " + System.getProperties());
     }
+    return classPath;
+  }
 
+  private ImmutableList<String> createVmArgs(Scenario scenario, Vm vm, MeasurementType type) {
     ImmutableList.Builder<String> vmArgs = ImmutableList.builder();
     vmArgs.addAll(ARGUMENT_SPLITTER.split(scenario.getVariables().get(Scenario.VM_KEY)));
     if (type == MeasurementType.INSTANCE || type == MeasurementType.MEMORY) {
@@ -315,22 +479,61 @@ public final class Runner {
     for (String vmParameter : vmParameters.values()) {
       vmArgs.addAll(ARGUMENT_SPLITTER.split(vmParameter));
     }
+    // last, so that it overrides any maximum heap size in the VM parameters
+    String maxHeap = scenario.getVariables().get(Scenario.MAX_HEAP_KEY);
+    if (maxHeap != null) {
+      vmArgs.add("-Xmx" + maxHeap);
+    }
+    return vmArgs.build();
+  }
 
-    ImmutableList.Builder<String> caliperArgs = ImmutableList.builder();
-    caliperArgs.add("--warmupMillis").add(Long.toString(arguments.getWarmupMillis()));
-    caliperArgs.add("--runMillis").add(Long.toString(arguments.getRunMillis()));
-    caliperArgs.add("--measurementType").add(type.toString());
-    caliperArgs.add("--marker").add(arguments.getMarker());
+  /**
+   * Returns true if {@code scenario} can run on its VM. Virtual thread
+   * scenarios need a VM that supports virtual threads with the scenario's VM
+   * arguments, which is checked by running that VM once.
+   */
+  private boolean isRunnable(Scenario scenario) {
+    if (!VirtualThreads.VIRTUAL.equals(scenario.getVariables().get(Scenario.THREAD_MODE_KEY))) {
+      return true;
+    }
 
-    Map<String,String> userParameters = scenario.getVariables(
-        scenarioSelection.getUserParameterNames());
-    for (Entry<String, String> entry : userParameters.entrySet()) {
-      caliperArgs.add("-D" + entry.getKey() + "=" + entry.getValue());
+    Vm vm = new VmFactory().createVm(scenario);
+    ImmutableList<String> vmArgs = createVmArgs(scenario, vm, MeasurementType.TIME);
+    Boolean supported = virtualThreadSupport.get(vmArgs);
+    if (supported == null) {
+      supported = supportsVirtualThreads(vm, vmArgs);
+      virtualThreadSupport.put(vmArgs, supported);
+      if (!supported) {
+        System.out.println("Skipping virtual thread scenarios on "
+            + Joiner.on(" ").join(vmArgs) + ", which doesn't support virtual threads");
+      }
     }
-    caliperArgs.add(arguments.getSuiteClassName());
+    return supported;
+  }
 
-    return vm.newProcessBuilder(workingDirectory, classPath,
-        vmArgs.build(), InProcessRunner.class.getName(), caliperArgs.build());
+  private boolean supportsVirtualThreads(Vm vm, ImmutableList<String> vmArgs) {
+    ProcessBuilder processBuilder = vm.newProcessBuilder(getWorkingDirectory(), getClassPath(),
+        vmArgs, VirtualThreads.class.getName(), ImmutableList.<String>of())
+        .redirectErrorStream(true);
+    Process process = null;
+    BufferedReader reader = null;
+    try {
+      process = processBuilder.start();
+      reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      String line;
+      boolean supported = false;
+      while ((line = reader.readLine()) != null) {
+        supported |= line.trim().equals("true");
+      }
+      return supported;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      Closeables.closeQuietly(reader);
+      if (process != null) {
+        process.destroy();
+      }
+    }
   }
 
   private void debug() {
@@ -352,16 +555,34 @@ public final class Runner {
     ImmutableMap.Builder<Scenario, ScenarioResult> resultsBuilder = ImmutableMap.builder();
 
     try {
-      List<Scenario> scenarios = scenarioSelection.select();
+      List<Scenario> scenarios = new ArrayList<Scenario>();
+      for (Scenario scenario : scenarioSelection.select()) {
+        if (isRunnable(scenario)) {
+          scenarios.add(scenario);
+        }
+      }
+      if (scenarios.isEmpty()) {
+        throw new ConfigurationException("No scenarios can run on the selected VMs");
+      }
+      if (arguments.getPrimaryMeasurementType() == MeasurementType.FOOTPRINT) {
+        for (Scenario scenario : scenarios) {
+          if (!scenarioSelection.hasFootprint(scenario)) {
+            throw new ConfigurationException("--primaryMeasurementType footprint requires a "
+                + "footprint method for every benchmark, but " + scenario + " has none");
+          }
+        }
+      }
 
+      Map<Scenario, ScenarioResult> scenarioResults = Maps.newLinkedHashMap();
       int i = 0;
       for (Scenario scenario : scenarios) {
         beforeMeasurement(i++, scenarios.size(), scenario);
         ScenarioResult scenarioResult = runScenario(scenario);
         afterMeasurement(arguments.getMeasureMemory(), scenarioResult);
-        resultsBuilder.put(scenario, scenarioResult);
+        scenarioResults.put(scenario, scenarioResult);
       }
       System.out.println();
+      resultsBuilder.putAll(flagOptimizedAway(scenarioResults));
 
       Environment environment = new EnvironmentGetter().getEnvironmentSnapshot();
       return new Result(
@@ -372,6 +593,45 @@ public final class Runner {
     }
   }
 
+  /**
+   * Returns the scenario results with the time measurements of any scenarios
+   * whose work appears to have been optimized away flagged, by comparing
+   * scenarios that differ only in a workload or input parameter.
+   */
+  private Map<Scenario, ScenarioResult> flagOptimizedAway(
+      Map<Scenario, ScenarioResult> scenarioResults) {
+    Map<Scenario, Double> nanosPerRep = Maps.newLinkedHashMap();
+    for (Entry<Scenario, ScenarioResult> entry : scenarioResults.entrySet()) {
+      nanosPerRep.put(entry.getKey(),
+          entry.getValue().getMeasurementSet(MeasurementType.TIME).medianRaw());
+    }
+    Multimap<Scenario, String> suspects = new OptimizedAwayDetector(
+        scenarioSelection.getWorkloadParameterNames(),
+        scenarioSelection.getInputParameterNames()).findSuspects(nanosPerRep);
+
+    Map<Scenario, ScenarioResult> result = Maps.newLinkedHashMap();
+    for (Entry<Scenario, ScenarioResult> entry : scenarioResults.entrySet()) {
+      ScenarioResult scenarioResult = entry.getValue();
+      Collection<String> reasons = suspects.get(entry.getKey());
+      if (!reasons.isEmpty()) {
+        MeasurementSet timeMeasurements = scenarioResult.getMeasurementSet(MeasurementType.TIME);
+        for (String reason : reasons) {
+          timeMeasurements = timeMeasurements.plusSuspectedOptimizedAway(reason);
+        }
+        scenarioResult = new ScenarioResult(timeMeasurements,
+            scenarioResult.getEventLog(MeasurementType.TIME),
+            scenarioResult.getMeasurementSet(MeasurementType.INSTANCE),
+            scenarioResult.getEventLog(MeasurementType.INSTANCE),
+            scenarioResult.getMeasurementSet(MeasurementType.MEMORY),
+            scenarioResult.getEventLog(MeasurementType.MEMORY),
+            scenarioResult.getMeasurementSet(MeasurementType.FOOTPRINT),
+            scenarioResult.getEventLog(MeasurementType.FOOTPRINT));
+      }
+      result.put(entry.getKey(), scenarioResult);
+    }
+    return result;
+  }
+
   private void beforeMeasurement(int index, int total, Scenario scenario) {
     double percentDone = (double) index / total;
     System.out.printf("%2.0f%% %s", percentDone * 100, scenario);
@@ -391,6 +651,15 @@ public final class Runner {
           Math.round(instanceMeasurementSet.medianUnits()), instanceUnit,
           Math.round(memoryMeasurementSet.medianUnits()), memoryUnit);
     }
+    MeasurementSet footprintMeasurementSet =
+        scenarioResult.getMeasurementSet(MeasurementType.FOOTPRINT);
+    if (footprintMeasurementSet != null) {
+      String footprintUnit = ConsoleReport.UNIT_ORDERING
+          .min(footprintMeasurementSet.getUnitNames().entrySet()).getKey();
+      memoryMeasurements += String.format(", %s%s",
+          Math.round(footprintMeasurementSet.medianUnits()),
+          footprintUnit.startsWith(" ") ? footprintUnit : " " + footprintUnit);
+    }
 
     MeasurementSet timeMeasurementSet = scenarioResult.getMeasurementSet(MeasurementType.TIME);
     String unit =
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.Serializable;
+
+/**
+ * The classes the VM had loaded and the metaspace and code cache it used at
+ * one stage of a measurement.
+ *
+ * <p>Gwt-safe.
+ */
+@SuppressWarnings("serial")
+public final class RuntimeFootprint
+    implements Serializable /* for GWT Serialization */ {
+
+  public static final String BEFORE_WARMUP = "before warmup";
+  public static final String AFTER_WARMUP = "after warmup";
+  public static final String AFTER_MEASUREMENT = "after measurement";
+
+  /** The stage the footprint was sampled at, such as {@link #AFTER_WARMUP}. */
+  private /*final*/ String stage;
+  private /*final*/ long loadedClasses;
+
+  /**
+   * The bytes used by class metadata, which is the permanent generation on
+   * older VMs, or -1 if the VM doesn't report it.
+   */
+  private /*final*/ long metaspaceBytes;
+
+  /** The bytes used by compiled code, or -1 if the VM doesn't report it. */
+  private /*final*/ long codeCacheBytes;
+
+  public RuntimeFootprint(String stage, long loadedClasses, long metaspaceBytes,
+      long codeCacheBytes) {
+    this.stage = stage;
+    this.loadedClasses = loadedClasses;
+    this.metaspaceBytes = metaspaceBytes;
+    this.codeCacheBytes = codeCacheBytes;
+  }
+
+  public String getStage() {
+    return stage;
+  }
+
+  public long getLoadedClasses() {
+    return loadedClasses;
+  }
+
+  public long getMetaspaceBytes() {
+    return metaspaceBytes;
+  }
+
+  public long getCodeCacheBytes() {
+    return codeCacheBytes;
+  }
+
+  @Override public String toString() {
+    return stage + ": " + loadedClasses + " classes, " + metaspaceBytes + " bytes of metaspace, "
+        + codeCacheBytes + " bytes of code cache";
+  }
+
+  private RuntimeFootprint() {} // for GWT Serialization
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the classes the VM has loaded and the metaspace and code cache it
+ * uses. These grow with the classes a benchmark pulls in and the code it
+ * generates, such as proxies, lambdas and reflection accessors.
+ */
+final class RuntimeFootprintSampler {
+
+  private final ClassLoadingMXBean classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+  private final List<MemoryPoolMXBean> poolBeans = ManagementFactory.getMemoryPoolMXBeans();
+
+  public RuntimeFootprint sample(String stage) {
+    Map<String, Long> usedByPool = new LinkedHashMap<String, Long>();
+    for (MemoryPoolMXBean pool : poolBeans) {
+      usedByPool.put(pool.getName(), pool.getUsage().getUsed());
+    }
+    return footprint(stage, classLoadingBean.getLoadedClassCount(), usedByPool);
+  }
+
+  /**
+   * Returns the footprint with the metaspace and code cache usage found among
+   * the bytes used by each of the VM's memory pools.
+   */
+  static RuntimeFootprint footprint(String stage, long loadedClasses,
+      Map<String, Long> usedByPool) {
+    long metaspaceBytes = -1;
+    long codeCacheBytes = -1;
+    for (Map.Entry<String, Long> entry : usedByPool.entrySet()) {
+      String name = entry.getKey();
+      if (name.equals("Metaspace") || name.endsWith("Perm Gen")) {
+        metaspaceBytes = add(metaspaceBytes, entry.getValue());
+      } else if (name.equals("Code Cache") || name.startsWith("CodeHeap")) {
+        // segmented code caches report each segment as its own pool
+        codeCacheBytes = add(codeCacheBytes, entry.getValue());
+      }
+    }
+    return new RuntimeFootprint(stage, loadedClasses, metaspaceBytes, codeCacheBytes);
+  }
+
+  private static long add(long total, long bytes) {
+    return total == -1 ? bytes : total + bytes;
+  }
+}
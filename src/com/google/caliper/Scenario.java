@@ -36,6 +36,9 @@ public final class Scenario
 
   static final String VM_KEY = "vm";
   static final String TRIAL_KEY = "trial";
+  static final String THREAD_MODE_KEY = "threads";
+  static final String CACHE_MODE_KEY = "cache";
+  static final String MAX_HEAP_KEY = "maxHeap";
 
   private /*final*/ Map<String, String> variables;
 
@@ -17,7 +17,9 @@
 package com.google.caliper;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -44,18 +46,44 @@ public final class ScenarioResult
       String timeEventLog, MeasurementSet instanceMeasurementSet,
       String instanceEventLog, MeasurementSet memoryMeasurementSet,
       String memoryEventLog) {
+    this(timeMeasurementSet, timeEventLog, instanceMeasurementSet, instanceEventLog,
+        memoryMeasurementSet, memoryEventLog, null, null);
+  }
+
+  public ScenarioResult(MeasurementSet timeMeasurementSet,
+      String timeEventLog, MeasurementSet instanceMeasurementSet,
+      String instanceEventLog, MeasurementSet memoryMeasurementSet,
+      String memoryEventLog, MeasurementSet footprintMeasurementSet,
+      String footprintEventLog) {
     measurementSetMap.put(MeasurementType.TIME.toString(), timeMeasurementSet);
     measurementSetMap.put(MeasurementType.INSTANCE.toString(), instanceMeasurementSet);
     measurementSetMap.put(MeasurementType.MEMORY.toString(), memoryMeasurementSet);
+    measurementSetMap.put(MeasurementType.FOOTPRINT.toString(), footprintMeasurementSet);
     eventLogMap.put(MeasurementType.TIME.toString(), timeEventLog);
     eventLogMap.put(MeasurementType.INSTANCE.toString(), instanceEventLog);
     eventLogMap.put(MeasurementType.MEMORY.toString(), memoryEventLog);
+    eventLogMap.put(MeasurementType.FOOTPRINT.toString(), footprintEventLog);
   }
 
   public MeasurementSet getMeasurementSet(MeasurementType type) {
     return measurementSetMap.get(type.toString());
   }
 
+  /**
+   * Returns the types allocated the most bytes per rep, in descending order of
+   * bytes, or an empty list if allocations weren't measured.
+   */
+  public List<AllocationSite> getAllocationSites() {
+    for (MeasurementType type : new MeasurementType[] {
+        MeasurementType.MEMORY, MeasurementType.INSTANCE}) {
+      MeasurementSet measurementSet = getMeasurementSet(type);
+      if (measurementSet != null && !measurementSet.getAllocationSites().isEmpty()) {
+        return measurementSet.getAllocationSites();
+      }
+    }
+    return new ArrayList<AllocationSite>();
+  }
+
   public String getEventLog(MeasurementType type) {
     return eventLogMap.get(type.toString());
   }
@@ -27,6 +27,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -58,21 +59,38 @@ public final class ScenarioSelection {
   private Multimap<String, String> userParameters;
 
   private final int trials;
+
+  /** Thread modes to run each benchmark in, or empty to not vary the thread mode. */
+  private final Set<String> threadModes;
+
+  /** Cache modes to run each benchmark in, or empty to not vary the cache mode. */
+  private final Set<String> cacheModes;
+
   private Benchmark suite;
 
 
   public ScenarioSelection(Arguments arguments) {
     this(arguments.getUserVms(), arguments.getVmParameters(), arguments.getSuiteClassName(),
-        arguments.getUserParameters(), arguments.getTrials());
+        arguments.getUserParameters(), arguments.getTrials(), arguments.getThreadModes(),
+        arguments.getCacheModes());
   }
 
   public ScenarioSelection(Set<String> userVms, Multimap<String, String> vmParameters,
       String suiteClassName, Multimap<String, String> userParameterArguments, int trials) {
+    this(userVms, vmParameters, suiteClassName, userParameterArguments, trials,
+        Collections.<String>emptySet(), Collections.<String>emptySet());
+  }
+
+  public ScenarioSelection(Set<String> userVms, Multimap<String, String> vmParameters,
+      String suiteClassName, Multimap<String, String> userParameterArguments, int trials,
+      Set<String> threadModes, Set<String> cacheModes) {
     this.userVms = userVms;
     this.vmParameters = vmParameters;
     this.suiteClassName = suiteClassName;
     this.userParameterArguments = userParameterArguments;
     this.trials = trials;
+    this.threadModes = threadModes;
+    this.cacheModes = cacheModes;
   }
 
   /**
@@ -108,6 +126,37 @@ public final class ScenarioSelection {
     return userParameters.keySet();
   }
 
+  /**
+   * Returns the names of the parameters that set the amount of work per rep,
+   * or an empty set if the suite doesn't declare any.
+   */
+  public Set<String> getWorkloadParameterNames() {
+    if (suite instanceof SimpleBenchmark) {
+      return ((SimpleBenchmark) suite).workloadParameterNames();
+    }
+    return Collections.emptySet();
+  }
+
+  /**
+   * Returns the names of the parameters that shouldn't change the amount of
+   * work per rep, or an empty set if the suite doesn't declare any.
+   */
+  public Set<String> getInputParameterNames() {
+    if (suite instanceof SimpleBenchmark) {
+      return ((SimpleBenchmark) suite).inputParameterNames();
+    }
+    return Collections.emptySet();
+  }
+
+  /**
+   * Returns true if the benchmark of {@code scenario} defines a footprint
+   * method, whose object graph can be measured.
+   */
+  public boolean hasFootprint(Scenario scenario) {
+    return suite instanceof SimpleBenchmark && ((SimpleBenchmark) suite)
+        .footprintBenchmarkNames().contains(scenario.getVariables().get("benchmark"));
+  }
+
   public Set<String> getVmParameterNames() {
     return vmParameters.keySet();
   }
@@ -191,6 +240,12 @@ public final class ScenarioSelection {
     Map<String, Collection<String>> variables = new LinkedHashMap<String, Collection<String>>();
     variables.put(Scenario.VM_KEY, userVms.isEmpty() ? VmFactory.defaultVms() : userVms);
     variables.put(Scenario.TRIAL_KEY, newListOfSize(trials));
+    if (!threadModes.isEmpty()) {
+      variables.put(Scenario.THREAD_MODE_KEY, threadModes);
+    }
+    if (!cacheModes.isEmpty()) {
+      variables.put(Scenario.CACHE_MODE_KEY, cacheModes);
+    }
     variables.putAll(userParameters.asMap());
     variables.putAll(vmParameters.asMap());
 
@@ -17,15 +17,30 @@
 package com.google.caliper;
 
 import com.google.caliper.UserException.ExceptionFromUserCodeException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * A convenience class for implementing benchmarks in plain code.
@@ -37,16 +52,81 @@ import java.util.Set;
  *
  * <h3>Parameters</h3>
  * See the {@link Param} documentation to learn about parameters.
+ *
+ * <h3>Consuming results</h3>
+ * Timed methods may take a {@link Sink} as a second parameter, and pass it the
+ * values they compute so that the runtime can't optimize away their code.
+ * Caliper warns about scenarios whose reps look optimized away anyway; mark
+ * parameters with {@link Param#workload} or {@link Param#input} to let it
+ * check more thoroughly.
+ *
+ * <h3>Throughput</h3>
+ * Benchmarks that process a known amount of work per rep may override {@link
+ * #operationsPerRep} or {@link #bytesPerRep}. Caliper then reports the
+ * throughput of each scenario alongside its time per rep.
+ *
+ * <h3>Asynchronous benchmarks</h3>
+ * A timed method that takes an {@link Executor} and returns a {@link Future}
+ * benchmarks an asynchronous operation: each call starts one operation, which
+ * is one rep. Caliper keeps up to {@link #operationsInFlight} operations in
+ * flight on the executor returned by {@link #createExecutor}, and reports
+ * their throughput and completion latency. The overhead of the executor
+ * itself is measured separately with no-op operations. Per-rep hooks are not
+ * supported for asynchronous benchmarks.
+ *
+ * <h3>Thread groups</h3>
+ * Timed methods annotated with the same {@link Group} run concurrently as a
+ * single scenario, each on its own number of threads, to measure contention
+ * between them on the benchmark's shared state.
+ *
+ * <h3>Footprint</h3>
+ * A method named like a benchmark but prefixed with "footprint" rather than
+ * "time", such as {@code footprintHashSet} for {@code timeHashSet}, returns
+ * an object graph built the way the benchmark builds its data. Caliper then
+ * also reports the bytes that graph retains, broken down by type. Override
+ * {@link #bytesToUnits} to report them per element.
+ *
+ * <h3>Per-rep setup</h3>
+ * See the {@link BeforeRep} documentation to learn about running untimed code
+ * between reps.
  */
 public abstract class SimpleBenchmark implements Benchmark {
   private static final Class<?>[] ARGUMENT_TYPES = { int.class };
+  private static final Class<?>[] SINK_ARGUMENT_TYPES = { int.class, Sink.class };
+  private static final Class<?>[] ASYNC_ARGUMENT_TYPES = { Executor.class };
+
+  /**
+   * Calibrating the executor overhead runs rounds of a fixed number of no-op
+   * operations, for at least this long and this many rounds.
+   */
+  private static final long ASYNC_CALIBRATION_NANOS = 100000000;
+  private static final int ASYNC_CALIBRATION_MIN_ROUNDS = 5;
+  private static final int ASYNC_CALIBRATION_OPERATIONS = 1000;
 
   private final Map<String, Parameter<?>> parameters;
   private final Map<String, Method> methods;
+  private final Map<String, List<Method>> groups;
+  private final Map<String, Method> footprintMethods;
+  private final Set<String> benchmarkNames;
+  private final List<Method> beforeRepMethods;
+  private final List<Method> afterRepMethods;
+
+  /**
+   * The executor of each async scenario and its calibrated overhead, so that
+   * every trial and warmup round runs on the same, already started threads
+   * that the overhead was measured on.
+   */
+  private final Map<Map<String, String>, AsyncExecutor> asyncExecutors =
+      new HashMap<Map<String, String>, AsyncExecutor>();
 
   protected SimpleBenchmark() {
     parameters = Parameter.forClass(getClass());
     methods = createTimedMethods();
+    groups = createGroups();
+    benchmarkNames = createBenchmarkNames();
+    footprintMethods = createFootprintMethods();
+    beforeRepMethods = createRepHookMethods(BeforeRep.class);
+    afterRepMethods = createRepHookMethods(AfterRep.class);
 
     if (methods.isEmpty()) {
       throw new ConfigurationException(
@@ -58,6 +138,61 @@ public abstract class SimpleBenchmark implements Benchmark {
 
   protected void tearDown() throws Exception {}
 
+  /**
+   * Returns the number of operations each rep of {@code benchmark} performs,
+   * or 0 to not report its throughput in operations. This is called after the
+   * parameters have been injected and {@link #setUp} has run, so the result may
+   * depend on parameter values.
+   *
+   * @param benchmark the name of the timed method, without its "time" prefix.
+   */
+  protected double operationsPerRep(String benchmark) {
+    return 0;
+  }
+
+  /**
+   * Returns the maximum number of operations of the asynchronous {@code
+   * benchmark} to keep in flight. This may depend on parameter values.
+   *
+   * @param benchmark the name of the timed method, without its "time" prefix.
+   */
+  protected int operationsInFlight(String benchmark) {
+    return 16;
+  }
+
+  /**
+   * Returns the executor to pass to the asynchronous {@code benchmark}. It is
+   * created once per scenario and shared by all of its trials, and is never
+   * shut down, so its threads should be daemons. A {@link ThreadPoolExecutor}
+   * has its core threads started before it is used. The default is a pool of
+   * one daemon thread per available processor, or a new virtual thread per
+   * operation when running on virtual threads.
+   *
+   * @param benchmark the name of the timed method, without its "time" prefix.
+   */
+  protected Executor createExecutor(String benchmark) {
+    if (VirtualThreads.isCurrentThreadVirtual()) {
+      try {
+        return VirtualThreads.newThreadPerTaskExecutor();
+      } catch (Exception e) {
+        throw new ConfigurationException(e);
+      }
+    }
+    return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        new ThreadFactoryBuilder().setNameFormat("caliper-async-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Returns the number of bytes each rep of {@code benchmark} processes, or 0
+   * to not report its throughput in bytes. Like {@link #operationsPerRep},
+   * this may depend on parameter values.
+   *
+   * @param benchmark the name of the timed method, without its "time" prefix.
+   */
+  protected double bytesPerRep(String benchmark) {
+    return 0;
+  }
+
   @Override public Set<String> parameterNames() {
     return ImmutableSet.<String>builder()
         .add("benchmark")
@@ -65,9 +200,42 @@ public abstract class SimpleBenchmark implements Benchmark {
         .build();
   }
 
+  /**
+   * Returns the names of the parameters annotated with {@code workload = true}.
+   */
+  Set<String> workloadParameterNames() {
+    Set<String> result = new LinkedHashSet<String>();
+    for (Parameter<?> parameter : parameters.values()) {
+      if (parameter.isWorkload()) {
+        result.add(parameter.getName());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of the parameters annotated with {@code input = true}.
+   */
+  Set<String> inputParameterNames() {
+    Set<String> result = new LinkedHashSet<String>();
+    for (Parameter<?> parameter : parameters.values()) {
+      if (parameter.isInput()) {
+        result.add(parameter.getName());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of the benchmarks that define a footprint method.
+   */
+  Set<String> footprintBenchmarkNames() {
+    return footprintMethods.keySet();
+  }
+
   @Override public Set<String> parameterValues(String parameterName) {
     if ("benchmark".equals(parameterName)) {
-      return methods.keySet();
+      return benchmarkNames;
     }
 
     Parameter<?> parameter = parameters.get(parameterName);
@@ -93,13 +261,24 @@ public abstract class SimpleBenchmark implements Benchmark {
           + parameterNames() + " but was " + parameterValues.keySet());
     }
 
-    String methodName = parameterValues.get("benchmark");
+    final String methodName = parameterValues.get("benchmark");
+    List<Method> group = groups.get(methodName);
+    if (group != null && (!beforeRepMethods.isEmpty() || !afterRepMethods.isEmpty())) {
+      throw new ConfigurationException("Thread groups don't support per-rep hooks. But "
+          + getClass().getName() + " has them and defines the group " + methodName + ".");
+    }
     final Method method = methods.get(methodName);
-    if (method == null) {
+    if (method == null && group == null) {
       throw new IllegalArgumentException("Invalid parameters specified. \"time" + methodName + "\" "
           + "is not a method of this benchmark.");
     }
 
+    if (method != null && isAsync(method)
+        && (!beforeRepMethods.isEmpty() || !afterRepMethods.isEmpty())) {
+      throw new ConfigurationException("Asynchronous benchmarks don't support per-rep hooks. "
+          + "But " + method + " is asynchronous and " + getClass().getName() + " has them.");
+    }
+
     try {
       @SuppressWarnings({"ClassNewInstance"}) // can throw any Exception, so we catch all Exceptions
       final SimpleBenchmark copyOfSelf = getClass().newInstance();
@@ -116,20 +295,70 @@ public abstract class SimpleBenchmark implements Benchmark {
       }
       copyOfSelf.setUp();
 
+      if (group != null) {
+        return createGroupBenchmark(copyOfSelf, parameterValues, group);
+      }
+      if (isAsync(method)) {
+        return createAsyncBenchmark(copyOfSelf, parameterValues, method);
+      }
+
+      final Sink sink = usesSink(method) ? new Sink() : null;
+      final TimedMethodInvoker invoker = TimedMethodInvoker.forMethod(method);
+
       return new ConfiguredBenchmark(copyOfSelf) {
+        private long untimedNanos;
+
         @Override public Object run(int reps) throws Exception {
-          try {
-            return method.invoke(copyOfSelf, reps);
-          } catch (InvocationTargetException e) {
-            Throwable cause = e.getCause();
-            if (cause instanceof Exception) {
-              throw (Exception) cause;
-            } else if (cause instanceof Error) {
-              throw (Error) cause;
-            } else {
-              throw e;
-            }
+          if (!hasPerRepHooks()) {
+            return invoker.invoke(copyOfSelf, reps, sink);
+          }
+
+          /*
+           * Run one rep at a time, stopping the clock around the hooks. Time
+           * spent between the end of one rep and the start of the next is
+           * accumulated so that the harness can subtract it.
+           */
+          Object result = null;
+          untimedNanos = 0;
+          long pausedAt = System.nanoTime();
+          for (int i = 0; i < reps; i++) {
+            invokeAll(copyOfSelf, beforeRepMethods);
+            long resumedAt = System.nanoTime();
+            untimedNanos += resumedAt - pausedAt;
+            result = invoker.invoke(copyOfSelf, 1, sink);
+            pausedAt = System.nanoTime();
+            invokeAll(copyOfSelf, afterRepMethods);
           }
+          untimedNanos += System.nanoTime() - pausedAt;
+          return result;
+        }
+
+        @Override public double getOperationsPerRep() {
+          return copyOfSelf.operationsPerRep(methodName);
+        }
+
+        @Override public double getBytesPerRep() {
+          return copyOfSelf.bytesPerRep(methodName);
+        }
+
+        @Override public boolean usesSink() {
+          return sink != null;
+        }
+
+        @Override public boolean hasPerRepHooks() {
+          return !beforeRepMethods.isEmpty() || !afterRepMethods.isEmpty();
+        }
+
+        @Override public long getUntimedNanos() {
+          return untimedNanos;
+        }
+
+        @Override public boolean hasFootprint() {
+          return copyOfSelf.footprintMethods.containsKey(methodName);
+        }
+
+        @Override public Object createFootprint() throws Exception {
+          return copyOfSelf.createFootprint(methodName);
         }
 
         @Override public void close() throws Exception {
@@ -141,6 +370,215 @@ public abstract class SimpleBenchmark implements Benchmark {
     }
   }
 
+  private ConfiguredBenchmark createAsyncBenchmark(final SimpleBenchmark copyOfSelf,
+      Map<String, String> parameterValues, Method method) throws Exception {
+    final String methodName = parameterValues.get("benchmark");
+    int operationsInFlight = copyOfSelf.operationsInFlight(methodName);
+    AsyncExecutor asyncExecutor = asyncExecutors.get(parameterValues);
+    if (asyncExecutor == null) {
+      Executor executor = copyOfSelf.createExecutor(methodName);
+      if (executor instanceof ThreadPoolExecutor) {
+        ((ThreadPoolExecutor) executor).prestartAllCoreThreads();
+      }
+      asyncExecutor = new AsyncExecutor(executor,
+          measureAsyncOverhead(executor, operationsInFlight, true),
+          measureAsyncOverhead(executor, operationsInFlight, false));
+      asyncExecutors.put(parameterValues, asyncExecutor);
+    }
+    final Executor executor = asyncExecutor.executor;
+    final AsyncExecutor overhead = asyncExecutor;
+
+    final AsyncMethodInvoker invoker = AsyncMethodInvoker.forMethod(method);
+    final AsyncLoop loop = new AsyncLoop(operationsInFlight) {
+      @Override Future<?> startOperation() throws Exception {
+        return (Future<?>) invoker.invokeAsync(copyOfSelf, executor);
+      }
+    };
+
+    return new ConfiguredBenchmark(copyOfSelf) {
+      @Override public Object run(int reps) throws Exception {
+        loop.run(reps);
+        return null;
+      }
+
+      @Override public double getOperationsPerRep() {
+        double operationsPerRep = copyOfSelf.operationsPerRep(methodName);
+        return operationsPerRep > 0 ? operationsPerRep : 1;
+      }
+
+      @Override public double getBytesPerRep() {
+        return copyOfSelf.bytesPerRep(methodName);
+      }
+
+      @Override public Map<String, Double> getTrialMetrics() {
+        Map<String, Double> result = loop.getLatencyMetrics();
+        // plain futures are awaited in order, which costs more than listening
+        result.put(Measurement.ASYNC_OVERHEAD_NANOS, loop.awaitedInOrder()
+            ? overhead.inOrderOverheadNanos : overhead.listenableOverheadNanos);
+        return result;
+      }
+
+      @Override public boolean hasFootprint() {
+        return copyOfSelf.footprintMethods.containsKey(methodName);
+      }
+
+      @Override public Object createFootprint() throws Exception {
+        return copyOfSelf.createFootprint(methodName);
+      }
+
+      @Override public void close() throws Exception {
+        copyOfSelf.tearDown();
+      }
+    };
+  }
+
+  private static final class AsyncExecutor {
+    final Executor executor;
+    final double listenableOverheadNanos;
+    final double inOrderOverheadNanos;
+
+    AsyncExecutor(Executor executor, double listenableOverheadNanos,
+        double inOrderOverheadNanos) {
+      this.executor = executor;
+      this.listenableOverheadNanos = listenableOverheadNanos;
+      this.inOrderOverheadNanos = inOrderOverheadNanos;
+    }
+  }
+
+  private ConfiguredBenchmark createGroupBenchmark(final SimpleBenchmark copyOfSelf,
+      Map<String, String> parameterValues, List<Method> group) throws Exception {
+    final GroupLoop loop = new GroupLoop(copyOfSelf);
+    for (Method method : group) {
+      String threads = method.getAnnotation(Group.class).threads();
+      if (parameters.containsKey(threads)) {
+        threads = parameterValues.get(threads);
+      }
+      int threadCount;
+      try {
+        threadCount = Integer.parseInt(threads);
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("Invalid thread count " + threads + " for " + method);
+      }
+      if (threadCount < 1) {
+        throw new ConfigurationException("Invalid thread count " + threads + " for " + method);
+      }
+      loop.add(method.getName().substring(4), TimedMethodInvoker.forMethod(method),
+          usesSink(method), threadCount);
+    }
+    loop.start();
+
+    final String groupName = parameterValues.get("benchmark");
+    return new ConfiguredBenchmark(copyOfSelf) {
+      @Override public Object run(int reps) throws Exception {
+        loop.run(reps);
+        return null;
+      }
+
+      @Override public double getOperationsPerRep() {
+        return copyOfSelf.operationsPerRep(groupName);
+      }
+
+      @Override public double getBytesPerRep() {
+        return copyOfSelf.bytesPerRep(groupName);
+      }
+
+      @Override public long getUntimedNanos() {
+        return loop.getUntimedNanos();
+      }
+
+      @Override public Map<String, Double> getTrialMetrics() {
+        return loop.getMethodMetrics();
+      }
+
+      @Override public boolean hasFootprint() {
+        return copyOfSelf.footprintMethods.containsKey(groupName);
+      }
+
+      @Override public Object createFootprint() throws Exception {
+        return copyOfSelf.createFootprint(groupName);
+      }
+
+      @Override public void close() throws Exception {
+        try {
+          loop.close();
+        } finally {
+          copyOfSelf.tearDown();
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the nanos per operation of starting and awaiting no-op operations
+   * on {@code executor}, with the same number of operations in flight as the
+   * benchmark. The operations return listenable futures if {@code
+   * listenable}, or plain futures, which are awaited in order, if not.
+   */
+  private static double measureAsyncOverhead(final Executor executor, int operationsInFlight,
+      final boolean listenable) throws Exception {
+    final Runnable noOp = new Runnable() {
+      @Override public void run() {}
+    };
+    AsyncLoop loop = new AsyncLoop(operationsInFlight) {
+      @Override Future<?> startOperation() {
+        FutureTask<Void> task = listenable
+            ? new ListenableFutureTask<Void>(noOp, null)
+            : new FutureTask<Void>(noOp, null);
+        executor.execute(task);
+        return task;
+      }
+    };
+
+    // the first rounds include compilation, so take the best
+    double best = Double.POSITIVE_INFINITY;
+    long deadline = System.nanoTime() + ASYNC_CALIBRATION_NANOS;
+    for (int round = 0; round < ASYNC_CALIBRATION_MIN_ROUNDS || System.nanoTime() < deadline;
+        round++) {
+      long start = System.nanoTime();
+      loop.run(ASYNC_CALIBRATION_OPERATIONS);
+      best = Math.min(best, (System.nanoTime() - start) / (double) ASYNC_CALIBRATION_OPERATIONS);
+    }
+    return best;
+  }
+
+  /**
+   * Returns the object graph built by the footprint method of {@code
+   * benchmarkName}, or null if it has none.
+   */
+  private Object createFootprint(String benchmarkName) throws Exception {
+    Method method = footprintMethods.get(benchmarkName);
+    return method != null ? invoke(this, method) : null;
+  }
+
+  static Object invoke(Object target, Method method, Object... args) throws Exception {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private static boolean isAsync(Method method) {
+    return Arrays.equals(method.getParameterTypes(), ASYNC_ARGUMENT_TYPES);
+  }
+
+  private static boolean usesSink(Method method) {
+    return method.getParameterTypes().length == SINK_ARGUMENT_TYPES.length;
+  }
+
+  private static void invokeAll(Object target, List<Method> methods) throws Exception {
+    for (Method method : methods) {
+      invoke(target, method);
+    }
+  }
+
   public Scenario normalizeScenario(Scenario scenario) {
     Map<String, String> variables =
       new LinkedHashMap<String, String>(scenario.getVariables());
@@ -148,13 +586,12 @@ public abstract class SimpleBenchmark implements Benchmark {
     // it has "time" prefixed, then remove it. Also check whether the user has
     // accidentally put a lower cased letter first, and fix it if necessary.
     String benchmark = variables.get("benchmark");
-    Map<String, Method> timedMethods = createTimedMethods();
-    if (timedMethods.get(benchmark) == null) {
+    if (!benchmarkNames.contains(benchmark)) {
       // try to upper case first character
       char[] benchmarkChars = benchmark.toCharArray();
       benchmarkChars[0] = Character.toUpperCase(benchmarkChars[0]);
       String upperCasedBenchmark = String.valueOf(benchmarkChars);
-      if (timedMethods.get(upperCasedBenchmark) != null) {
+      if (benchmarkNames.contains(upperCasedBenchmark)) {
         variables.put("benchmark", upperCasedBenchmark);
       } else if (benchmark.startsWith("time")) {
         variables.put("benchmark", benchmark.substring(4));
@@ -178,10 +615,14 @@ public abstract class SimpleBenchmark implements Benchmark {
       if (!Modifier.isPublic(modifiers)
           || Modifier.isStatic(modifiers)
           || Modifier.isAbstract(modifiers)
-          || !Arrays.equals(method.getParameterTypes(), ARGUMENT_TYPES)) {
+          || !(Arrays.equals(method.getParameterTypes(), ARGUMENT_TYPES)
+              || Arrays.equals(method.getParameterTypes(), SINK_ARGUMENT_TYPES)
+              || (isAsync(method) && Future.class.isAssignableFrom(method.getReturnType())))) {
         throw new ConfigurationException("Timed methods must be public, "
-            + "non-static, non-abstract and take a single int parameter. "
-            + "But " + method + " violates these requirements.");
+            + "non-static, non-abstract and take a single int parameter, optionally "
+            + "followed by a Sink. Asynchronous timed methods must instead take a single "
+            + "Executor parameter and return a Future. But " + method + " violates these "
+            + "requirements.");
       }
 
       result.put(method.getName().substring(4), method);
@@ -190,6 +631,126 @@ public abstract class SimpleBenchmark implements Benchmark {
     return result.build();
   }
 
+  /**
+   * Returns the timed methods of each {@link Group}, by group name.
+   */
+  private Map<String, List<Method>> createGroups() {
+    Map<String, List<Method>> result = new LinkedHashMap<String, List<Method>>();
+    for (Method method : methods.values()) {
+      Group group = method.getAnnotation(Group.class);
+      if (group == null) {
+        continue;
+      }
+
+      if (isAsync(method)) {
+        throw new ConfigurationException("Grouped methods may not be asynchronous. But "
+            + method + " is.");
+      }
+      if (methods.containsKey(group.value())) {
+        throw new ConfigurationException("The group " + group.value() + " of " + method
+            + " has the same name as a timed method.");
+      }
+      if (!parameters.containsKey(group.threads()) && !group.threads().matches("[1-9][0-9]*")) {
+        throw new ConfigurationException("The threads of " + method + " must be a positive "
+            + "number or the name of a parameter, but were " + group.threads() + ".");
+      }
+
+      List<Method> members = result.get(group.value());
+      if (members == null) {
+        members = new ArrayList<Method>();
+        result.put(group.value(), members);
+      }
+      members.add(method);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of the timed methods that aren't in a group, followed by
+   * the names of the groups.
+   */
+  private Set<String> createBenchmarkNames() {
+    Set<String> result = new LinkedHashSet<String>(methods.keySet());
+    for (List<Method> group : groups.values()) {
+      for (Method method : group) {
+        result.remove(method.getName().substring(4));
+      }
+    }
+    result.addAll(groups.keySet());
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Returns the footprint method of each benchmark that defines one, by
+   * benchmark name.
+   */
+  private Map<String, Method> createFootprintMethods() {
+    ImmutableMap.Builder<String, Method> result = ImmutableMap.builder();
+    for (Method method : getClass().getDeclaredMethods()) {
+      if (!method.getName().startsWith("footprint")) {
+        continue;
+      }
+
+      int modifiers = method.getModifiers();
+      if (!Modifier.isPublic(modifiers)
+          || Modifier.isStatic(modifiers)
+          || Modifier.isAbstract(modifiers)
+          || method.getParameterTypes().length != 0
+          || method.getReturnType() == void.class) {
+        throw new ConfigurationException("Footprint methods must be public, non-static, "
+            + "non-abstract, take no parameters and return the object graph to measure. But "
+            + method + " violates these requirements.");
+      }
+      String name = method.getName().substring("footprint".length());
+      if (!benchmarkNames.contains(name)) {
+        throw new ConfigurationException(method + " doesn't match a benchmark. Its name must be "
+            + "that of a timed method or group with \"footprint\" in place of \"time\".");
+      }
+
+      result.put(name, method);
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns the methods of this class and its superclasses annotated with
+   * {@code annotation}, which must be non-static and take no parameters.
+   * Superclass methods come first, and methods overridden by a subclass are
+   * only invoked once.
+   */
+  private List<Method> createRepHookMethods(Class<? extends Annotation> annotation) {
+    List<List<Method>> byClass = new ArrayList<List<Method>>();
+    Set<String> names = new HashSet<String>();
+    for (Class<?> c = getClass(); c != SimpleBenchmark.class; c = c.getSuperclass()) {
+      List<Method> declared = new ArrayList<Method>();
+      for (Method method : c.getDeclaredMethods()) {
+        if (!method.isAnnotationPresent(annotation)) {
+          continue;
+        }
+
+        if (Modifier.isStatic(method.getModifiers())
+            || method.getParameterTypes().length != 0) {
+          throw new ConfigurationException("@" + annotation.getSimpleName() + " methods must be "
+              + "non-static and take no parameters. But " + method + " violates these "
+              + "requirements.");
+        }
+
+        // private methods can't be overridden, so they always run
+        if (Modifier.isPrivate(method.getModifiers()) || names.add(method.getName())) {
+          method.setAccessible(true);
+          declared.add(method);
+        }
+      }
+      byClass.add(0, declared);
+    }
+
+    ImmutableList.Builder<Method> result = ImmutableList.builder();
+    for (List<Method> declared : byClass) {
+      result.addAll(declared);
+    }
+    return result.build();
+  }
+
   @Override public Map<String, Integer> getTimeUnitNames() {
     return ImmutableMap.of("ns", 1,
         "us", 1000,
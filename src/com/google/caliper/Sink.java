@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+/**
+ * Consumes values computed by a benchmark so that the runtime cannot optimize
+ * away the code that computed them. Timed methods of a {@link SimpleBenchmark}
+ * receive a sink by declaring it as a second parameter:
+ * <pre>   {@code
+ *
+ *   public void timeToString(int reps, Sink sink) {
+ *     for (int i = 0; i < reps; i++) {
+ *       sink.consume(Double.toString(i));
+ *     }
+ *   }}</pre>
+ *
+ * <p>Each call to {@code consume} compares its argument to values the
+ * runtime can't predict, and so costs a field read and a branch. This cost is
+ * included in the measurement; Caliper calibrates it and reports it alongside
+ * the results.
+ */
+public final class Sink {
+
+  /*
+   * The pairs below hold different values, so no argument is ever equal to
+   * both. But these are volatile, so the runtime must assume that they could
+   * be, and must therefore compute every consumed value.
+   */
+  private volatile int int1 = 1;
+  private volatile int int2 = 2;
+  private volatile long long1 = 1;
+  private volatile long long2 = 2;
+  private volatile double double1 = 1;
+  private volatile double double2 = 2;
+  private volatile Object objectBait = new Object();
+
+  /** Written only when the impossible happens. */
+  private Object leak;
+
+  Sink() {}
+
+  public void consume(int value) {
+    if (value == int1 & value == int2) {
+      leak = value;
+    }
+  }
+
+  public void consume(long value) {
+    if (value == long1 & value == long2) {
+      leak = value;
+    }
+  }
+
+  public void consume(double value) {
+    if (value == double1 & value == double2) {
+      leak = value;
+    }
+  }
+
+  public void consume(boolean value) {
+    consume(value ? 1 : 0);
+  }
+
+  public void consume(Object value) {
+    if (value == objectBait) {
+      leak = value;
+    }
+  }
+
+  /**
+   * Returns the nanoseconds spent per call to {@code consume}, including the
+   * cost of the enclosing loop. This runs for {@code calibrationMillis} and
+   * reports the fastest of several rounds.
+   */
+  static double calibrate(long calibrationMillis) {
+    Sink sink = new Sink();
+    Object value = new Object();
+    long deadline = System.nanoTime() + calibrationMillis * 1000000;
+    int reps = 1000;
+    double best = Double.POSITIVE_INFINITY;
+    while (System.nanoTime() < deadline) {
+      long start = System.nanoTime();
+      for (int i = 0; i < reps; i++) {
+        sink.consume(value);
+        sink.consume(i);
+      }
+      long elapsed = System.nanoTime() - start;
+      best = Math.min(best, elapsed / (2.0 * reps));
+      if (elapsed < 1000000) {
+        reps *= 2;
+      }
+    }
+    return best;
+  }
+}
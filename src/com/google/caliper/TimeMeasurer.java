@@ -20,14 +20,24 @@ import com.google.caliper.UserException.DoesNotScaleLinearlyException;
 import com.google.caliper.UserException.RuntimeOutOfRangeException;
 import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.base.Supplier;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Measure's the benchmark's per-trial execution time.
  */
 class TimeMeasurer extends Measurer {
 
+  private final long minWarmupNanos;
   private final long warmupNanos;
   private final long runNanos;
+  private final boolean discardLevelShifts;
+  private final boolean rerunGcTrials;
 
   /**
    * If the standard deviation of our measurements is within this tolerance, we
@@ -37,41 +47,159 @@ class TimeMeasurer extends Measurer {
 
   private final int MAX_TRIALS = 10;
 
+  /**
+   * When per-rep hooks are used, each rep should take at least this many times
+   * longer than the cost of stopping and restarting the clock.
+   */
+  private final int MIN_REP_TO_PAUSE_RATIO = 10;
+
+  /**
+   * An adaptive warmup stops doubling reps once a round takes this long, so
+   * that consecutive rounds can be compared with one another.
+   */
+  private final long WARMUP_ROUND_NANOS = 10000000; // 10 ms
+
+  /**
+   * An adaptive warmup ends once this many consecutive rounds triggered no JIT
+   * compilation and their nanos per rep are within {@code
+   * WARMUP_SETTLED_TOLERANCE} of their mean.
+   */
+  private final int WARMUP_SETTLED_ROUNDS = 5;
+  private final double WARMUP_SETTLED_TOLERANCE = 0.05;
+
+  /**
+   * After discarding the trials that precede a level shift, keep taking trials
+   * until there are at least this many.
+   */
+  private final int MIN_TRIALS_AFTER_LEVEL_SHIFT = 3;
+
+  /**
+   * When level shifts are discarded, take at least this many trials so that a
+   * shift can be found even if the first trials agree closely.
+   */
+  private final int MIN_TRIALS_TO_DISCARD_LEVEL_SHIFTS =
+      Math.max(ChangePointDetector.MIN_VALUES, 2 * MIN_TRIALS_AFTER_LEVEL_SHIFT);
+
+  /**
+   * With {@code rerunGcTrials}, a trial is rerun at most this many times if
+   * garbage collections keep interrupting it.
+   */
+  private static final int MAX_GC_RERUNS = 3;
+
+  private static final long SINK_CALIBRATION_MILLIS = 100;
+
+  /**
+   * Reps faster than this are compared against the cost of consuming a value,
+   * to catch benchmarks whose work was optimized away.
+   */
+  private static final double MAX_SUSPICIOUS_NANOS_PER_REP = 5;
+
+  /** Evictions are timed this many times, and the fastest is used. */
+  private static final int COLD_CACHE_CALIBRATION_ROUNDS = 3;
+
+  private final ChangePointDetector changePointDetector = new ChangePointDetector();
+  private final List<TrialProbe> probes = createProbes();
+  private final RuntimeFootprintSampler footprintSampler = new RuntimeFootprintSampler();
+  private Map<String, Double> trialMetrics = new HashMap<String, Double>();
+
+  /** Evicts the caches between batches of reps in cold cache trials, or null. */
+  private CacheThrasher cacheThrasher;
+  private int coldBatchReps;
+  private double thrashNanos;
+
+  private boolean perRepHooks = false;
+  private boolean usesSink = false;
+  private double operationsPerRep;
+  private double bytesPerRep;
+  private long actualWarmupNanos;
+  private boolean warmupUnsettled = false;
+
   TimeMeasurer(long warmupMillis, long runMillis) {
+    this(warmupMillis, warmupMillis, runMillis, false, false);
+  }
+
+  /**
+   * @param minWarmupMillis the earliest point at which warmup may end, if JIT
+   *     compilation and the time per rep have settled. If this is less than
+   *     {@code warmupMillis}, the warmup is adaptive.
+   * @param warmupMillis the point at which warmup ends regardless.
+   * @param discardLevelShifts whether to discard the trials before a level
+   *     shift and replace them with new trials, rather than just reporting it.
+   * @param rerunGcTrials whether to rerun trials that were interrupted by
+   *     garbage collection, rather than amortizing the cost of collection.
+   */
+  TimeMeasurer(long minWarmupMillis, long warmupMillis, long runMillis,
+      boolean discardLevelShifts, boolean rerunGcTrials) {
     checkArgument(warmupMillis > 50);
+    checkArgument(minWarmupMillis <= warmupMillis);
     checkArgument(runMillis > 50);
 
+    this.minWarmupNanos = minWarmupMillis * 1000000;
     this.warmupNanos = warmupMillis * 1000000;
     this.runNanos = runMillis * 1000000;
+    this.discardLevelShifts = discardLevelShifts;
+    this.rerunGcTrials = rerunGcTrials;
+  }
+
+  /**
+   * Makes each trial evict the CPU caches between batches of reps. Warmup still
+   * runs with warm caches, since it only needs to trigger JIT compilation.
+   */
+  void setCacheThrasher(CacheThrasher cacheThrasher) {
+    this.cacheThrasher = cacheThrasher;
   }
 
   private double warmUp(Supplier<ConfiguredBenchmark> testSupplier) throws Exception {
+    long startNanos = System.nanoTime();
     long elapsedNanos = 0;
     long netReps = 0;
     int reps = 1;
     boolean definitelyScalesLinearly = false;
+    boolean adaptive = minWarmupNanos < warmupNanos;
+    WarmupRounds rounds =
+        new WarmupRounds(WARMUP_SETTLED_ROUNDS, minWarmupNanos, WARMUP_SETTLED_TOLERANCE);
+    boolean settled = false;
 
     /*
      * Run progressively more reps at a time until we cross our warmup
      * threshold. This way any just-in-time compiler will be comfortable running
      * multiple iterations of our measurement method.
+     *
+     * An adaptive warmup stops growing the rounds once they're long enough to
+     * compare, and ends early once those rounds have settled.
      */
     log("[starting warmup]");
     while (elapsedNanos < warmupNanos) {
+      long compilationMillisBefore = totalCompilationMillis();
       long nanos = measureReps(testSupplier.get(), reps);
+      long compilationMillis = totalCompilationMillis() - compilationMillisBefore;
       elapsedNanos += nanos;
-
       netReps += reps;
+
+      if (adaptive && nanos >= WARMUP_ROUND_NANOS) {
+        rounds.add((double) nanos / reps, compilationMillis);
+        if (rounds.isSettled(elapsedNanos)) {
+          log("[warmup settled]");
+          settled = true;
+          break;
+        }
+        continue;
+      }
+
       reps *= 2;
 
       // if reps overflowed, that's suspicious! Check that it time scales with reps
-      if (reps <= 0 && !definitelyScalesLinearly) {
-        checkScalesLinearly(testSupplier);
-        definitelyScalesLinearly = true;
+      if (reps <= 0) {
+        if (!definitelyScalesLinearly) {
+          checkScalesLinearly(testSupplier);
+          definitelyScalesLinearly = true;
+        }
         reps = Integer.MAX_VALUE;
       }
     }
-    log("[ending warmup]");
+    actualWarmupNanos = System.nanoTime() - startNanos;
+    warmupUnsettled = adaptive && !settled;
+    log(String.format("[ending warmup after %d ms]", actualWarmupNanos / 1000000));
 
     double nanosPerExecution = (double) elapsedNanos / netReps;
     double lowerBound = 0.1;
@@ -83,6 +211,80 @@ class TimeMeasurer extends Measurer {
     return nanosPerExecution;
   }
 
+  /**
+   * Returns the VM's accumulated JIT compilation time, or 0 if the VM doesn't
+   * report it.
+   */
+  private static long totalCompilationMillis() {
+    try {
+      CompilationMXBean compilationBean = ManagementFactory.getCompilationMXBean();
+      if (compilationBean != null && compilationBean.isCompilationTimeMonitoringSupported()) {
+        return compilationBean.getTotalCompilationTime();
+      }
+    } catch (NoClassDefFoundError ignored) {
+      // java.lang.management is unavailable on some VMs, such as Dalvik
+    }
+    return 0;
+  }
+
+  /**
+   * The most recent rounds of an adaptive warmup.
+   */
+  static final class WarmupRounds {
+    private final double[] nanosPerRep;
+    private final long[] compilationMillis;
+    private final long minWarmupNanos;
+    private final double tolerance;
+    private int count = 0;
+
+    /**
+     * @param size how many of the most recent rounds must have settled.
+     * @param minWarmupNanos the warmup never settles before this long.
+     * @param tolerance how far from their mean the rounds' nanos per rep may
+     *     be, as a fraction of it.
+     */
+    WarmupRounds(int size, long minWarmupNanos, double tolerance) {
+      nanosPerRep = new double[size];
+      compilationMillis = new long[size];
+      this.minWarmupNanos = minWarmupNanos;
+      this.tolerance = tolerance;
+    }
+
+    void add(double roundNanosPerRep, long roundCompilationMillis) {
+      nanosPerRep[count % nanosPerRep.length] = roundNanosPerRep;
+      compilationMillis[count % compilationMillis.length] = roundCompilationMillis;
+      count++;
+    }
+
+    /**
+     * Returns true if the warmup has lasted at least the minimum, the JIT
+     * compiler was idle during each of the recent rounds and their nanos per
+     * rep are all within the tolerance of their mean.
+     *
+     * @param elapsedNanos how long the warmup has run so far.
+     */
+    boolean isSettled(long elapsedNanos) {
+      if (elapsedNanos < minWarmupNanos || count < nanosPerRep.length) {
+        return false;
+      }
+
+      double sum = 0;
+      for (int i = 0; i < nanosPerRep.length; i++) {
+        if (compilationMillis[i] != 0) {
+          return false;
+        }
+        sum += nanosPerRep[i];
+      }
+      double mean = sum / nanosPerRep.length;
+      for (double d : nanosPerRep) {
+        if (Math.abs(d - mean) > tolerance * mean) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
   /**
    * Doing half as much work shouldn't take much more than half as much time. If
    * it does we have a broken benchmark!
@@ -116,8 +318,58 @@ class TimeMeasurer extends Measurer {
    */
   @Override public MeasurementSet run(Supplier<ConfiguredBenchmark> testSupplier)
       throws Exception {
+    List<RuntimeFootprint> runtimeFootprints = new ArrayList<RuntimeFootprint>();
+    runtimeFootprints.add(footprintSampler.sample(RuntimeFootprint.BEFORE_WARMUP));
     double estimatedNanosPerRep = warmUp(testSupplier);
+    runtimeFootprints.add(footprintSampler.sample(RuntimeFootprint.AFTER_WARMUP));
+    if (cacheThrasher != null) {
+      prepareColdCacheTrials(estimatedNanosPerRep);
+    }
+
+    for (TrialProbe probe : probes) {
+      probe.startMeasuring();
+    }
+    Map<String, Double> metrics = new HashMap<String, Double>();
+    MeasurementSet measurementSet;
+    try {
+      measurementSet = measureTrials(testSupplier, estimatedNanosPerRep);
+      // before Caliper's own checks and probes load classes or compile code
+      runtimeFootprints.add(footprintSampler.sample(RuntimeFootprint.AFTER_MEASUREMENT));
+    } finally {
+      for (TrialProbe probe : probes) {
+        metrics.putAll(probe.stopMeasuring());
+      }
+    }
+    if (!metrics.isEmpty()) {
+      measurementSet = measurementSet.plusMetrics(metrics);
+    }
 
+    measurementSet = checkGarbageCollection(measurementSet);
+    measurementSet = checkPauseResumeCost(measurementSet).plusWarmupNanos(actualWarmupNanos);
+    if (warmupUnsettled) {
+      measurementSet = measurementSet.plusWarning("JIT compilation or the time per rep was still "
+          + "changing at the end of warmup. Consider increasing --warmupMillis.");
+    }
+    if (operationsPerRep > 0 || bytesPerRep > 0) {
+      measurementSet = measurementSet.plusThroughput(operationsPerRep, bytesPerRep);
+    }
+    if (usesSink || measurementSet.medianRaw() < MAX_SUSPICIOUS_NANOS_PER_REP) {
+      double sinkConsumeNanos = Sink.calibrate(SINK_CALIBRATION_MILLIS);
+      log(String.format("[each Sink.consume call costs %.2f nanoseconds]", sinkConsumeNanos));
+      if (usesSink) {
+        measurementSet = measurementSet.plusSinkConsumeNanos(sinkConsumeNanos);
+      }
+      measurementSet = checkOptimizedAway(measurementSet, sinkConsumeNanos);
+    }
+    return measurementSet.plusRuntimeFootprints(runtimeFootprints);
+  }
+
+  /**
+   * Runs the measured trials: three at different scales, then more until
+   * their times agree, replacing or marking any trials before a level shift.
+   */
+  private MeasurementSet measureTrials(Supplier<ConfiguredBenchmark> testSupplier,
+      double estimatedNanosPerRep) throws Exception {
     log("[measuring nanos per rep with scale 1.00]");
     Measurement measurement100 = measure(testSupplier, 1.00, estimatedNanosPerRep);
     log("[measuring nanos per rep with scale 0.50]");
@@ -129,8 +381,9 @@ class TimeMeasurer extends Measurer {
 
     for (int i = 3; i < MAX_TRIALS; i++) {
       double threshold = SHORT_CIRCUIT_TOLERANCE * measurementSet.meanRaw();
-      if (measurementSet.standardDeviationRaw() < threshold) {
-        return measurementSet;
+      if (measurementSet.standardDeviationRaw() < threshold
+          && (!discardLevelShifts || i >= MIN_TRIALS_TO_DISCARD_LEVEL_SHIFTS)) {
+        break;
       }
 
       log("[performing additional measurement with scale 1.00]");
@@ -138,40 +391,325 @@ class TimeMeasurer extends Measurer {
       measurementSet = measurementSet.plusMeasurement(measurement);
     }
 
+    return checkLevelShift(testSupplier, measurementSet, measurement100.getRaw());
+  }
+
+  /**
+   * A rep that computes anything must at least cost as much as a loop that
+   * consumes one value per iteration. Reps that are cheaper than that almost
+   * certainly had their work hoisted out of the loop or eliminated, even
+   * though they aren't fast enough for warmUp to reject.
+   */
+  private MeasurementSet checkOptimizedAway(MeasurementSet measurementSet,
+      double sinkConsumeNanos) {
+    double nanosPerRep = measurementSet.medianRaw();
+    if (nanosPerRep >= sinkConsumeNanos) {
+      return measurementSet;
+    }
+    return measurementSet.plusSuspectedOptimizedAway(String.format("Each rep takes %.2fns, which "
+        + "is less than the %.2fns a loop takes to consume one value per rep. The runtime has "
+        + "probably optimized the work away; consume its results with a Sink.",
+        nanosPerRep, sinkConsumeNanos));
+  }
+
+  /**
+   * Picks the smallest batch of reps whose time dominates the cost of pausing
+   * and resuming the clock around the cache eviction, and measures how long an
+   * eviction takes so that trials can be sized to fit in {@code runMillis}.
+   */
+  private void prepareColdCacheTrials(double estimatedNanosPerRep) {
+    double pauseResumeNanos = measurePauseResumeNanos();
+    coldBatchReps = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+        Math.ceil(MIN_REP_TO_PAUSE_RATIO * pauseResumeNanos / estimatedNanosPerRep)));
+
+    thrashNanos = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < COLD_CACHE_CALIBRATION_ROUNDS; i++) {
+      long startNanos = System.nanoTime();
+      cacheThrasher.thrash();
+      thrashNanos = Math.min(thrashNanos, System.nanoTime() - startNanos);
+    }
+    log(String.format("[evicting the caches with a %d byte buffer every %d reps, "
+        + "which takes %.2f milliseconds]",
+        cacheThrasher.getBytes(), coldBatchReps, thrashNanos / 1000000));
+  }
+
+  /**
+   * Trials are not independent samples: late recompilation, deoptimization or
+   * CPU frequency changes can shift the time per rep midway through the run.
+   * Such sets are either marked as containing a level shift, or have the
+   * trials before the shift replaced with new ones.
+   */
+  private MeasurementSet checkLevelShift(Supplier<ConfiguredBenchmark> testSupplier,
+      MeasurementSet measurementSet, double estimatedNanosPerRep) throws Exception {
+    int index = changePointDetector.findLevelShift(measurementSet.getMeasurementsRaw());
+    if (index == 0) {
+      return measurementSet;
+    }
+
+    List<Measurement> measurements = measurementSet.getMeasurements();
+    String shift = describeLevelShift(measurementSet, index);
+    log("[" + shift + "]");
+    if (!discardLevelShifts) {
+      return measurementSet.plusLevelShift(index).plusWarning(shift
+          + ". These measurements don't represent a single steady state; "
+          + "use --discardLevelShifts to measure only after the shift.");
+    }
+
+    log("[discarding " + index + " trial(s) before the level shift]");
+    List<Measurement> steadyState = measurements.subList(index, measurements.size());
+    MeasurementSet result = new MeasurementSet(
+        steadyState.toArray(new Measurement[steadyState.size()]));
+    while (result.size() < MIN_TRIALS_AFTER_LEVEL_SHIFT) {
+      log("[performing additional measurement with scale 1.00]");
+      result = result.plusMeasurement(measure(testSupplier, 1.00, estimatedNanosPerRep));
+    }
+    result = result.plusWarning(shift + ". The " + index + " trial(s) before it were discarded.");
+
+    int secondIndex = changePointDetector.findLevelShift(result.getMeasurementsRaw());
+    if (secondIndex != 0) {
+      result = result.plusLevelShift(secondIndex).plusWarning(
+          describeLevelShift(result, secondIndex) + " after discarding earlier trials.");
+    }
+    return result;
+  }
+
+  private static String describeLevelShift(MeasurementSet measurementSet, int index) {
+    List<Double> raw = measurementSet.getMeasurementsRaw();
+    double before = 0;
+    for (double d : raw.subList(0, index)) {
+      before += d / index;
+    }
+    double after = 0;
+    for (double d : raw.subList(index, raw.size())) {
+      after += d / (raw.size() - index);
+    }
+    return String.format("Time per rep shifted from %.2fns to %.2fns after trial %d",
+        before, after, index);
+  }
+
+  /**
+   * Benchmarks that allocate consistently will collect garbage in every trial,
+   * and that cost is a truthful part of their result. But when only some
+   * trials were interrupted by a collection, those trials are inflated.
+   */
+  private MeasurementSet checkGarbageCollection(MeasurementSet measurementSet) {
+    MeasurementSet gcFree = measurementSet.withoutGarbageCollection();
+    int gcTrials = measurementSet.size() - gcFree.size();
+    if (gcTrials == 0 || gcFree.size() == 0) {
+      return measurementSet;
+    }
+    return measurementSet.plusWarning(String.format("%d of %d trials were interrupted by "
+        + "garbage collection. The median without them is %.2fns rather than %.2fns.%s",
+        gcTrials, measurementSet.size(), gcFree.medianRaw(), measurementSet.medianRaw(),
+        rerunGcTrials ? "" : " Use --rerunGcTrials to rerun such trials."));
+  }
+
+  /**
+   * Benchmarks with per-rep hooks start and stop the clock around every rep.
+   * Some of that cost is unavoidably included in each measured rep, so warn
+   * if it's a significant fraction of the rep itself.
+   */
+  private MeasurementSet checkPauseResumeCost(MeasurementSet measurementSet) {
+    if (!perRepHooks) {
+      return measurementSet;
+    }
+
+    double pauseResumeNanos = measurePauseResumeNanos();
+    log(String.format("[pausing and resuming the clock costs %.2f nanoseconds]",
+        pauseResumeNanos));
+    if (measurementSet.medianRaw() < MIN_REP_TO_PAUSE_RATIO * pauseResumeNanos) {
+      return measurementSet.plusWarning(String.format("Each rep takes %.2fns, but pausing and "
+          + "resuming the clock for per-rep hooks costs %.2fns. Do more work per rep or remove "
+          + "the @BeforeRep and @AfterRep methods.",
+          measurementSet.medianRaw(), pauseResumeNanos));
+    }
     return measurementSet;
   }
 
+  /**
+   * Returns the nanos between consecutive reads of the clock. This approximates
+   * how much untimed work leaks into each rep when the clock is paused. The
+   * median is used since a single preemption or safepoint would dominate the
+   * mean.
+   */
+  private double measurePauseResumeNanos() {
+    long[] samples = new long[10000];
+    for (int i = 0; i < samples.length; i++) {
+      long pausedAt = System.nanoTime();
+      long resumedAt = System.nanoTime();
+      samples[i] = resumedAt - pausedAt;
+    }
+    Arrays.sort(samples);
+    return samples[samples.length / 2];
+  }
+
   /**
    * Runs the test method for approximately {@code runNanos * durationScale}
    * nanos and returns a Measurement of the nanos per rep and units per rep.
    */
   private Measurement measure(Supplier<ConfiguredBenchmark> testSupplier,
       double durationScale, double estimatedNanosPerRep) throws Exception {
-    int reps = (int) (durationScale * runNanos / estimatedNanosPerRep);
+    double nanosPerRepIncludingEviction = cacheThrasher != null
+        ? estimatedNanosPerRep + thrashNanos / coldBatchReps
+        : estimatedNanosPerRep;
+    int reps = (int) (durationScale * runNanos / nanosPerRepIncludingEviction);
     if (reps == 0) {
       reps = 1;
     }
 
-    log("[running trial with " + reps + " reps]");
-    ConfiguredBenchmark benchmark = testSupplier.get();
-    long elapsedTime = measureReps(benchmark, reps);
-    double nanosPerRep = elapsedTime / (double) reps;
-    log(String.format("[took %.2f nanoseconds per rep]", nanosPerRep));
-    return new Measurement(benchmark.timeUnitNames(), nanosPerRep,
-        benchmark.nanosToUnits(nanosPerRep));
+    for (int attempt = 0; true; attempt++) {
+      log("[running trial with " + reps + " reps]");
+      ConfiguredBenchmark benchmark = testSupplier.get();
+      long elapsedTime = measureReps(benchmark, reps, cacheThrasher);
+      double nanosPerRep = elapsedTime / (double) reps;
+      log(String.format("[took %.2f nanoseconds per rep]", nanosPerRep));
+
+      Double gcCount = trialMetrics.get(Measurement.GC_COUNT);
+      boolean hitByGc = gcCount != null && gcCount > 0;
+      if (hitByGc && rerunGcTrials && attempt < MAX_GC_RERUNS) {
+        log("[garbage collection during trial; rerunning it]");
+        continue;
+      }
+      Double allocatedBytes = trialMetrics.get(Measurement.THREAD_ALLOCATED_BYTES);
+      if (allocatedBytes != null) {
+        trialMetrics.put(Measurement.ALLOCATED_BYTES_PER_REP,
+            (double) Math.round(allocatedBytes / reps));
+      }
+      for (String metric : new ArrayList<String>(trialMetrics.keySet())) {
+        if (trialMetrics.get(metric) == 0) {
+          continue;
+        }
+        if (metric.startsWith(Measurement.BUFFER_POOL_PREFIX)
+            || metric.equals(Measurement.NATIVE_COMMITTED)
+            || metric.equals(Measurement.GC_PROMOTED_BYTES)
+            || metric.equals(Measurement.GC_OLD_GROWTH_BYTES)) {
+          trialMetrics.put(metric + Measurement.PER_REP_SUFFIX, trialMetrics.get(metric) / reps);
+        }
+      }
+      if (operationsPerRep > 0) {
+        trialMetrics.put(Measurement.OPERATIONS_PER_SECOND,
+            operationsPerRep * 1000000000 / nanosPerRep);
+      }
+      if (bytesPerRep > 0) {
+        trialMetrics.put(Measurement.BYTES_PER_SECOND, bytesPerRep * 1000000000 / nanosPerRep);
+      }
+      return new Measurement(benchmark.timeUnitNames(), nanosPerRep,
+          benchmark.nanosToUnits(nanosPerRep), trialMetrics);
+    }
+  }
+
+  private long measureReps(ConfiguredBenchmark benchmark, int reps) throws Exception {
+    return measureReps(benchmark, reps, null);
   }
 
   /**
-   * Returns the total nanos to run {@code reps}.
+   * Returns the total nanos to run {@code reps}. The metrics recorded by each
+   * probe are left in {@code trialMetrics}.
+   *
+   * @param cacheThrasher evicts the caches before each batch of {@code
+   *     coldBatchReps} reps, or null to run all reps at once.
    */
-  private long measureReps(ConfiguredBenchmark benchmark, int reps) throws Exception {
+  private long measureReps(ConfiguredBenchmark benchmark, int reps, CacheThrasher cacheThrasher)
+      throws Exception {
     prepareForTest();
     log(LogConstants.MEASURED_SECTION_STARTING);
+    for (TrialProbe probe : probes) {
+      probe.start();
+    }
+    long evictionNanos = 0;
     long startNanos = System.nanoTime();
-    benchmark.run(reps);
+    if (cacheThrasher == null) {
+      benchmark.run(reps);
+    } else {
+      evictionNanos = runCold(benchmark, reps, cacheThrasher);
+    }
     long endNanos = System.nanoTime();
+    trialMetrics = stopProbes();
+    trialMetrics.put(Measurement.WALL_NANOS, (double) (endNanos - startNanos));
+    trialMetrics.putAll(benchmark.getTrialMetrics());
     log(LogConstants.MEASURED_SECTION_DONE);
+    perRepHooks |= benchmark.hasPerRepHooks();
+    usesSink |= benchmark.usesSink();
+    operationsPerRep = benchmark.getOperationsPerRep();
+    bytesPerRep = benchmark.getBytesPerRep();
+    long untimedNanos = benchmark.getUntimedNanos() + evictionNanos;
     benchmark.close();
-    return endNanos - startNanos;
+    return endNanos - startNanos - untimedNanos;
+  }
+
+  /**
+   * Stops the probes in the reverse of the order they were started, and
+   * returns their metrics. Nothing is allocated before the last probe started
+   * is stopped, so that it can count the benchmark's allocations exactly.
+   */
+  private Map<String, Double> stopProbes() {
+    Map<String, Double> result = null;
+    for (int i = probes.size() - 1; i >= 0; i--) {
+      Map<String, Double> metrics = probes.get(i).stop();
+      if (result == null) {
+        result = new HashMap<String, Double>(metrics);
+      } else {
+        result.putAll(metrics);
+      }
+    }
+    return result != null ? result : new HashMap<String, Double>();
+  }
+
+  /**
+   * Runs {@code reps} in batches, evicting the caches before each one. Returns
+   * the nanos spent outside of the reps, including any per-rep hooks of all
+   * but the last batch; the benchmark itself reports those of the last.
+   */
+  private long runCold(ConfiguredBenchmark benchmark, int reps, CacheThrasher cacheThrasher)
+      throws Exception {
+    long untimedNanos = 0;
+    for (int remaining = reps; remaining > 0; remaining -= coldBatchReps) {
+      long pausedAt = System.nanoTime();
+      cacheThrasher.thrash();
+      untimedNanos += System.nanoTime() - pausedAt;
+      benchmark.run(Math.min(remaining, coldBatchReps));
+      if (remaining > coldBatchReps) {
+        untimedNanos += benchmark.getUntimedNanos();
+      }
+    }
+    return untimedNanos;
+  }
+
+  /**
+   * Adds a probe to record further metrics of every trial. It is started
+   * before the allocation probe, which must stay last so that the other
+   * probes' own allocations aren't counted.
+   */
+  void addProbe(TrialProbe probe) {
+    int index = probes.size();
+    if (index > 0 && probes.get(index - 1) instanceof AllocatedBytesProbe) {
+      index--;
+    }
+    probes.add(index, probe);
+  }
+
+  private static List<TrialProbe> createProbes() {
+    List<TrialProbe> result = new ArrayList<TrialProbe>();
+    result.add(new ProcProbe());
+    try {
+      result.add(new GcProbe());
+      result.add(new CpuProbe());
+      GcPressureProbe gcPressureProbe = new GcPressureProbe();
+      if (gcPressureProbe.isSupported()) {
+        result.add(gcPressureProbe);
+      }
+      OffHeapProbe offHeapProbe = new OffHeapProbe();
+      if (offHeapProbe.isSupported()) {
+        result.add(offHeapProbe);
+      }
+      // last, so that the other probes' own allocations aren't counted
+      AllocatedBytesProbe allocatedBytesProbe = new AllocatedBytesProbe();
+      if (allocatedBytesProbe.isSupported()) {
+        result.add(allocatedBytesProbe);
+      }
+    } catch (NoClassDefFoundError ignored) {
+      // java.lang.management is unavailable on some VMs, such as Dalvik
+    }
+    return result;
   }
 }
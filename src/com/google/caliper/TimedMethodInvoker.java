@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calls a timed method of a {@link SimpleBenchmark}. Where possible this is a
+ * generated class that calls the method directly, so that the timed loop isn't
+ * preceded by reflection, boxing of the reps count or exception wrapping.
+ * Asynchronous timed methods are called by an {@link AsyncMethodInvoker}.
+ *
+ * <p>This class is public only so that generated subclasses, which are defined
+ * in their own class loader, can extend it. It is not part of Caliper's API.
+ */
+public abstract class TimedMethodInvoker {
+
+  private static final Map<Method, TimedMethodInvoker> invokers =
+      new HashMap<Method, TimedMethodInvoker>();
+
+  protected TimedMethodInvoker() {}
+
+  /**
+   * Invokes the timed method on {@code benchmark}. The sink is ignored unless
+   * the method takes one.
+   */
+  public abstract Object invoke(Object benchmark, int reps, Sink sink) throws Exception;
+
+  /**
+   * Returns the invoker for {@code method}. Invokers are cached, so that each
+   * timed method's call site only ever sees a single invoker class.
+   */
+  static synchronized TimedMethodInvoker forMethod(Method method) {
+    TimedMethodInvoker invoker = invokers.get(method);
+    if (invoker == null) {
+      invoker = new InvokerGenerator(method).generate(TimedMethodInvoker.class);
+      if (invoker == null) {
+        invoker = new ReflectiveInvoker(method);
+      }
+      invokers.put(method, invoker);
+    }
+    return invoker;
+  }
+
+  /**
+   * Calls the method through reflection, for VMs that can't load generated
+   * classes and for benchmark classes that generated classes can't access.
+   */
+  static final class ReflectiveInvoker extends TimedMethodInvoker {
+    private final Method method;
+    private final boolean takesSink;
+
+    ReflectiveInvoker(Method method) {
+      this.method = method;
+      this.takesSink = method.getParameterTypes().length == 2;
+    }
+
+    @Override public Object invoke(Object benchmark, int reps, Sink sink) throws Exception {
+      return takesSink
+          ? SimpleBenchmark.invoke(benchmark, method, reps, sink)
+          : SimpleBenchmark.invoke(benchmark, method, reps);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Records metrics about the environment across the measured section of a
+ * trial, such as garbage collections, alongside the primary measurement.
+ */
+abstract class TrialProbe {
+
+  /**
+   * Called immediately before the measured section starts.
+   */
+  public abstract void start();
+
+  /**
+   * Called immediately after the measured section ends. Returns the metrics
+   * for the trial keyed by name.
+   */
+  public abstract Map<String, Double> stop();
+
+  /**
+   * Called once after warmup, before the first measured trial. Probes whose
+   * recording is too costly to repeat for every warmup round start it here.
+   */
+  public void startMeasuring() {}
+
+  /**
+   * Called once after the last measured trial. Returns the metrics recorded
+   * across all of the measured trials keyed by name, if any.
+   */
+  public Map<String, Double> stopMeasuring() {
+    return Collections.emptyMap();
+  }
+}
@@ -152,7 +152,8 @@ public abstract class UserException extends RuntimeException {
     public NonConstantMemoryUsage() {
       super("Not all reps of the inner loop allocate the same number of times! "
           + "The reps loop should use a constant number of allocations. "
-          + "Are you using the value of reps inside the loop?");
+          + "Are you using the value of reps inside the loop? If the allocations grow in "
+          + "amortized steps, such as by resizing a collection, use --allocationFit.");
     }
   }
 
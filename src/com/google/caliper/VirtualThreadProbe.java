@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how virtual threads were scheduled: how busy the carrier threads
+ * were during each trial, and how often a virtual thread pinned its carrier
+ * across all of the measured trials.
+ *
+ * <p>Pinning events come from a Flight Recorder recording of {@code
+ * jdk.VirtualThreadPinned} with no duration threshold. There is a single
+ * recording for the measured trials, since starting and dumping one for every
+ * trial and warmup round is too costly. Flight Recorder is only accessed
+ * reflectively, and the pinning count is omitted if it is unavailable.
+ */
+final class VirtualThreadProbe extends TrialProbe {
+
+  private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  private Map<Long, Long> carrierNanosBefore;
+  private long wallNanosBefore;
+
+  private final Class<?> recordingClass;
+  private final Class<?> pathClass;
+  private Object recording;
+
+  VirtualThreadProbe() {
+    Class<?> recordingClass = null;
+    Class<?> pathClass = null;
+    try {
+      recordingClass = Class.forName("jdk.jfr.Recording");
+      pathClass = Class.forName("java.nio.file.Path");
+    } catch (ClassNotFoundException ignored) {
+    }
+    this.recordingClass = recordingClass;
+    this.pathClass = pathClass;
+  }
+
+  @Override public void start() {
+    carrierNanosBefore = carrierCpuNanos();
+    wallNanosBefore = System.nanoTime();
+  }
+
+  @Override public Map<String, Double> stop() {
+    long wallNanos = System.nanoTime() - wallNanosBefore;
+    Map<Long, Long> carrierNanosAfter = carrierCpuNanos();
+
+    Map<String, Double> result = new HashMap<String, Double>();
+    long busyNanos = 0;
+    for (Map.Entry<Long, Long> entry : carrierNanosAfter.entrySet()) {
+      Long before = carrierNanosBefore.get(entry.getKey());
+      busyNanos += entry.getValue() - (before != null ? before : 0);
+    }
+    int carriers = carrierNanosAfter.size();
+    result.put(Measurement.CARRIER_THREADS, (double) carriers);
+    if (carriers > 0 && wallNanos > 0) {
+      result.put(Measurement.CARRIER_UTILIZATION,
+          100.0 * busyNanos / ((double) wallNanos * carriers));
+    }
+    return result;
+  }
+
+  @Override public void startMeasuring() {
+    recording = startRecording();
+  }
+
+  @Override public Map<String, Double> stopMeasuring() {
+    Map<String, Double> result = new HashMap<String, Double>();
+    int pinnedEvents = stopRecording(recording);
+    if (pinnedEvents >= 0) {
+      result.put(Measurement.PINNED_EVENTS, (double) pinnedEvents);
+    }
+    recording = null;
+    return result;
+  }
+
+  /**
+   * Returns the CPU time of each live carrier thread, by thread ID.
+   */
+  private Map<Long, Long> carrierCpuNanos() {
+    Map<Long, Long> result = new HashMap<Long, Long>();
+    if (!threadBean.isThreadCpuTimeSupported()) {
+      return result;
+    }
+    for (Thread thread : liveThreads()) {
+      if (thread.getClass().getName().equals(CARRIER_THREAD_CLASS)) {
+        long nanos = threadBean.getThreadCpuTime(thread.getId());
+        if (nanos >= 0) {
+          result.put(thread.getId(), nanos);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the live platform threads. Unlike {@link
+   * Thread#getAllStackTraces}, this doesn't stop every thread to capture its
+   * stack, which would disturb the trial right next to its timed region.
+   */
+  private static List<Thread> liveThreads() {
+    ThreadGroup root = Thread.currentThread().getThreadGroup();
+    while (root.getParent() != null) {
+      root = root.getParent();
+    }
+    Thread[] threads = new Thread[root.activeCount() + 16];
+    int count;
+    while ((count = root.enumerate(threads, true)) == threads.length) {
+      threads = new Thread[threads.length * 2];
+    }
+    return Arrays.asList(threads).subList(0, count);
+  }
+
+  private Object startRecording() {
+    if (recordingClass == null) {
+      return null;
+    }
+    try {
+      Object recording = recordingClass.getConstructor().newInstance();
+      Object settings = recordingClass.getMethod("enable", String.class)
+          .invoke(recording, "jdk.VirtualThreadPinned");
+      Class<?> durationClass = Class.forName("java.time.Duration");
+      Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", durationClass)
+          .invoke(settings, durationClass.getField("ZERO").get(null));
+      recordingClass.getMethod("start").invoke(recording);
+      return recording;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stops {@code recording} and returns the number of events it captured, or
+   * -1 if they couldn't be read.
+   */
+  private int stopRecording(Object recording) {
+    if (recording == null) {
+      return -1;
+    }
+    File file = null;
+    try {
+      recordingClass.getMethod("stop").invoke(recording);
+      file = File.createTempFile("caliper-pinning", ".jfr");
+      Object path = File.class.getMethod("toPath").invoke(file);
+      recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+      Method readAllEvents = Class.forName("jdk.jfr.consumer.RecordingFile")
+          .getMethod("readAllEvents", pathClass);
+      return ((List<?>) readAllEvents.invoke(null, path)).size();
+    } catch (Exception e) {
+      return -1;
+    } finally {
+      try {
+        recordingClass.getMethod("close").invoke(recording);
+      } catch (Exception ignored) {
+      }
+      if (file != null) {
+        file.delete();
+      }
+    }
+  }
+}
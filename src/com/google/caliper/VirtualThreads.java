@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on VMs that have them. Caliper is compiled for
+ * older VMs, so everything here is looked up reflectively.
+ */
+final class VirtualThreads {
+
+  /** The scenario variable value for running on platform threads. */
+  static final String PLATFORM = "platform";
+
+  /** The scenario variable value for running on virtual threads. */
+  static final String VIRTUAL = "virtual";
+
+  private VirtualThreads() {}
+
+  /**
+   * Returns true if this VM can start virtual threads. Early releases have
+   * them as a preview feature, which must be enabled to use them.
+   */
+  static boolean isSupported() {
+    try {
+      Thread thread = factory().newThread(new Runnable() {
+        @Override public void run() {}
+      });
+      return thread != null;
+    } catch (Exception e) {
+      return false;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns true if the calling thread is a virtual thread.
+   */
+  static boolean isCurrentThreadVirtual() {
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a factory of unstarted virtual threads.
+   */
+  static ThreadFactory factory() throws Exception {
+    Object builder = invoke(Thread.class.getMethod("ofVirtual"), null);
+    // the builder's class isn't public, so call through its public interface
+    Class<?> builderInterface = Class.forName("java.lang.Thread$Builder");
+    return (ThreadFactory) invoke(builderInterface.getMethod("factory"), builder);
+  }
+
+  /**
+   * Returns an executor that starts a new virtual thread for each task.
+   */
+  static ExecutorService newThreadPerTaskExecutor() throws Exception {
+    return (ExecutorService) invoke(
+        Executors.class.getMethod("newVirtualThreadPerTaskExecutor"), null);
+  }
+
+  /**
+   * Runs {@code task} on a new virtual thread and waits for it to complete,
+   * rethrowing anything it throws.
+   */
+  static <T> T runOnVirtualThread(final Callable<T> task) throws Exception {
+    final Object[] result = new Object[1];
+    final Throwable[] failure = new Throwable[1];
+    Thread thread = factory().newThread(new Runnable() {
+      @Override public void run() {
+        try {
+          result[0] = task.call();
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    });
+    thread.start();
+    thread.join();
+
+    if (failure[0] instanceof Exception) {
+      throw (Exception) failure[0];
+    } else if (failure[0] instanceof Error) {
+      throw (Error) failure[0];
+    }
+    @SuppressWarnings("unchecked") // the task returned a T
+    T t = (T) result[0];
+    return t;
+  }
+
+  private static Object invoke(Method method, Object target) throws Exception {
+    try {
+      return method.invoke(target);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Prints whether this VM supports virtual threads, so that the parent
+   * process can decide whether to run virtual thread scenarios on it.
+   */
+  public static void main(String[] args) {
+    System.out.println(isSupported());
+  }
+}
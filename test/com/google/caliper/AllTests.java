@@ -23,10 +23,32 @@ public class AllTests {
   public static Test suite() {
     TestSuite suite = new TestSuite();
     suite.addTestSuite(MeasurementSetTest.class);
+    suite.addTestSuite(AllocatedBytesProbeTest.class);
+    suite.addTestSuite(AllocationFitTest.class);
+    suite.addTestSuite(AllocationMeasurerTest.class);
+    suite.addTestSuite(AllocationHistogramTest.class);
+    suite.addTestSuite(AllocationStackTrieTest.class);
+    suite.addTestSuite(ArgumentsTest.class);
+    suite.addTestSuite(CacheThrasherTest.class);
     suite.addTestSuite(CaliperTest.class);
+    suite.addTestSuite(ChangePointDetectorTest.class);
+    suite.addTestSuite(CliffDetectorTest.class);
+    suite.addTestSuite(FootprintTest.class);
+    suite.addTestSuite(GcPressureProbeTest.class);
+    suite.addTestSuite(HeapBisectionTest.class);
     suite.addTestSuite(LinearTranslationTest.class);
+    suite.addTestSuite(OffHeapProbeTest.class);
+    suite.addTestSuite(OptimizedAwayDetectorTest.class);
+    suite.addTestSuite(ParameterRangeTest.class);
     suite.addTestSuite(ParameterTest.class);
+    suite.addTestSuite(ProcProbeTest.class);
+    suite.addTestSuite(RuntimeFootprintSamplerTest.class);
+    suite.addTestSuite(ScenarioSelectionTest.class);
+    suite.addTestSuite(SimpleBenchmarkTest.class);
+    suite.addTestSuite(TimedMethodInvokerTest.class);
+    suite.addTestSuite(VirtualThreadsTest.class);
     suite.addTestSuite(WarmupOverflowTest.class);
+    suite.addTestSuite(WarmupRoundsTest.class);
     return suite;
   }
 }
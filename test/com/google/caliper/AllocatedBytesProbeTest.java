@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import junit.framework.TestCase;
+
+public class AllocatedBytesProbeTest extends TestCase {
+
+  private static final int ARRAY_BYTES = 1 << 20;
+
+  static volatile Object escape;
+
+  public void testCountsAllocations() {
+    AllocatedBytesProbe probe = new AllocatedBytesProbe();
+    if (!probe.isSupported()) {
+      return;
+    }
+    probe.start();
+    escape = new byte[ARRAY_BYTES];
+    double bytes = probe.stop().get(Measurement.THREAD_ALLOCATED_BYTES);
+    assertTrue(bytes >= ARRAY_BYTES);
+    assertTrue(bytes < 2 * ARRAY_BYTES);
+  }
+
+  public void testSubtractsItsOwnOverhead() {
+    AllocatedBytesProbe probe = new AllocatedBytesProbe();
+    if (!probe.isSupported()) {
+      return;
+    }
+    probe.start();
+    double bytes = probe.stop().get(Measurement.THREAD_ALLOCATED_BYTES);
+    assertTrue(bytes < 1024);
+  }
+
+  public void testIgnoresOtherThreads() throws Exception {
+    AllocatedBytesProbe probe = new AllocatedBytesProbe();
+    if (!probe.isSupported()) {
+      return;
+    }
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        escape = new byte[ARRAY_BYTES];
+      }
+    });
+    probe.start();
+    thread.start();
+    thread.join();
+    double bytes = probe.stop().get(Measurement.THREAD_ALLOCATED_BYTES);
+    assertTrue(bytes < ARRAY_BYTES);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import junit.framework.TestCase;
+
+public class AllocationFitTest extends TestCase {
+
+  private static final long[] REPS = {1, 2, 4, 8, 16, 32, 64};
+
+  public void testExactlyLinear() {
+    AllocationFit fit = new AllocationFit(REPS, new long[] {130, 154, 202, 298, 490, 874, 1642});
+    assertEquals(24.0, fit.getSlope(), 1e-9);
+    assertEquals(106.0, fit.getIntercept(), 1e-9);
+    assertEquals(1.0, fit.getRSquared(), 1e-9);
+  }
+
+  public void testConstant() {
+    AllocationFit fit = new AllocationFit(REPS, new long[] {40, 40, 40, 40, 40, 40, 40});
+    assertEquals(0.0, fit.getSlope(), 1e-9);
+    assertEquals(40.0, fit.getIntercept(), 1e-9);
+    assertEquals(1.0, fit.getRSquared(), 1e-9);
+  }
+
+  /**
+   * Adding one element per rep to an ArrayList that starts with room for 10
+   * and grows by half allocates its arrays in steps rather than per rep.
+   */
+  public void testAmortizedGrowth() {
+    long[] allocations = new long[REPS.length];
+    for (int i = 0; i < REPS.length; i++) {
+      long capacity = 10;
+      long allocated = capacity;
+      while (capacity < REPS[i]) {
+        capacity += capacity >> 1;
+        allocated += capacity;
+      }
+      allocations[i] = allocated;
+    }
+    AllocationFit fit = new AllocationFit(REPS, allocations);
+    assertTrue(fit.getSlope() > 1 && fit.getSlope() < 5);
+    assertTrue(fit.getRSquared() > 0.9 && fit.getRSquared() < 1);
+  }
+
+  public void testOneRepCount() {
+    try {
+      new AllocationFit(new long[] {4, 4}, new long[] {10, 12});
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+public class AllocationHistogramTest extends TestCase {
+
+  public void testSitesPerRep() {
+    AllocationHistogram baseline = new AllocationHistogram();
+    baseline.record("java/lang/String", false, 24);
+    baseline.record("int", true, 32);
+
+    AllocationHistogram histogram = new AllocationHistogram();
+    histogram.record("java/lang/String", false, 24);
+    for (int i = 0; i < 4; i++) {
+      histogram.record("int", true, 32);
+      histogram.record("java/lang/Integer", false, 16);
+      histogram.record("java/lang/Integer", false, 16);
+    }
+
+    List<AllocationSite> sites = histogram.sitesPerRep(baseline, 3, 10);
+    assertEquals(2, sites.size());
+    assertEquals("java/lang/Integer", sites.get(0).getType());
+    assertEquals(8.0 / 3, sites.get(0).getInstancesPerRep(), 0.001);
+    assertEquals(128.0 / 3, sites.get(0).getBytesPerRep(), 0.001);
+    assertEquals("int[]", sites.get(1).getType());
+    assertEquals(1.0, sites.get(1).getInstancesPerRep(), 0.001);
+    assertEquals(32.0, sites.get(1).getBytesPerRep(), 0.001);
+  }
+
+  public void testArraysAndInstancesAreDistinct() {
+    AllocationHistogram histogram = new AllocationHistogram();
+    histogram.record("java/lang/Object", false, 16);
+    histogram.record("java/lang/Object", true, 24);
+    assertEquals(2, histogram.sitesPerRep(new AllocationHistogram(), 1, 10).size());
+  }
+
+  public void testGrowAndMerge() {
+    AllocationHistogram first = new AllocationHistogram();
+    AllocationHistogram second = new AllocationHistogram();
+    for (int i = 0; i < 1000; i++) {
+      first.record("Type" + i, false, i + 1);
+      second.record("Type" + i, false, i + 1);
+    }
+    first.addAll(second);
+
+    List<AllocationSite> sites = first.sitesPerRep(new AllocationHistogram(), 2, 5);
+    assertEquals(5, sites.size());
+    assertEquals("Type999", sites.get(0).getType());
+    assertEquals(1.0, sites.get(0).getInstancesPerRep(), 0.001);
+    assertEquals(1000.0, sites.get(0).getBytesPerRep(), 0.001);
+    assertEquals("Type995", sites.get(4).getType());
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import junit.framework.TestCase;
+
+/**
+ * The allocation agent isn't loaded when running tests, so these call the
+ * measurer's sampler directly from the benchmark's threads.
+ */
+public class AllocationMeasurerTest extends TestCase {
+
+  @Override protected void tearDown() {
+    TwoThreadBenchmark.measurer = null;
+  }
+
+  public void testOtherThreadsAreCountedSeparately() throws Exception {
+    final InstancesAllocationMeasurer measurer = new InstancesAllocationMeasurer();
+    TwoThreadBenchmark.measurer = measurer;
+    // the measurement runs on another thread than the one that created the
+    // measurer, as it does in virtual thread mode
+    ExecutorService runner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "runner");
+      }
+    });
+    MeasurementSet measurementSet;
+    try {
+      measurementSet = runner.submit(new Callable<MeasurementSet>() {
+        @Override public MeasurementSet call() throws Exception {
+          return measurer.run(SUPPLIER);
+        }
+      }).get();
+    } finally {
+      runner.shutdown();
+    }
+
+    Measurement measurement = measurementSet.getMeasurements().get(0);
+    assertEquals(1.0, measurement.getRaw());
+    assertEquals(1.0, measurement.getMetric(Measurement.ALLOCATIONS_BY_THREAD_PREFIX + "runner"));
+    assertEquals(2.0, measurement.getMetric(Measurement.ALLOCATIONS_BY_THREAD_PREFIX + "worker"));
+    assertEquals(2.0, measurement.getMetric(Measurement.OUT_OF_THREAD_ALLOCATIONS));
+  }
+
+  private static final Supplier<ConfiguredBenchmark> SUPPLIER =
+      new Supplier<ConfiguredBenchmark>() {
+        @Override public ConfiguredBenchmark get() {
+          return new TwoThreadBenchmark().createBenchmark(
+              ImmutableMap.of("benchmark", "Allocate"));
+        }
+      };
+
+  public static class TwoThreadBenchmark extends SimpleBenchmark {
+    /** Benchmarks are instantiated reflectively, so this can't be an instance field. */
+    static volatile AllocationMeasurer measurer;
+
+    /**
+     * Allocates one object per rep on the benchmark thread, and two on a
+     * worker thread.
+     */
+    public void timeAllocate(final int reps) throws Exception {
+      Thread worker = new Thread(new Runnable() {
+        @Override public void run() {
+          for (int i = 0; i < 2 * reps; i++) {
+            measurer.recordAllocation(-1, "java/lang/Object", 16);
+          }
+        }
+      }, "worker");
+      worker.start();
+      for (int i = 0; i < reps; i++) {
+        measurer.recordAllocation(-1, "java/lang/Object", 16);
+      }
+      worker.join();
+    }
+  }
+}
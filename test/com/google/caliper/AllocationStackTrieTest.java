@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class AllocationStackTrieTest extends TestCase {
+
+  public void testCollapsedStacks() {
+    AllocationStackTrie trie = new AllocationStackTrie(100);
+    assertTrue(trie.isEmpty());
+    trie.add(stack("Foo.inner", "Foo.outer"), "java/lang/String", 4);
+    trie.add(stack("Foo.inner", "Foo.outer"), "java/lang/String", 4);
+    trie.add(stack("Foo.outer"), "int[]", 1);
+    assertFalse(trie.isEmpty());
+    assertEquals(Arrays.asList(
+        "Foo.outer;Foo.inner;java/lang/String 8",
+        "Foo.outer;int[] 1"),
+        trie.toCollapsedStacks());
+  }
+
+  public void testRecorderAndHarnessFramesAreSkipped() {
+    AllocationStackTrie trie = new AllocationStackTrie(100);
+    trie.add(stack(
+        "com.google.monitoring.runtime.instrumentation.AllocationRecorder.recordAllocation",
+        AllocationMeasurer.class.getName() + "$1.sampleAllocation",
+        "Foo.timeBar",
+        "java.lang.reflect.Method.invoke",
+        "com.google.caliper.Runner.main"), "Foo", 1);
+    assertEquals(Arrays.asList("Foo.timeBar;Foo 1"), trie.toCollapsedStacks());
+  }
+
+  public void testDepthIsLimited() {
+    String[] frames = new String[AllocationStackTrie.MAX_DEPTH + 10];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = "Foo.method" + i;
+    }
+    AllocationStackTrie trie = new AllocationStackTrie(1000);
+    trie.add(stack(frames), "Foo", 1);
+    String collapsed = trie.toCollapsedStacks().get(0);
+    assertTrue(collapsed.startsWith("Foo.method" + (AllocationStackTrie.MAX_DEPTH - 1) + ";"));
+    assertTrue(collapsed.endsWith(";Foo.method0;Foo 1"));
+  }
+
+  public void testSamplesThatDoNotFitAreTruncated() {
+    AllocationStackTrie trie = new AllocationStackTrie(4);
+    trie.add(stack("Foo.a"), "Foo", 1);
+    trie.add(stack("Foo.b"), "Foo", 2);
+    trie.add(stack("Foo.a"), "Foo", 3);
+    assertEquals(Arrays.asList(
+        "Foo.a;Foo 4",
+        AllocationStackTrie.TRUNCATED + " 2"),
+        trie.toCollapsedStacks());
+  }
+
+  public void testAddAll() {
+    AllocationStackTrie first = new AllocationStackTrie(100);
+    AllocationStackTrie second = new AllocationStackTrie(100);
+    first.add(stack("Foo.a"), "Foo", 1);
+    second.add(stack("Foo.a"), "Foo", 2);
+    second.add(stack("Foo.b"), "Bar", 5);
+    first.addAll(second);
+    assertEquals(Arrays.asList("Foo.a;Foo 3", "Foo.b;Bar 5"), first.toCollapsedStacks());
+  }
+
+  /**
+   * Returns a stack of the named methods, innermost first.
+   */
+  private static StackTraceElement[] stack(String... methods) {
+    StackTraceElement[] result = new StackTraceElement[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      int dot = methods[i].lastIndexOf('.');
+      result[i] = new StackTraceElement(
+          methods[i].substring(0, dot), methods[i].substring(dot + 1), null, -1);
+    }
+    return result;
+  }
+}
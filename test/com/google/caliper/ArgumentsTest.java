@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+
+public class ArgumentsTest extends TestCase {
+
+  public void testMinWarmupDefaultsToWarmup() {
+    Arguments arguments = Arguments.parse(new String[] {"--warmupMillis", "500", "Foo"});
+    assertEquals(500, arguments.getMinWarmupMillis());
+  }
+
+  public void testMinWarmup() {
+    Arguments arguments = Arguments.parse(
+        new String[] {"--warmupMillis", "500", "--minWarmupMillis", "200", "Foo"});
+    assertEquals(200, arguments.getMinWarmupMillis());
+    assertEquals(500, arguments.getWarmupMillis());
+  }
+
+  public void testMinWarmupLongerThanWarmup() {
+    try {
+      Arguments.parse(new String[] {"--warmupMillis", "500", "--minWarmupMillis", "600", "Foo"});
+      fail();
+    } catch (UserException.IncompatibleArgumentsException expected) {
+    }
+  }
+
+  public void testHeapSweep() {
+    Arguments arguments = Arguments.parse(
+        new String[] {"--heapSweep", "16m..1g", "--heapSweepTolerance", "5", "Foo"});
+    assertTrue(arguments.getHeapSweep());
+    assertEquals(16L * 1024 * 1024, arguments.getHeapSweepMinBytes());
+    assertEquals(1024L * 1024 * 1024, arguments.getHeapSweepMaxBytes());
+    assertEquals(0.05, arguments.getHeapSweepTolerance(), 1e-9);
+  }
+
+  public void testHeapSweepMinNotBelowMax() {
+    assertInvalid("--heapSweep", "64m..64m");
+    assertInvalid("--heapSweep", "1g..16m");
+  }
+
+  public void testHeapSweepWithoutRange() {
+    assertInvalid("--heapSweep", "64m");
+    assertInvalid("--heapSweep", "16m-64m");
+  }
+
+  public void testInvalidHeapSweepTolerance() {
+    assertInvalid("--heapSweepTolerance", "-5");
+    assertInvalid("--heapSweepTolerance", "lots");
+  }
+
+  private void assertInvalid(String flag, String value) {
+    try {
+      Arguments.parse(new String[] {flag, value, "Foo"});
+      fail(flag + " " + value);
+    } catch (UserException.InvalidParameterValueException expected) {
+    }
+  }
+
+  public void testThreadModes() {
+    Arguments arguments = Arguments.parse(
+        new String[] {"--threadModes", "virtual,platform", "Foo"});
+    assertEquals(ImmutableList.of("virtual", "platform"),
+        new ArrayList<String>(arguments.getThreadModes()));
+  }
+
+  public void testThreadModesDefaultToNone() {
+    assertTrue(Arguments.parse(new String[] {"Foo"}).getThreadModes().isEmpty());
+  }
+
+  public void testUnknownThreadMode() {
+    try {
+      Arguments.parse(new String[] {"--threadModes", "platform,green", "Foo"});
+      fail();
+    } catch (UserException.InvalidParameterValueException expected) {
+    }
+  }
+}
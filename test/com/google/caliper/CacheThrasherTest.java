@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import junit.framework.TestCase;
+
+public class CacheThrasherTest extends TestCase {
+
+  public void testParseCacheSize() {
+    assertEquals(8192L * 1024, CacheThrasher.parseCacheSize("8192 KB"));
+    assertEquals(512L * 1024, CacheThrasher.parseCacheSize("[512 KB x 4]"));
+    assertEquals(6L * 1024 * 1024, CacheThrasher.parseCacheSize("[512 KB x 2, 6 MB x 2]"));
+    assertEquals(-1, CacheThrasher.parseCacheSize("[]"));
+    assertEquals(-1, CacheThrasher.parseCacheSize(null));
+  }
+
+  public void testParseBytes() {
+    assertEquals(1048576, CacheThrasher.parseBytes("1048576"));
+    assertEquals(64L * 1024 * 1024, CacheThrasher.parseBytes("64M"));
+    assertEquals(512L * 1024, CacheThrasher.parseBytes("512 KB"));
+    assertEquals(-1, CacheThrasher.parseBytes("lots"));
+  }
+}
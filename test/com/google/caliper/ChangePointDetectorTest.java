@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class ChangePointDetectorTest extends TestCase {
+
+  private final ChangePointDetector detector = new ChangePointDetector();
+
+  public void testSteadyState() {
+    assertEquals(0, detector.findLevelShift(
+        Arrays.asList(10.0, 10.2, 9.9, 10.1, 10.0, 9.8, 10.1)));
+  }
+
+  public void testLevelShift() {
+    assertEquals(3, detector.findLevelShift(
+        Arrays.asList(10.0, 10.2, 9.9, 15.1, 15.0, 14.8, 15.1)));
+  }
+
+  public void testShiftTooSmall() {
+    assertEquals(0, detector.findLevelShift(
+        Arrays.asList(10.0, 10.0, 10.0, 10.2, 10.2, 10.2)));
+  }
+
+  public void testSingleOutlierIsNotAShift() {
+    assertEquals(0, detector.findLevelShift(
+        Arrays.asList(10.0, 10.2, 9.9, 10.1, 10.0, 9.8, 30.0)));
+  }
+
+  public void testTooFewValues() {
+    assertEquals(0, detector.findLevelShift(Arrays.asList(10.0, 20.0, 20.0)));
+  }
+}
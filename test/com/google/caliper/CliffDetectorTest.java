@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class CliffDetectorTest extends TestCase {
+
+  private final CliffDetector detector = new CliffDetector();
+
+  private static final List<Double> SIZES = Arrays.asList(1.0, 2.0, 4.0, 8.0, 16.0, 32.0);
+
+  public void testLinearGrowthHasNoCliffs() {
+    assertEquals(0, detector.findCliffs(SIZES,
+        Arrays.asList(10.0, 20.0, 41.0, 79.0, 160.0, 322.0)).size());
+  }
+
+  public void testCliff() {
+    List<CliffDetector.Cliff> cliffs = detector.findCliffs(SIZES,
+        Arrays.asList(10.0, 10.1, 9.9, 30.0, 30.2, 29.8));
+    assertEquals(1, cliffs.size());
+    assertEquals(2, cliffs.get(0).getIndex());
+    assertEquals(3.0, cliffs.get(0).getRatio(), 0.1);
+  }
+
+  public void testTooFewSizes() {
+    assertEquals(0, detector.findCliffs(Arrays.asList(1.0, 2.0, 4.0),
+        Arrays.asList(10.0, 10.0, 30.0)).size());
+  }
+}
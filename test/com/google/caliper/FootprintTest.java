@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class FootprintTest extends TestCase {
+
+  private final ObjectLayout layout = new ObjectLayout();
+
+  public void testSharedObjectsAreCountedOnce() throws Exception {
+    Node shared = new Node(null);
+    Footprint distinct = Footprint.of(
+        Arrays.asList(new Node(new Node(null)), new Node(new Node(null))), layout);
+    Footprint sharing = Footprint.of(Arrays.asList(new Node(shared), new Node(shared)), layout);
+    assertEquals(distinct.getObjects() - 1, sharing.getObjects());
+    assertEquals(distinct.getBytes() - layout.sizeOf(shared), sharing.getBytes());
+  }
+
+  public void testCycles() throws Exception {
+    Node first = new Node(null);
+    Node second = new Node(first);
+    first.next = second;
+    Footprint footprint = Footprint.of(first, layout);
+    assertEquals(2, footprint.getObjects());
+    assertEquals(2 * layout.sizeOf(first), footprint.getBytes());
+  }
+
+  public void testRetainedTypes() throws Exception {
+    List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 100; i++) {
+      list.add(new Node(null));
+    }
+    list.add(new long[100]);
+    List<RetainedType> types = Footprint.of(list, layout).getRetainedTypes(2);
+    assertEquals(2, types.size());
+    assertEquals(Node.class.getName(), types.get(0).getType());
+    assertEquals(100, types.get(0).getInstances());
+    assertEquals(100 * layout.sizeOf(new Node(null)), types.get(0).getBytes());
+    assertEquals("long[]", types.get(1).getType());
+    assertEquals(1, types.get(1).getInstances());
+  }
+
+  public void testLayout() {
+    assertTrue(layout.sizeOf(new Object()) >= 8);
+    assertTrue(layout.sizeOf(new long[100]) >= 800);
+    assertEquals(0, layout.sizeOf(new Node(null)) % 8);
+    assertTrue(layout.sizeOf(new Object[2]) < layout.sizeOf(new Object[20]));
+  }
+
+  public void testClassesAreNotFollowed() throws Exception {
+    assertEquals(1, Footprint.of(new Object[] {String.class}, layout).getObjects());
+  }
+
+  public void testNull() throws Exception {
+    assertEquals(0, Footprint.of(null, layout).getBytes());
+  }
+
+  static class Node {
+    Node next;
+    int value;
+
+    Node(Node next) {
+      this.next = next;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import com.google.caliper.GcPressureProbe.CollectionEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class GcPressureProbeTest extends TestCase {
+
+  public void testOldGrowthIsFittedAcrossCollections() {
+    List<CollectionEvent> collections = Arrays.asList(
+        new CollectionEvent(true, true, 100, 0, 1000),
+        new CollectionEvent(true, true, 200, 1000, 2000),
+        new CollectionEvent(false, true, 300, 2000, 3000));
+    assertEquals(10.0, GcPressureProbe.oldGrowthPerMilli(collections), 1e-9);
+  }
+
+  public void testOldGrowthNeedsSeveralCollections() {
+    List<CollectionEvent> collections = Arrays.asList(
+        new CollectionEvent(true, true, 100, 0, 1000),
+        new CollectionEvent(true, true, 200, 1000, 2000),
+        new CollectionEvent(true, false, 300, 0, 0));
+    assertTrue(Double.isNaN(GcPressureProbe.oldGrowthPerMilli(collections)));
+  }
+
+  public void testOldGrowthNeedsCollectionsAtDifferentTimes() {
+    List<CollectionEvent> collections = Collections.nCopies(3,
+        new CollectionEvent(true, true, 100, 0, 1000));
+    assertTrue(Double.isNaN(GcPressureProbe.oldGrowthPerMilli(collections)));
+  }
+
+  public void testPromotedBytesCountOnlyYoungCollectionGrowth() {
+    Map<String, Double> metrics = GcPressureProbe.summarize(Arrays.asList(
+        new CollectionEvent(true, true, 100, 0, 500),
+        new CollectionEvent(false, true, 200, 500, 100),
+        new CollectionEvent(true, true, 300, 100, 50),
+        new CollectionEvent(true, true, 400, 50, 350)), 1000);
+    assertEquals(800.0, metrics.get(Measurement.GC_PROMOTED_BYTES));
+    assertTrue(metrics.containsKey(Measurement.GC_OLD_GROWTH_BYTES));
+  }
+
+  public void testNothingRecordedWithoutGenerationalCollections() {
+    Map<String, Double> metrics = GcPressureProbe.summarize(Arrays.asList(
+        new CollectionEvent(true, false, 100, 0, 0),
+        new CollectionEvent(false, false, 200, 0, 0)), 1000);
+    assertTrue(metrics.isEmpty());
+  }
+
+  public void testTrialWithoutCollectionsRecordsNothing() {
+    GcPressureProbe probe = new GcPressureProbe();
+    if (!probe.isSupported()) {
+      return;
+    }
+    probe.start();
+    Map<String, Double> metrics = probe.stop();
+    assertFalse(metrics.containsKey(Measurement.GC_OLD_GROWTH_BYTES));
+  }
+}
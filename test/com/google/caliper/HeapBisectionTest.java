@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+public class HeapBisectionTest extends TestCase {
+
+  private static final long MB = HeapBisection.MEGABYTE;
+
+  /**
+   * Runs out of memory below 40MB, and takes twice as long below 64MB.
+   */
+  private static HeapSweep sweep(long minBytes, long maxBytes) {
+    HeapBisection bisection = new HeapBisection(minBytes, maxBytes, 100.0, 0.1);
+    long heapBytes;
+    int runs = 0;
+    while ((heapBytes = bisection.next()) != -1) {
+      assertTrue(++runs < 20);
+      if (heapBytes < 40 * MB) {
+        bisection.record(heapBytes, 0, "OutOfMemoryError");
+      } else {
+        bisection.record(heapBytes, heapBytes < 64 * MB ? 200.0 : 105.0, null);
+      }
+    }
+    return bisection.getResult();
+  }
+
+  public void testFindsSmallestAcceptableHeap() {
+    HeapSweep sweep = sweep(16 * MB, 1024 * MB);
+    long smallest = sweep.getSmallestHeapBytes();
+    assertTrue(smallest >= 64 * MB);
+    assertTrue(smallest <= 64 * MB * HeapBisection.RESOLUTION);
+
+    List<HeapSizePoint> points = sweep.getPoints();
+    assertEquals(16 * MB, points.get(0).getHeapBytes());
+    assertEquals("OutOfMemoryError", points.get(0).getFailure());
+    assertEquals(1024 * MB, points.get(points.size() - 1).getHeapBytes());
+    for (int i = 1; i < points.size(); i++) {
+      assertTrue(points.get(i - 1).getHeapBytes() < points.get(i).getHeapBytes());
+    }
+  }
+
+  public void testSmallestSizeIsAcceptable() {
+    HeapSweep sweep = sweep(128 * MB, 1024 * MB);
+    assertEquals(128 * MB, sweep.getSmallestHeapBytes());
+    assertEquals(2, sweep.getPoints().size());
+  }
+
+  public void testNoSizeIsAcceptable() {
+    HeapSweep sweep = sweep(8 * MB, 32 * MB);
+    assertEquals(-1, sweep.getSmallestHeapBytes());
+    assertEquals(1, sweep.getPoints().size());
+    assertTrue(sweep.getPoints().get(0).failed());
+  }
+}
@@ -194,6 +194,95 @@ public class MeasurementSetTest extends TestCase {
     assertEquals(measurementSet.getUnitNames(), roundTripped.getUnitNames());
   }
 
+  public void testJsonRoundtripWarningsAndLevelShift() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.1, 1.1),
+        new Measurement(ImmutableMap.of("ns", 1), 1.2, 1.2),
+        new Measurement(ImmutableMap.of("ns", 1), 2.3, 2.3))
+        .plusLevelShift(2)
+        .plusWarning("shifted")
+        .plusWarmupNanos(5000);
+    MeasurementSet roundTripped =
+        Json.measurementSetFromJson(Json.measurementSetToJson(measurementSet));
+    assertEquals(2, roundTripped.getLevelShiftIndex());
+    assertTrue(roundTripped.hasLevelShift());
+    assertEquals(Arrays.asList("shifted"), roundTripped.getWarnings());
+    assertEquals(5000, roundTripped.getWarmupNanos());
+  }
+
+  public void testWithoutGarbageCollection() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.1, 1.1,
+            ImmutableMap.of(Measurement.GC_COUNT, 0.0)),
+        new Measurement(ImmutableMap.of("ns", 1), 9.9, 9.9,
+            ImmutableMap.of(Measurement.GC_COUNT, 2.0)),
+        new Measurement(ImmutableMap.of("ns", 1), 1.3, 1.3))
+        .plusWarning("kept");
+    MeasurementSet gcFree = measurementSet.withoutGarbageCollection();
+    assertDoubleListsEquals(Arrays.asList(1.1, 1.3), gcFree.getMeasurementsRaw(), 0.00000001);
+    assertEquals(Arrays.asList("kept"), gcFree.getWarnings());
+    assertEquals(Arrays.asList(0.0, 2.0), measurementSet.getMetricValues(Measurement.GC_COUNT));
+  }
+
+  public void testCountCpuStarvedMeasurements() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0, ImmutableMap.of(
+            Measurement.WALL_NANOS, 1000.0, Measurement.CPU_NANOS, 990.0)),
+        new Measurement(ImmutableMap.of("ns", 1), 3.0, 3.0, ImmutableMap.of(
+            Measurement.WALL_NANOS, 3000.0, Measurement.CPU_NANOS, 1000.0)),
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0));
+    assertEquals(1, measurementSet.countCpuStarvedMeasurements(1.5));
+    assertEquals(0, measurementSet.countCpuStarvedMeasurements(4.0));
+  }
+
+  public void testThroughput() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 2.0, 2.0,
+            ImmutableMap.of(Measurement.OPERATIONS_PER_SECOND, 5.0e8)),
+        new Measurement(ImmutableMap.of("ns", 1), 4.0, 4.0,
+            ImmutableMap.of(Measurement.OPERATIONS_PER_SECOND, 2.5e8)),
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0,
+            ImmutableMap.of(Measurement.OPERATIONS_PER_SECOND, 1.0e9)))
+        .plusThroughput(1, 0);
+    assertEquals(5.0e8, measurementSet.medianMetric(Measurement.OPERATIONS_PER_SECOND));
+    assertTrue(Double.isNaN(measurementSet.medianMetric(Measurement.BYTES_PER_SECOND)));
+
+    MeasurementSet roundTripped =
+        Json.measurementSetFromJson(Json.measurementSetToJson(measurementSet));
+    assertEquals(1.0, roundTripped.getOperationsPerRep());
+    assertEquals(0.0, roundTripped.getBytesPerRep());
+    assertEquals(5.0e8, roundTripped.medianMetric(Measurement.OPERATIONS_PER_SECOND));
+  }
+
+  public void testJsonRoundtripMetrics() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.1, 1.1,
+            ImmutableMap.of(Measurement.GC_COUNT, 1.0, Measurement.GC_MILLIS, 4.0)));
+    MeasurementSet roundTripped =
+        Json.measurementSetFromJson(Json.measurementSetToJson(measurementSet));
+    assertEquals(ImmutableMap.of(Measurement.GC_COUNT, 1.0, Measurement.GC_MILLIS, 4.0),
+        roundTripped.getMeasurements().get(0).getMetrics());
+  }
+
+  public void testLevelShiftSurvivesPlusMeasurement() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.1, 1.1),
+        new Measurement(ImmutableMap.of("ns", 1), 2.3, 2.3))
+        .plusLevelShift(1)
+        .plusMeasurement(new Measurement(ImmutableMap.of("ns", 1), 2.4, 2.4));
+    assertEquals(1, measurementSet.getLevelShiftIndex());
+  }
+
+  public void testLevelShiftOutOfRange() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.1, 1.1));
+    try {
+      measurementSet.plusLevelShift(1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   @SuppressWarnings({"AssertEqualsBetweenInconvertibleTypes"})
   public void testFromLegacyString() {
     MeasurementSet measurementSet = Json.measurementSetFromJson("122.0 133.0 144.0");
@@ -205,6 +294,53 @@ public class MeasurementSetTest extends TestCase {
         measurementSet.getUnitNames());
   }
 
+  public void testMetricsRecordedAcrossTrials() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0))
+        .plusMetrics(ImmutableMap.of("a", 2.0))
+        .plusMetrics(ImmutableMap.of("b", 3.0));
+    assertEquals(ImmutableMap.of("a", 2.0, "b", 3.0),
+        measurementSet.plusWarning("copied").getMetrics());
+    assertEquals(2.0, measurementSet.medianMetric("a"));
+    assertTrue(Double.isNaN(measurementSet.medianMetric("c")));
+  }
+
+  public void testRuntimeFootprintsAreCopied() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0))
+        .plusRuntimeFootprints(Arrays.asList(
+            new RuntimeFootprint(RuntimeFootprint.BEFORE_WARMUP, 100, 2048, 4096),
+            new RuntimeFootprint(RuntimeFootprint.AFTER_MEASUREMENT, 120, 3072, 8192)))
+        .plusWarning("copied");
+    List<RuntimeFootprint> footprints = measurementSet.getRuntimeFootprints();
+    assertEquals(2, footprints.size());
+    assertEquals(RuntimeFootprint.AFTER_MEASUREMENT, footprints.get(1).getStage());
+    assertEquals(120, footprints.get(1).getLoadedClasses());
+    assertEquals(8192, footprints.get(1).getCodeCacheBytes());
+  }
+
+  public void testWithoutAllocationStacks() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("B", 1), 8.0, 8.0))
+        .plusAllocationStacks(Arrays.asList("Foo.bar;java/lang/Object 3"))
+        .plusWarning("kept");
+    assertEquals(1, measurementSet.getAllocationStacks().size());
+    MeasurementSet withoutStacks = measurementSet.withoutAllocationStacks();
+    assertTrue(withoutStacks.getAllocationStacks().isEmpty());
+    assertFalse(Json.getGsonInstance().toJson(withoutStacks).contains("Foo.bar"));
+    assertEquals(Arrays.asList("kept"), withoutStacks.getWarnings());
+    assertEquals(8.0, withoutStacks.medianRaw());
+  }
+
+  public void testMedianChangeCountsMissingValuesAsZero() {
+    MeasurementSet measurementSet = new MeasurementSet(
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0, ImmutableMap.of("a", 5.0)),
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0),
+        new Measurement(ImmutableMap.of("ns", 1), 1.0, 1.0));
+    assertEquals(5.0, measurementSet.medianMetric("a"));
+    assertEquals(0.0, measurementSet.medianChange("a"));
+  }
+
   private void assertDoubleListsEquals(List<Double> expected, List<Double> actual, double epsilon) {
     assertEquals(expected.size(), actual.size());
     Collections.sort(expected);
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class OffHeapProbeTest extends TestCase {
+
+  private static final String SUMMARY = "\n"
+      + "Native Memory Tracking:\n"
+      + "\n"
+      + "Total: reserved=1456234KB, committed=123456KB\n"
+      + "       malloc: 20480KB #41234\n"
+      + "\n"
+      + "-                 Java Heap (reserved=262144KB, committed=16384KB)\n"
+      + "                            (mmap: reserved=262144KB, committed=16384KB) \n"
+      + "\n"
+      + "-                     Class (reserved=1048586KB, committed=522KB)\n";
+
+  static volatile ByteBuffer escape;
+
+  public void testMetricName() {
+    assertEquals("direct", OffHeapProbe.metricName("direct"));
+    assertEquals("mapped_non_volatile_memory",
+        OffHeapProbe.metricName("mapped - 'non-volatile memory'"));
+  }
+
+  public void testNativeCommittedExcludesHeap() {
+    assertEquals((123456L - 16384) * 1024, OffHeapProbe.parseNativeCommittedBytes(SUMMARY));
+  }
+
+  public void testNativeCommittedWithoutHeap() {
+    assertEquals(100L * 1024, OffHeapProbe.parseNativeCommittedBytes(
+        "Total: reserved=200KB, committed=100KB\n"));
+  }
+
+  public void testNativeCommittedWithoutTotal() {
+    assertEquals(-1, OffHeapProbe.parseNativeCommittedBytes(
+        "Native memory tracking is not enabled\n"));
+  }
+
+  public void testOnlyChangesAreRecorded() {
+    OffHeapProbe probe = new OffHeapProbe();
+    if (!probe.isSupported()) {
+      return;
+    }
+    probe.start();
+    Map<String, Double> unchanged = probe.stop();
+    assertFalse(unchanged.containsKey(Measurement.BUFFER_POOL_PREFIX + "mapped.count"));
+
+    probe.start();
+    escape = ByteBuffer.allocateDirect(4096);
+    Map<String, Double> metrics = probe.stop();
+    assertEquals(1.0, metrics.get(Measurement.BUFFER_POOL_PREFIX + "direct.count"));
+    assertFalse(metrics.containsKey(Measurement.BUFFER_POOL_PREFIX + "mapped.count"));
+  }
+}
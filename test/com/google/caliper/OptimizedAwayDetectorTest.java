@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class OptimizedAwayDetectorTest extends TestCase {
+
+  private static final Set<String> NONE = Collections.emptySet();
+
+  public void testWorkloadThatScales() {
+    Map<Scenario, Double> nanosPerRep = new LinkedHashMap<Scenario, Double>();
+    nanosPerRep.put(scenario("sum", "size", "10"), 5.0);
+    nanosPerRep.put(scenario("sum", "size", "100"), 48.0);
+    nanosPerRep.put(scenario("sum", "size", "1000"), 470.0);
+    assertTrue(new OptimizedAwayDetector(ImmutableSet.of("size"), NONE)
+        .findSuspects(nanosPerRep).isEmpty());
+  }
+
+  public void testFlatWorkload() {
+    Map<Scenario, Double> nanosPerRep = new LinkedHashMap<Scenario, Double>();
+    nanosPerRep.put(scenario("sum", "size", "10"), 1.0);
+    nanosPerRep.put(scenario("sum", "size", "100"), 1.1);
+    nanosPerRep.put(scenario("sum", "size", "1000"), 1.0);
+    nanosPerRep.put(scenario("product", "size", "10"), 5.0);
+    nanosPerRep.put(scenario("product", "size", "100"), 48.0);
+    nanosPerRep.put(scenario("product", "size", "1000"), 470.0);
+    Multimap<Scenario, String> suspects =
+        new OptimizedAwayDetector(ImmutableSet.of("size"), NONE).findSuspects(nanosPerRep);
+    assertEquals(ImmutableSet.of(scenario("sum", "size", "10"), scenario("sum", "size", "100"),
+        scenario("sum", "size", "1000")), suspects.keySet());
+  }
+
+  public void testNonNumericWorkload() {
+    Map<Scenario, Double> nanosPerRep = new LinkedHashMap<Scenario, Double>();
+    nanosPerRep.put(scenario("sum", "size", "small"), 1.0);
+    nanosPerRep.put(scenario("sum", "size", "large"), 1.0);
+    assertTrue(new OptimizedAwayDetector(ImmutableSet.of("size"), NONE)
+        .findSuspects(nanosPerRep).isEmpty());
+  }
+
+  public void testInputs() {
+    Map<Scenario, Double> nanosPerRep = new LinkedHashMap<Scenario, Double>();
+    nanosPerRep.put(scenario("hash", "seed", "0"), 0.5);
+    nanosPerRep.put(scenario("hash", "seed", "17"), 12.0);
+    nanosPerRep.put(scenario("equals", "seed", "0"), 3.0);
+    nanosPerRep.put(scenario("equals", "seed", "17"), 3.2);
+    Multimap<Scenario, String> suspects =
+        new OptimizedAwayDetector(NONE, ImmutableSet.of("seed")).findSuspects(nanosPerRep);
+    assertEquals(ImmutableSet.of(scenario("hash", "seed", "0"), scenario("hash", "seed", "17")),
+        suspects.keySet());
+  }
+
+  private static Scenario scenario(String benchmark, String name, String value) {
+    return new Scenario(ImmutableMap.of("benchmark", benchmark, name, value, "vm", "java"));
+  }
+}
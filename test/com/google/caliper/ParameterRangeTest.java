@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class ParameterRangeTest extends TestCase {
+
+  public void testMultiply() {
+    assertEquals(Arrays.asList("16", "32", "64", "128"), ParameterRange.expand("16..128*2"));
+    assertEquals(Arrays.asList("1024", "4096", "16384"), ParameterRange.expand("1K..20K*4"));
+    assertEquals(21, ParameterRange.expand("16..16M*2").size());
+  }
+
+  public void testLog() {
+    assertEquals(Arrays.asList("1", "10", "100", "1000"), ParameterRange.expand("1..1000:4log"));
+    assertEquals(Arrays.asList("1024", "1048576"), ParameterRange.expand("1K..1M:2log"));
+    assertEquals(20, ParameterRange.expand("1K..1M:20log").size());
+  }
+
+  public void testRoundedDuplicatesAreRemoved() {
+    assertEquals(Arrays.asList("1", "2", "3"), ParameterRange.expand("1..3:10log"));
+  }
+
+  public void testIsRange() {
+    assertTrue(ParameterRange.isRange("16..16M*2"));
+    assertTrue(ParameterRange.isRange("1K..1M:20log"));
+    assertFalse(ParameterRange.isRange("16"));
+    assertFalse(ParameterRange.isRange("a..b"));
+  }
+
+  public void testInvalidRanges() {
+    for (String range : Arrays.asList("16..8*2", "16..32*1", "16..32:1log", "0..8*2")) {
+      try {
+        ParameterRange.expand(range);
+        fail(range);
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
@@ -120,6 +120,38 @@ public class ParameterTest extends TestCase {
     checkParameterValues(I.class, true, false);
   }
 
+  public static class J extends SimpleBenchmark {
+    @Param(range = "16..256*4") int param;
+  }
+
+  public void testRange() throws Exception {
+    checkParameterValues(J.class, "16", "64", "256");
+  }
+
+  public static class K extends SimpleBenchmark {
+    @Param(value = {"1", "2"}, range = "16..256*4") int param;
+  }
+
+  public void testValuesAndRange() throws Exception {
+    try {
+      Parameter.forClass(K.class);
+      fail();
+    } catch (ConfigurationException expected) {
+    }
+  }
+
+  public static class L extends SimpleBenchmark {
+    @Param(value = {"1", "2"}, workload = true, input = true) int param;
+  }
+
+  public void testWorkloadAndInput() throws Exception {
+    try {
+      Parameter.forClass(L.class);
+      fail();
+    } catch (ConfigurationException expected) {
+    }
+  }
+
   private static void checkParameterValues(Class<? extends SimpleBenchmark> bClass,
       Object... expected) throws Exception {
     Map<String,Parameter<?>> map = Parameter.forClass(bClass);
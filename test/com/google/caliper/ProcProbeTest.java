@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import junit.framework.TestCase;
+
+public class ProcProbeTest extends TestCase {
+
+  private static final String STAT = "4242 (java (worker) x) S 1 4242 4242 0 -1 4194560 "
+      + "1234 0 56 0 100 20 0 0 20 0 30 0 5000 3000000000 40000 18446744073709551615\n";
+
+  private static final String STATUS = "Name:\tjava\nState:\tS (sleeping)\n"
+      + "voluntary_ctxt_switches:\t150\nnonvoluntary_ctxt_switches:\t7\n";
+
+  private static final String SCHED = "java (4242, #threads: 30)\n"
+      + "-------------------------------------------------------------------\n"
+      + "se.exec_start                                :      12345678.901234\n"
+      + "se.statistics.wait_sum                       :            12.500000\n"
+      + "se.statistics.wait_count                     :                   40\n";
+
+  public void testStatFaults() {
+    assertEquals(1234, ProcProbe.parseStatField(STAT, ProcProbe.MINOR_FAULTS_FIELD));
+    assertEquals(56, ProcProbe.parseStatField(STAT, ProcProbe.MAJOR_FAULTS_FIELD));
+  }
+
+  public void testTruncatedStat() {
+    assertEquals(-1, ProcProbe.parseStatField("4242 (java) S 1 4242",
+        ProcProbe.MINOR_FAULTS_FIELD));
+    assertEquals(-1, ProcProbe.parseStatField("garbage", ProcProbe.MINOR_FAULTS_FIELD));
+  }
+
+  public void testNonNumericStat() {
+    assertEquals(-1, ProcProbe.parseStatField(STAT.replace("1234", "12x4"),
+        ProcProbe.MINOR_FAULTS_FIELD));
+  }
+
+  public void testStatus() {
+    assertEquals(150, ProcProbe.parseStatusValue(STATUS, "voluntary_ctxt_switches:"));
+    assertEquals(7, ProcProbe.parseStatusValue(STATUS, "nonvoluntary_ctxt_switches:"));
+    assertEquals(-1, ProcProbe.parseStatusValue(STATUS, "missing:"));
+    assertEquals(-1, ProcProbe.parseStatusValue(
+        "voluntary_ctxt_switches:\tmany\n", "voluntary_ctxt_switches:"));
+  }
+
+  public void testSchedWaitSum() {
+    assertEquals(12500000, ProcProbe.parseSchedWaitNanos(SCHED));
+    assertEquals(-1, ProcProbe.parseSchedWaitNanos("se.exec_start : 1.0\n"));
+    assertEquals(-1, ProcProbe.parseSchedWaitNanos("se.statistics.wait_sum : n/a\n"));
+  }
+
+  public void testSchedstat() {
+    assertEquals(987654, ProcProbe.parseSchedstatWaitNanos("123456789 987654 321\n"));
+    assertEquals(-1, ProcProbe.parseSchedstatWaitNanos("123456789\n"));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class RuntimeFootprintSamplerTest extends TestCase {
+
+  public void testMetaspaceAndSegmentedCodeCache() {
+    Map<String, Long> usedByPool = new LinkedHashMap<String, Long>();
+    usedByPool.put("CodeHeap 'non-nmethods'", 1000L);
+    usedByPool.put("Metaspace", 20000L);
+    usedByPool.put("CodeHeap 'profiled nmethods'", 2000L);
+    usedByPool.put("Compressed Class Space", 3000L);
+    usedByPool.put("G1 Eden Space", 400000L);
+    usedByPool.put("CodeHeap 'non-profiled nmethods'", 4000L);
+    RuntimeFootprint footprint =
+        RuntimeFootprintSampler.footprint(RuntimeFootprint.AFTER_WARMUP, 500, usedByPool);
+    assertEquals(RuntimeFootprint.AFTER_WARMUP, footprint.getStage());
+    assertEquals(500, footprint.getLoadedClasses());
+    assertEquals(20000, footprint.getMetaspaceBytes());
+    assertEquals(7000, footprint.getCodeCacheBytes());
+  }
+
+  public void testPermGenAndCodeCache() {
+    Map<String, Long> usedByPool = new LinkedHashMap<String, Long>();
+    usedByPool.put("Code Cache", 5000L);
+    usedByPool.put("PS Old Gen", 800000L);
+    usedByPool.put("PS Perm Gen", 30000L);
+    RuntimeFootprint footprint =
+        RuntimeFootprintSampler.footprint(RuntimeFootprint.AFTER_WARMUP, 500, usedByPool);
+    assertEquals(30000, footprint.getMetaspaceBytes());
+    assertEquals(5000, footprint.getCodeCacheBytes());
+  }
+
+  public void testUnreportedPools() {
+    Map<String, Long> usedByPool = new LinkedHashMap<String, Long>();
+    usedByPool.put("Eden Space", 100000L);
+    usedByPool.put("Tenured Gen", 200000L);
+    RuntimeFootprint footprint =
+        RuntimeFootprintSampler.footprint(RuntimeFootprint.AFTER_WARMUP, 500, usedByPool);
+    assertEquals(-1, footprint.getMetaspaceBytes());
+    assertEquals(-1, footprint.getCodeCacheBytes());
+  }
+
+  public void testSampleThisVm() {
+    RuntimeFootprint footprint =
+        new RuntimeFootprintSampler().sample(RuntimeFootprint.BEFORE_WARMUP);
+    assertTrue(footprint.getLoadedClasses() > 0);
+    assertTrue(footprint.getMetaspaceBytes() > 0);
+    assertTrue(footprint.getCodeCacheBytes() > 0);
+  }
+}
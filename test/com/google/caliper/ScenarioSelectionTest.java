@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class ScenarioSelectionTest extends TestCase {
+
+  public void testThreadModesAreAVariable() {
+    List<Scenario> scenarios = select(ImmutableSet.of("platform", "virtual"));
+    assertEquals(2, scenarios.size());
+    Set<String> threadModes = new HashSet<String>();
+    for (Scenario scenario : scenarios) {
+      threadModes.add(scenario.getVariables().get(Scenario.THREAD_MODE_KEY));
+    }
+    assertEquals(ImmutableSet.of("platform", "virtual"), threadModes);
+  }
+
+  public void testNoThreadModeVariableByDefault() {
+    List<Scenario> scenarios = select(Collections.<String>emptySet());
+    assertEquals(1, scenarios.size());
+    assertFalse(scenarios.get(0).getVariables().containsKey(Scenario.THREAD_MODE_KEY));
+  }
+
+  private List<Scenario> select(Set<String> threadModes) {
+    return new ScenarioSelection(ImmutableSet.of("java"),
+        ArrayListMultimap.<String, String>create(), OneBenchmark.class.getName(),
+        ArrayListMultimap.<String, String>create(), 1, threadModes,
+        Collections.<String>emptySet()).select();
+  }
+
+  public static class OneBenchmark extends SimpleBenchmark {
+    public void timeNothing(int reps) {}
+  }
+}
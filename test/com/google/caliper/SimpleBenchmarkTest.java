@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+public class SimpleBenchmarkTest extends TestCase {
+
+  public void testRepHooksRunAroundEachRep() throws Exception {
+    ConfiguredBenchmark benchmark = new RepHooksBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Record"));
+    assertTrue(benchmark.hasPerRepHooks());
+    RepHooksBenchmark underlying = (RepHooksBenchmark) benchmark.getBenchmark();
+    benchmark.run(3);
+    assertEquals(Arrays.asList("before", "rep", "after"), underlying.events.subList(0, 3));
+    assertEquals(9, underlying.events.size());
+    assertTrue(benchmark.getUntimedNanos() > 0);
+  }
+
+  public void testInheritedRepHooks() throws Exception {
+    ConfiguredBenchmark benchmark = new InheritedRepHooksBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Record"));
+    RepHooksBenchmark underlying = (RepHooksBenchmark) benchmark.getBenchmark();
+    benchmark.run(3);
+    assertEquals(Arrays.asList("before", "beforeToo", "rep", "after"),
+        underlying.events.subList(0, 4));
+    assertEquals(12, underlying.events.size());
+  }
+
+  public void testOverriddenRepHookRunsOnce() throws Exception {
+    ConfiguredBenchmark benchmark = new OverridingRepHooksBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Record"));
+    RepHooksBenchmark underlying = (RepHooksBenchmark) benchmark.getBenchmark();
+    benchmark.run(1);
+    assertEquals(Arrays.asList("overridden", "rep", "after"), underlying.events);
+  }
+
+  public void testNoRepHooks() throws Exception {
+    ConfiguredBenchmark benchmark = new NoRepHooksBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Nothing"));
+    assertFalse(benchmark.hasPerRepHooks());
+    benchmark.run(5);
+    assertEquals(0, benchmark.getUntimedNanos());
+  }
+
+  public void testRepHookWithParameters() throws Exception {
+    try {
+      new BadRepHooksBenchmark();
+      fail();
+    } catch (ConfigurationException expected) {
+    }
+  }
+
+  public void testSinkIsPassedToTimedMethod() throws Exception {
+    ConfiguredBenchmark benchmark = new SinkBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Consume"));
+    assertTrue(benchmark.usesSink());
+    benchmark.run(4);
+    assertEquals(4, ((SinkBenchmark) benchmark.getBenchmark()).consumed);
+    assertFalse(new NoRepHooksBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Nothing")).usesSink());
+  }
+
+  public void testSinkCalibration() {
+    double nanos = Sink.calibrate(10);
+    assertTrue(nanos > 0 && nanos < 1000);
+  }
+
+  public void testAsyncBenchmark() throws Exception {
+    ConfiguredBenchmark benchmark = new AsyncBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Operation"));
+    AsyncBenchmark underlying = (AsyncBenchmark) benchmark.getBenchmark();
+    benchmark.run(100);
+    assertEquals(100, underlying.completed.get());
+    assertTrue(underlying.maxInFlight.get() <= 3);
+    assertEquals(1.0, benchmark.getOperationsPerRep());
+    Map<String, Double> metrics = benchmark.getTrialMetrics();
+    assertTrue(metrics.containsKey(Measurement.LATENCY_MEDIAN_NANOS));
+    assertTrue(metrics.containsKey(Measurement.LATENCY_99TH_NANOS));
+    assertTrue(metrics.get(Measurement.ASYNC_OVERHEAD_NANOS) > 0);
+    benchmark.close();
+  }
+
+  public void testAsyncFailure() throws Exception {
+    ConfiguredBenchmark benchmark = new AsyncBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "Failure"));
+    try {
+      benchmark.run(10);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    benchmark.close();
+  }
+
+  public void testGroup() throws Exception {
+    GroupBenchmark suite = new GroupBenchmark();
+    assertEquals(ImmutableSet.of("Other", "ReadWrite"), suite.parameterValues("benchmark"));
+
+    ConfiguredBenchmark benchmark = suite.createBenchmark(
+        ImmutableMap.of("benchmark", "ReadWrite", "readers", "3"));
+    GroupBenchmark underlying = (GroupBenchmark) benchmark.getBenchmark();
+    benchmark.run(100);
+    assertTrue(underlying.reads.get() >= 300);
+    assertTrue(underlying.writes.get() >= 100);
+    assertEquals(ImmutableSet.of(Measurement.GROUP_NANOS_PREFIX + "Read",
+        Measurement.GROUP_NANOS_PREFIX + "Write"), benchmark.getTrialMetrics().keySet());
+    benchmark.close();
+  }
+
+  public void testGroupThreadsAreReusedAcrossRuns() throws Exception {
+    ConfiguredBenchmark benchmark = new GroupBenchmark().createBenchmark(
+        ImmutableMap.of("benchmark", "ReadWrite", "readers", "3"));
+    GroupBenchmark underlying = (GroupBenchmark) benchmark.getBenchmark();
+    benchmark.run(10);
+    benchmark.run(10);
+    assertEquals(4, underlying.threads.size());
+    assertTrue(underlying.reads.get() >= 60);
+    benchmark.close();
+  }
+
+  public void testGroupWithRepHooks() throws Exception {
+    try {
+      new GroupWithRepHooksBenchmark().createBenchmark(ImmutableMap.of("benchmark", "Group"));
+      fail();
+    } catch (ConfigurationException expected) {
+    }
+  }
+
+  public void testFootprint() throws Exception {
+    FootprintBenchmark suite = new FootprintBenchmark();
+    assertEquals(ImmutableSet.of("List"), suite.footprintBenchmarkNames());
+    ConfiguredBenchmark benchmark = suite.createBenchmark(ImmutableMap.of("benchmark", "List"));
+    assertTrue(benchmark.hasFootprint());
+    assertEquals(Arrays.asList(1, 2, 3), benchmark.createFootprint());
+    ConfiguredBenchmark other = suite.createBenchmark(ImmutableMap.of("benchmark", "Other"));
+    assertFalse(other.hasFootprint());
+    assertNull(other.createFootprint());
+  }
+
+  public void testFootprintWithoutBenchmark() throws Exception {
+    try {
+      new UnmatchedFootprintBenchmark();
+      fail();
+    } catch (ConfigurationException expected) {
+    }
+  }
+
+  public static class RepHooksBenchmark extends SimpleBenchmark {
+    final List<String> events = new ArrayList<String>();
+
+    @BeforeRep void before() {
+      events.add("before");
+    }
+
+    @AfterRep void after() {
+      events.add("after");
+    }
+
+    public void timeRecord(int reps) {
+      for (int i = 0; i < reps; i++) {
+        events.add("rep");
+      }
+    }
+  }
+
+  public static class InheritedRepHooksBenchmark extends RepHooksBenchmark {
+    @BeforeRep void beforeToo() {
+      events.add("beforeToo");
+    }
+
+    @Override public void timeRecord(int reps) {
+      super.timeRecord(reps);
+    }
+  }
+
+  public static class OverridingRepHooksBenchmark extends RepHooksBenchmark {
+    @BeforeRep @Override void before() {
+      events.add("overridden");
+    }
+
+    @Override public void timeRecord(int reps) {
+      super.timeRecord(reps);
+    }
+  }
+
+  public static class NoRepHooksBenchmark extends SimpleBenchmark {
+    public void timeNothing(int reps) {}
+  }
+
+  public static class BadRepHooksBenchmark extends SimpleBenchmark {
+    @BeforeRep void before(int reps) {}
+
+    public void timeNothing(int reps) {}
+  }
+
+  public static class SinkBenchmark extends SimpleBenchmark {
+    int consumed;
+
+    public void timeConsume(int reps, Sink sink) {
+      for (int i = 0; i < reps; i++) {
+        sink.consume(i);
+        consumed++;
+      }
+    }
+  }
+
+  public static class AsyncBenchmark extends SimpleBenchmark {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final AtomicInteger completed = new AtomicInteger();
+
+    @Override protected int operationsInFlight(String benchmark) {
+      return 3;
+    }
+
+    public Future<?> timeOperation(Executor executor) {
+      int current = inFlight.incrementAndGet();
+      if (current > maxInFlight.get()) {
+        maxInFlight.set(current);
+      }
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        @Override public void run() {
+          inFlight.decrementAndGet();
+          completed.incrementAndGet();
+        }
+      }, null);
+      executor.execute(task);
+      return task;
+    }
+
+    public Future<?> timeFailure(Executor executor) {
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        @Override public void run() {
+          throw new IllegalStateException();
+        }
+      }, null);
+      executor.execute(task);
+      return task;
+    }
+  }
+
+  public static class GroupBenchmark extends SimpleBenchmark {
+    @Param({"3"}) int readers;
+    final AtomicInteger reads = new AtomicInteger();
+    final AtomicInteger writes = new AtomicInteger();
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+    @Group(value = "ReadWrite", threads = "readers")
+    public void timeRead(int reps) {
+      threads.add(Thread.currentThread());
+      for (int i = 0; i < reps; i++) {
+        reads.incrementAndGet();
+      }
+    }
+
+    @Group("ReadWrite")
+    public void timeWrite(int reps) {
+      threads.add(Thread.currentThread());
+      for (int i = 0; i < reps; i++) {
+        writes.incrementAndGet();
+      }
+    }
+
+    public void timeOther(int reps) {}
+  }
+
+  public static class GroupWithRepHooksBenchmark extends SimpleBenchmark {
+    @BeforeRep void before() {}
+
+    @Group("Group")
+    public void timeNothing(int reps) {}
+  }
+
+  public static class FootprintBenchmark extends SimpleBenchmark {
+    public void timeList(int reps) {}
+
+    public void timeOther(int reps) {}
+
+    public List<Integer> footprintList() {
+      return Arrays.asList(1, 2, 3);
+    }
+  }
+
+  public static class UnmatchedFootprintBenchmark extends SimpleBenchmark {
+    public void timeList(int reps) {}
+
+    public Object footprintSet() {
+      return null;
+    }
+  }
+}
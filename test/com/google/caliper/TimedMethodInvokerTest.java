@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import com.google.caliper.TimedMethodInvoker.ReflectiveInvoker;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import junit.framework.TestCase;
+
+public class TimedMethodInvokerTest extends TestCase {
+
+  public void testGeneratedInvoker() throws Exception {
+    TimedMethodInvoker invoker = TimedMethodInvoker.forMethod(
+        PublicBenchmark.class.getMethod("timeSum", int.class));
+    assertFalse(invoker instanceof ReflectiveInvoker);
+    assertEquals(6L, invoker.invoke(new PublicBenchmark(), 3, null));
+  }
+
+  public void testGeneratedInvokerWithSink() throws Exception {
+    TimedMethodInvoker invoker = TimedMethodInvoker.forMethod(
+        PublicBenchmark.class.getMethod("timeConsume", int.class, Sink.class));
+    assertFalse(invoker instanceof ReflectiveInvoker);
+    PublicBenchmark benchmark = new PublicBenchmark();
+    assertNull(invoker.invoke(benchmark, 5, new Sink()));
+    assertEquals(5, benchmark.consumed);
+  }
+
+  public void testInvokersAreCached() throws Exception {
+    assertSame(
+        TimedMethodInvoker.forMethod(PublicBenchmark.class.getMethod("timeSum", int.class)),
+        TimedMethodInvoker.forMethod(PublicBenchmark.class.getMethod("timeSum", int.class)));
+  }
+
+  public void testExceptionsAreNotWrapped() throws Exception {
+    TimedMethodInvoker invoker = TimedMethodInvoker.forMethod(
+        PublicBenchmark.class.getMethod("timeThrow", int.class));
+    try {
+      invoker.invoke(new PublicBenchmark(), 1, null);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testNonPublicClassFallsBackToReflection() throws Exception {
+    TimedMethodInvoker invoker = TimedMethodInvoker.forMethod(
+        PackagePrivateBenchmark.class.getMethod("timeSum", int.class));
+    assertTrue(invoker instanceof ReflectiveInvoker);
+    assertEquals(3, invoker.invoke(new PackagePrivateBenchmark(), 2, null));
+  }
+
+  public void testGeneratedAsyncInvoker() throws Exception {
+    AsyncMethodInvoker invoker = AsyncMethodInvoker.forMethod(
+        PublicBenchmark.class.getMethod("timeAsync", Executor.class));
+    assertFalse(invoker instanceof AsyncMethodInvoker.ReflectiveInvoker);
+    PublicBenchmark benchmark = new PublicBenchmark();
+    Future<?> future = (Future<?>) invoker.invokeAsync(
+        benchmark, MoreExecutors.sameThreadExecutor());
+    assertEquals("done", future.get());
+    assertEquals(1, benchmark.consumed);
+  }
+
+  public void testNonPublicClassFallsBackToReflectionForAsync() throws Exception {
+    AsyncMethodInvoker invoker = AsyncMethodInvoker.forMethod(
+        PackagePrivateBenchmark.class.getMethod("timeAsync", Executor.class));
+    assertTrue(invoker instanceof AsyncMethodInvoker.ReflectiveInvoker);
+    Future<?> future = (Future<?>) invoker.invokeAsync(
+        new PackagePrivateBenchmark(), MoreExecutors.sameThreadExecutor());
+    assertEquals("done", future.get());
+  }
+
+  public void testInvokerMustMatchMethod() throws Exception {
+    try {
+      new InvokerGenerator(PublicBenchmark.class.getMethod("timeAsync", Executor.class))
+          .generate(TimedMethodInvoker.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  static Future<String> done(Executor executor) {
+    FutureTask<String> task = new FutureTask<String>(new Runnable() {
+      @Override public void run() {}
+    }, "done");
+    executor.execute(task);
+    return task;
+  }
+
+  public static class PublicBenchmark extends SimpleBenchmark {
+    int consumed;
+
+    public long timeSum(int reps) {
+      long sum = 0;
+      for (int i = 1; i <= reps; i++) {
+        sum += i;
+      }
+      return sum;
+    }
+
+    public void timeConsume(int reps, Sink sink) {
+      for (int i = 0; i < reps; i++) {
+        sink.consume(i);
+        consumed++;
+      }
+    }
+
+    public void timeThrow(int reps) {
+      throw new IllegalStateException();
+    }
+
+    public Future<String> timeAsync(Executor executor) {
+      consumed++;
+      return done(executor);
+    }
+  }
+
+  static class PackagePrivateBenchmark extends SimpleBenchmark {
+    public int timeSum(int reps) {
+      int sum = 0;
+      for (int i = 1; i <= reps; i++) {
+        sum += i;
+      }
+      return sum;
+    }
+
+    public Future<String> timeAsync(Executor executor) {
+      return done(executor);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.caliper;
+
+import java.util.concurrent.Callable;
+import junit.framework.TestCase;
+
+public class VirtualThreadsTest extends TestCase {
+
+  public void testPlatformThreadIsNotVirtual() {
+    assertFalse(VirtualThreads.isCurrentThreadVirtual());
+  }
+
+  public void testRunOnVirtualThread() throws Exception {
+    if (!VirtualThreads.isSupported()) {
+      return;
+    }
+    assertEquals(Boolean.TRUE, VirtualThreads.runOnVirtualThread(new Callable<Boolean>() {
+      @Override public Boolean call() {
+        return VirtualThreads.isCurrentThreadVirtual();
+      }
+    }));
+  }
+
+  public void testRunOnVirtualThreadRethrows() throws Exception {
+    if (!VirtualThreads.isSupported()) {
+      return;
+    }
+    try {
+      VirtualThreads.runOnVirtualThread(new Callable<Void>() {
+        @Override public Void call() {
+          throw new IllegalStateException();
+        }
+      });
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testUnsupportedVmFailsToCreateThreads() {
+    if (VirtualThreads.isSupported()) {
+      return;
+    }
+    try {
+      VirtualThreads.factory();
+      fail();
+    } catch (Exception expected) {
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper;
+
+import junit.framework.TestCase;
+
+public class WarmupRoundsTest extends TestCase {
+
+  private static final long MIN_WARMUP_NANOS = 100000000;
+
+  private final TimeMeasurer.WarmupRounds rounds =
+      new TimeMeasurer.WarmupRounds(3, MIN_WARMUP_NANOS, 0.05);
+
+  public void testSettled() {
+    rounds.add(10.0, 0);
+    rounds.add(10.2, 0);
+    rounds.add(9.9, 0);
+    assertTrue(rounds.isSettled(MIN_WARMUP_NANOS));
+  }
+
+  public void testTooFewRounds() {
+    rounds.add(10.0, 0);
+    rounds.add(10.0, 0);
+    assertFalse(rounds.isSettled(MIN_WARMUP_NANOS));
+  }
+
+  public void testNotSettledBeforeMinWarmup() {
+    rounds.add(10.0, 0);
+    rounds.add(10.0, 0);
+    rounds.add(10.0, 0);
+    assertFalse(rounds.isSettled(MIN_WARMUP_NANOS - 1));
+  }
+
+  public void testCompilationDuringRecentRound() {
+    rounds.add(10.0, 0);
+    rounds.add(10.0, 3);
+    rounds.add(10.0, 0);
+    assertFalse(rounds.isSettled(MIN_WARMUP_NANOS));
+  }
+
+  public void testTimeStillChanging() {
+    rounds.add(12.0, 0);
+    rounds.add(10.0, 0);
+    rounds.add(10.0, 0);
+    assertFalse(rounds.isSettled(MIN_WARMUP_NANOS));
+  }
+
+  public void testOnlyRecentRoundsCount() {
+    rounds.add(50.0, 20);
+    rounds.add(30.0, 5);
+    rounds.add(10.0, 0);
+    rounds.add(10.1, 0);
+    rounds.add(9.9, 0);
+    assertTrue(rounds.isSettled(MIN_WARMUP_NANOS));
+  }
+}
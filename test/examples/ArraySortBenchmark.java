@@ -16,6 +16,7 @@
 
 package examples;
 
+import com.google.caliper.BeforeRep;
 import com.google.caliper.Param;
 import com.google.caliper.Runner;
 import com.google.caliper.SimpleBenchmark;
@@ -39,9 +40,12 @@ public class ArraySortBenchmark extends SimpleBenchmark {
     copy = new int[length];
   }
 
+  @BeforeRep void copyValues() {
+    System.arraycopy(values, 0, copy, 0, values.length);
+  }
+
   public void timeSort(int reps) {
     for (int i = 0; i < reps; i++) {
-      System.arraycopy(values, 0, copy, 0, values.length);
       Arrays.sort(copy);
     }
   }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package examples;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Measures the throughput and latency of hashing buffers on an executor with
+ * different numbers of hashes in flight.
+ */
+public class AsyncDigestBenchmark extends SimpleBenchmark {
+  @Param({"1", "4", "16"}) private int inFlight;
+
+  @Param({"1024", "65536"}) private int size;
+
+  private byte[] data;
+
+  @Override protected void setUp() {
+    data = new byte[size];
+  }
+
+  @Override protected int operationsInFlight(String benchmark) {
+    return inFlight;
+  }
+
+  @Override protected double bytesPerRep(String benchmark) {
+    return size;
+  }
+
+  public Future<byte[]> timeSha1(Executor executor) {
+    FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+      @Override public byte[] call() throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(data);
+      }
+    });
+    executor.execute(task);
+    return task;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Runner.main(AsyncDigestBenchmark.class, args);
+  }
+}
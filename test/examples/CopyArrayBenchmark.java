@@ -196,6 +196,24 @@ public class CopyArrayBenchmark extends SimpleBenchmark {
     }
   }
 
+  @Override protected double operationsPerRep(String benchmark) {
+    return size; // elements copied
+  }
+
+  @Override protected double bytesPerRep(String benchmark) {
+    if (benchmark.equals("Booleans") || benchmark.equals("Bytes")) {
+      return size;
+    } else if (benchmark.equals("Chars") || benchmark.equals("Shorts")) {
+      return size * 2;
+    } else if (benchmark.equals("Floats") || benchmark.equals("Ints")) {
+      return size * 4;
+    } else if (benchmark.equals("Doubles") || benchmark.equals("Longs")) {
+      return size * 8;
+    } else {
+      return 0; // the size of an object reference depends on the VM
+    }
+  }
+
   public int timeObjects(int reps) {
     int dummy = 0;
     for (int i = 0; i < reps; i++) {
@@ -19,6 +19,7 @@ package examples;
 import com.google.caliper.Param;
 import com.google.caliper.Runner;
 import com.google.caliper.SimpleBenchmark;
+import com.google.caliper.Sink;
 
 import java.util.Arrays;
 import java.util.List;
@@ -77,22 +78,18 @@ public class DoubleToStringBenchmark extends SimpleBenchmark {
       Double.NaN
   );
 
-  public int timePrimitive(int reps) {
+  public void timePrimitive(int reps, Sink sink) {
     double d = value;
-    int dummy = 0;
     for (int i = 0; i < reps; i++) {
-      dummy += method.convert(d).length();
+      sink.consume(method.convert(d));
     }
-    return dummy;
   }
 
-  public int timeWrapper(int reps) {
+  public void timeWrapper(int reps, Sink sink) {
     Double d = value;
-    int dummy = 0;
     for (int i = 0; i < reps; i++) {
-      dummy += method.convert(d).length();
+      sink.consume(method.convert(d));
     }
-    return dummy;
   }
 
   public static void main(String[] args) throws Exception {
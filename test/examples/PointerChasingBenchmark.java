@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package examples;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.util.Random;
+
+/**
+ * Measures the latency of dependent loads from working sets of increasing
+ * size. Each load's address depends on the previous one, and the addresses
+ * are in a random cycle, so the hardware can neither overlap nor prefetch
+ * them. The time per load jumps as the working set outgrows each level of
+ * cache, and Caliper reports those cliffs against the host's cache sizes.
+ */
+public class PointerChasingBenchmark extends SimpleBenchmark {
+
+  /** The size of the working set in bytes. */
+  @Param(range = "4K..64M*4") private int size;
+
+  private int[] next;
+
+  @Override protected void setUp() throws Exception {
+    int length = size / 4;
+    next = new int[length];
+
+    // Sattolo's algorithm makes a single cycle through every element
+    for (int i = 0; i < length; i++) {
+      next[i] = i;
+    }
+    Random random = new Random(0);
+    for (int i = length - 1; i > 0; i--) {
+      int j = random.nextInt(i);
+      int swap = next[i];
+      next[i] = next[j];
+      next[j] = swap;
+    }
+  }
+
+  public int timeChase(int reps) {
+    int[] next = this.next;
+    int index = 0;
+    for (int i = 0; i < reps; i++) {
+      index = next[index];
+    }
+    return index;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Runner.main(PointerChasingBenchmark.class, args);
+  }
+}
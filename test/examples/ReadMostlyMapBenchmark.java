@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package examples;
+
+import com.google.caliper.Group;
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures a read-mostly map with several readers contending with a single
+ * writer. Both kinds of thread run concurrently on the same map, and the time
+ * per rep of each is reported alongside the group's.
+ */
+public class ReadMostlyMapBenchmark extends SimpleBenchmark {
+
+  private static final int SIZE = 1024;
+
+  @Param({"1", "3", "15"}) private int readers;
+  @Param private Implementation implementation;
+
+  public enum Implementation {
+    SYNCHRONIZED {
+      @Override Map<Integer, Integer> create() {
+        return Collections.synchronizedMap(new HashMap<Integer, Integer>());
+      }
+    },
+    CONCURRENT {
+      @Override Map<Integer, Integer> create() {
+        return new ConcurrentHashMap<Integer, Integer>();
+      }
+    };
+
+    abstract Map<Integer, Integer> create();
+  }
+
+  private Map<Integer, Integer> map;
+
+  @Override protected void setUp() throws Exception {
+    map = implementation.create();
+    for (int i = 0; i < SIZE; i++) {
+      map.put(i, i);
+    }
+  }
+
+  @Group(value = "ReadWrite", threads = "readers")
+  public int timeGet(int reps) {
+    int sum = 0;
+    for (int i = 0; i < reps; i++) {
+      Integer value = map.get(i & (SIZE - 1));
+      sum += value != null ? value : 0;
+    }
+    return sum;
+  }
+
+  @Group("ReadWrite")
+  public void timePut(int reps) {
+    for (int i = 0; i < reps; i++) {
+      map.put(i & (SIZE - 1), i);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Runner.main(ReadMostlyMapBenchmark.class, args);
+  }
+}